@@ -0,0 +1,264 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decorator that delivers device updates to an observer asynchronously.
+ * Updates are buffered in a bounded queue and drained on a shared executor,
+ * one update at a time, so a slow observer never stalls the thread that changed the device.
+ * Once the executor rejects work, for example after the system is stopped, pending and later
+ * updates are dropped instead of failing the command that published them.
+ */
+public class AsyncDeviceObserver implements DeviceObserver {
+
+    /**
+     * What to do with an update when the queue is full.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Discard the oldest queued update to make room.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Keep at most one pending update per device; a newer update for a queued device
+         * replaces it. When the queue is full of other devices the oldest update is discarded.
+         */
+        COALESCE_BY_DEVICE,
+
+        /**
+         * Block the publishing thread until the observer catches up.
+         */
+        BLOCK
+    }
+
+    private static final Logger logger = LogManager.getLogger(AsyncDeviceObserver.class);
+    private static final int DRAIN_BATCH = 64;
+
+    private final DeviceObserver delegate;
+    private final Executor executor;
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final ArrayDeque<Device> queue = new ArrayDeque<>();
+    private final Map<String, Device> pendingByDevice = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final LongAdder deliveredCount = new LongAdder();
+    private final LongAdder droppedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+    private int maxPendingCount;
+    private volatile boolean rejected;
+
+    /**
+     * Constructor for AsyncDeviceObserver.
+     * @param delegate The observer that receives the updates.
+     * @param executor The executor that runs deliveries.
+     * @param capacity The maximum number of pending updates.
+     * @param policy The overflow policy.
+     */
+    public AsyncDeviceObserver(DeviceObserver delegate, Executor executor, int capacity, OverflowPolicy policy) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Queue capacity must be positive: " + capacity);
+        }
+        this.delegate = delegate;
+        this.executor = executor;
+        this.capacity = capacity;
+        this.policy = policy;
+    }
+
+    @Override
+    public void update(Device device) {
+        enqueue(device);
+        scheduleDrain();
+    }
+
+    @Override
+    public void updateAll(Collection<? extends Device> devices) {
+        for (Device device : devices) {
+            enqueue(device);
+        }
+        scheduleDrain();
+    }
+
+    private void enqueue(Device device) {
+        lock.lock();
+        try {
+            if (policy == OverflowPolicy.COALESCE_BY_DEVICE) {
+                if (pendingByDevice.put(device.getId(), device) != null) {
+                    coalescedCount.increment();
+                } else if (pendingByDevice.size() > capacity) {
+                    Iterator<Device> oldest = pendingByDevice.values().iterator();
+                    oldest.next();
+                    oldest.remove();
+                    droppedCount.increment();
+                }
+            } else {
+                if (queue.size() >= capacity) {
+                    if (policy == OverflowPolicy.BLOCK) {
+                        scheduleDrain();
+                        while (queue.size() >= capacity) {
+                            notFull.awaitUninterruptibly();
+                        }
+                    } else {
+                        queue.pollFirst();
+                        droppedCount.increment();
+                    }
+                }
+                queue.addLast(device);
+            }
+            maxPendingCount = Math.max(maxPendingCount, pendingCountLocked());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Device poll() {
+        lock.lock();
+        try {
+            if (policy == OverflowPolicy.COALESCE_BY_DEVICE) {
+                Iterator<Device> oldest = pendingByDevice.values().iterator();
+                if (!oldest.hasNext()) {
+                    return null;
+                }
+                Device device = oldest.next();
+                oldest.remove();
+                return device;
+            }
+            Device device = queue.pollFirst();
+            if (device != null) {
+                notFull.signal();
+            }
+            return device;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                discardPending();
+            }
+        }
+    }
+
+    /**
+     * Drop every pending update because the executor no longer accepts deliveries.
+     */
+    private void discardPending() {
+        int discarded;
+        lock.lock();
+        try {
+            discarded = pendingCountLocked();
+            queue.clear();
+            pendingByDevice.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        droppedCount.add(discarded);
+        if (!rejected) {
+            rejected = true;
+            logger.warn("Observer executor rejected delivery; dropping updates for {}", delegate);
+        }
+    }
+
+    private void drain() {
+        try {
+            for (int i = 0; i < DRAIN_BATCH; i++) {
+                Device device = poll();
+                if (device == null) {
+                    return;
+                }
+                try {
+                    delegate.update(device);
+                } catch (RuntimeException e) {
+                    logger.warn("Observer failed to handle update of {}", device.getId(), e);
+                }
+                deliveredCount.increment();
+            }
+        } finally {
+            draining.set(false);
+            if (getPendingCount() > 0) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private int pendingCountLocked() {
+        return policy == OverflowPolicy.COALESCE_BY_DEVICE ? pendingByDevice.size() : queue.size();
+    }
+
+    /**
+     * Get the wrapped observer.
+     * @return The delegate observer.
+     */
+    public DeviceObserver getDelegate() { return delegate; }
+
+    /**
+     * Get the overflow policy.
+     * @return The overflow policy.
+     */
+    public OverflowPolicy getPolicy() { return policy; }
+
+    /**
+     * Get the number of updates waiting to be delivered, i.e. how far the observer lags behind.
+     * @return The pending update count.
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pendingCountLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the highest number of pending updates seen so far.
+     * @return The maximum lag.
+     */
+    public int getMaxPendingCount() {
+        lock.lock();
+        try {
+            return maxPendingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of updates handed to the observer.
+     * @return The delivered count.
+     */
+    public long getDeliveredCount() { return deliveredCount.sum(); }
+
+    /**
+     * Get the number of updates discarded because the queue was full.
+     * @return The dropped count.
+     */
+    public long getDroppedCount() { return droppedCount.sum(); }
+
+    /**
+     * Get the number of updates merged into an already pending update for the same device.
+     * @return The coalesced count.
+     */
+    public long getCoalescedCount() { return coalescedCount.sum(); }
+}
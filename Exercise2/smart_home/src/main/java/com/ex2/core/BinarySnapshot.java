@@ -0,0 +1,313 @@
+package com.ex2.core;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Memory-mapped binary snapshot of the device inventory and triggers.
+ * Opening a snapshot maps the file and reads only its header; device IDs, types and states
+ * stay in the mapping, found through a hash index stored in the file, until a device is
+ * first accessed and {@link #create} materializes it.
+ *
+ * Layout, all integers big-endian:
+ * <pre>
+ * header     magic, version, device count, index size, type count, trigger count,
+ *            types offset, strings offset, triggers offset
+ * hashes     int per device: hash code of the ID
+ * ids        int per device: offset of the ID in the string section
+ * states     int per device: temperature for thermostats, otherwise 1 for on/locked and 0 for off/unlocked
+ * types      byte per device: index into the type table
+ * index      int per bucket: device number + 1, or 0 for an empty bucket; linear probing
+ * type table length-prefixed UTF-8 type names
+ * strings    length-prefixed UTF-8 device IDs
+ * triggers   length-prefixed UTF-8 condition and action of each trigger
+ * </pre>
+ */
+final class BinarySnapshot {
+    private static final int MAGIC = 0x53485342;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 36;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int indexMask;
+    private final int hashesOffset;
+    private final int idsOffset;
+    private final int statesOffset;
+    private final int typesOffset;
+    private final int indexOffset;
+    private final int stringsOffset;
+    private final String[] typeNames;
+    private final List<String[]> triggers;
+    private final long[] claimed;
+    private int claimedCount;
+
+    private BinarySnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a device snapshot");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + buffer.getInt(4));
+        }
+        this.count = buffer.getInt(8);
+        int indexSize = buffer.getInt(12);
+        this.indexMask = indexSize - 1;
+        this.hashesOffset = HEADER_BYTES;
+        this.idsOffset = hashesOffset + 4 * count;
+        this.statesOffset = idsOffset + 4 * count;
+        this.typesOffset = statesOffset + 4 * count;
+        this.indexOffset = align(typesOffset + count);
+        this.stringsOffset = buffer.getInt(28);
+
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(buffer.getInt(24));
+        this.typeNames = new String[buffer.getInt(16)];
+        for (int i = 0; i < typeNames.length; i++) {
+            typeNames[i] = readString(reader);
+        }
+        reader.position(buffer.getInt(32));
+        int triggerCount = buffer.getInt(20);
+        this.triggers = new ArrayList<>(triggerCount);
+        for (int i = 0; i < triggerCount; i++) {
+            triggers.add(new String[] {readString(reader), readString(reader)});
+        }
+        this.claimed = new long[(count + 63) >>> 6];
+    }
+
+    /**
+     * Map a snapshot file. Only the header, the type table and the triggers are read.
+     * @param file The snapshot file.
+     * @return The mapped snapshot.
+     * @throws IOException If the file cannot be mapped or is not a snapshot.
+     */
+    static BinarySnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new BinarySnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Write a snapshot file. The file is written next to its destination and moved into place.
+     * @param file The snapshot file.
+     * @param devices The devices to include.
+     * @param triggers The triggers to include, as condition and action pairs.
+     * @throws IOException If the file cannot be written.
+     */
+    static void write(Path file, Collection<? extends Device> devices, List<String[]> triggers) throws IOException {
+        int count = devices.size();
+        int indexSize = Integer.highestOneBit(Math.max(1, count * 2 - 1)) << 1;
+        int[] hashes = new int[count];
+        int[] idOffsets = new int[count];
+        int[] states = new int[count];
+        byte[] types = new byte[count];
+        int[] index = new int[indexSize];
+        byte[][] ids = new byte[count][];
+        Map<String, Integer> typeTable = new LinkedHashMap<>();
+
+        int slot = 0;
+        int stringBytes = 0;
+        for (Device device : devices) {
+            if (slot == count) {
+                throw new IOException("Device collection changed while writing the snapshot");
+            }
+            String id = device.getId();
+            ids[slot] = id.getBytes(StandardCharsets.UTF_8);
+            hashes[slot] = id.hashCode();
+            idOffsets[slot] = stringBytes;
+            stringBytes += 2 + ids[slot].length;
+            states[slot] = DeviceProxy.stateValue(device);
+            Integer type = typeTable.computeIfAbsent(device.getType(), key -> typeTable.size());
+            types[slot] = (byte) (int) type;
+            int bucket = spread(hashes[slot]) & (indexSize - 1);
+            while (index[bucket] != 0) {
+                bucket = (bucket + 1) & (indexSize - 1);
+            }
+            index[bucket] = slot + 1;
+            slot++;
+        }
+        if (slot != count) {
+            throw new IOException("Device collection changed while writing the snapshot");
+        }
+        if (typeTable.size() > 127) {
+            throw new IOException("Too many device types for a snapshot: " + typeTable.size());
+        }
+
+        int typesTableOffset = align(HEADER_BYTES + 13 * count) + 4 * indexSize;
+        int typeTableBytes = 0;
+        for (String type : typeTable.keySet()) {
+            typeTableBytes += 2 + type.getBytes(StandardCharsets.UTF_8).length;
+        }
+        int stringsOffset = typesTableOffset + typeTableBytes;
+        int triggersOffset = stringsOffset + stringBytes;
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(indexSize);
+            out.writeInt(typeTable.size());
+            out.writeInt(triggers.size());
+            out.writeInt(typesTableOffset);
+            out.writeInt(stringsOffset);
+            out.writeInt(triggersOffset);
+            for (int hash : hashes) out.writeInt(hash);
+            for (int offset : idOffsets) out.writeInt(offset);
+            for (int state : states) out.writeInt(state);
+            out.write(types);
+            for (int pad = HEADER_BYTES + 13 * count; pad < align(HEADER_BYTES + 13 * count); pad++) out.writeByte(0);
+            for (int entry : index) out.writeInt(entry);
+            for (String type : typeTable.keySet()) writeString(out, type.getBytes(StandardCharsets.UTF_8));
+            for (byte[] id : ids) writeString(out, id);
+            for (String[] trigger : triggers) {
+                writeString(out, trigger[0].getBytes(StandardCharsets.UTF_8));
+                writeString(out, trigger[1].getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Get the number of devices in the snapshot.
+     * @return The device count.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Find a device by ID without materializing anything.
+     * @param id The ID of the device.
+     * @return The device number, or -1 if the snapshot does not contain the device.
+     */
+    int find(String id) {
+        int hash = id.hashCode();
+        byte[] wanted = null;
+        int bucket = spread(hash) & indexMask;
+        for (int probes = 0; probes <= indexMask; probes++) {
+            int entry = buffer.getInt(indexOffset + 4 * bucket);
+            if (entry == 0) {
+                return -1;
+            }
+            int slot = entry - 1;
+            if (buffer.getInt(hashesOffset + 4 * slot) == hash) {
+                if (wanted == null) {
+                    wanted = id.getBytes(StandardCharsets.UTF_8);
+                }
+                if (idEquals(slot, wanted)) {
+                    return slot;
+                }
+            }
+            bucket = (bucket + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Get the ID of a device.
+     * @param slot The device number.
+     * @return The device ID.
+     */
+    String id(int slot) {
+        ByteBuffer reader = buffer.duplicate();
+        reader.position(stringsOffset + buffer.getInt(idsOffset + 4 * slot));
+        return readString(reader);
+    }
+
+    /**
+     * Create the device object for a snapshot entry, in its saved state.
+     * @param slot The device number.
+     * @param changeListener Receives later state changes made directly on the device.
+     * @return The device.
+     * @throws IllegalArgumentException if the device type is unknown.
+     */
+    Device create(int slot, DeviceObserver changeListener) {
+        String id = id(slot);
+        String type = typeNames[buffer.get(typesOffset + slot)];
+        int state = buffer.getInt(statesOffset + 4 * slot);
+        return DeviceTypeRegistry.getDefault().get(type).restore(id, state, changeListener);
+    }
+
+    /**
+     * Get the triggers saved in the snapshot.
+     * @return The condition and action of each trigger.
+     */
+    List<String[]> getTriggers() {
+        return triggers;
+    }
+
+    /**
+     * Mark a device as taken over by the system, so it is materialized at most once.
+     * @param slot The device number.
+     * @return True if the device had not been claimed before.
+     */
+    synchronized boolean claim(int slot) {
+        long bit = 1L << slot;
+        if ((claimed[slot >>> 6] & bit) != 0) {
+            return false;
+        }
+        claimed[slot >>> 6] |= bit;
+        claimedCount++;
+        return true;
+    }
+
+    /**
+     * Get the number of devices not yet claimed.
+     * @return The unclaimed device count.
+     */
+    synchronized int remaining() {
+        return count - claimedCount;
+    }
+
+    private boolean idEquals(int slot, byte[] wanted) {
+        int position = stringsOffset + buffer.getInt(idsOffset + 4 * slot);
+        int length = buffer.getShort(position) & 0xFFFF;
+        if (length != wanted.length) {
+            return false;
+        }
+        position += 2;
+        for (int i = 0; i < length; i++) {
+            if (buffer.get(position + i) != wanted[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readString(ByteBuffer reader) {
+        byte[] bytes = new byte[reader.getShort() & 0xFFFF];
+        reader.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes.length > 0xFFFF) {
+            throw new IOException("String too long for a snapshot: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,176 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs trigger actions as bounded cascades.
+ * A cascade starts with the evaluation of the triggers affected by a change; an action fired
+ * while another action of the same thread is running joins that action's cascade one generation
+ * deeper instead of running recursively. Inline actions are queued and
+ * run breadth-first by the thread that started the cascade, so a chain of triggers never grows
+ * the stack. Actions run on device mailboxes carry their cascade with them. A cascade that
+ * exceeds the depth or action limit drops its remaining actions.
+ */
+class CascadeExecutor {
+    private static final Logger logger = LogManager.getLogger(CascadeExecutor.class);
+    private static final ThreadLocal<Step> CURRENT = new ThreadLocal<>();
+
+    private final CascadeMetrics metrics;
+    private volatile int maxDepth = 32;
+    private volatile int maxActions = 1000;
+
+    /**
+     * Constructor for CascadeExecutor.
+     * @param metrics Receives the statistics of every completed cascade.
+     */
+    CascadeExecutor(CascadeMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Set the limits of a single cascade.
+     * @param maxDepth The maximum number of trigger generations.
+     * @param maxActions The maximum number of actions.
+     * @throws IllegalArgumentException if a limit is not positive.
+     */
+    void setLimits(int maxDepth, int maxActions) {
+        if (maxDepth < 1 || maxActions < 1) {
+            throw new IllegalArgumentException("Cascade limits must be positive: depth " + maxDepth + ", actions " + maxActions);
+        }
+        this.maxDepth = maxDepth;
+        this.maxActions = maxActions;
+    }
+
+    /**
+     * Run code that may fire trigger actions as the start of a cascade. Actions fired inline by
+     * the code form the first generation and run breadth-first after it returns. Code run within
+     * an existing cascade simply runs, and the actions it fires join that cascade.
+     * @param body The code, typically the evaluation of the triggers affected by a change.
+     */
+    void group(Runnable body) {
+        if (CURRENT.get() != null) {
+            body.run();
+            return;
+        }
+        Cascade cascade = new Cascade();
+        cascade.drainer = Thread.currentThread();
+        cascade.pending.incrementAndGet();
+        try {
+            run(new Step(cascade, 0, body));
+            Step next;
+            while (cascade.inline != null && (next = cascade.inline.poll()) != null) {
+                run(next);
+            }
+        } finally {
+            cascade.inline = null;
+            cascade.drainer = null;
+            if (cascade.pending.decrementAndGet() == 0) {
+                finish(cascade);
+            }
+        }
+    }
+
+    /**
+     * Run a trigger action, in the cascade of the action running on this thread if there is one.
+     * @param action The action.
+     * @param executor The executor to run the action on, or null to run it on this thread.
+     * @param description Describes the action in the log when it is dropped.
+     * @return False if the action was dropped because its cascade hit a limit.
+     */
+    boolean execute(Runnable action, Executor executor, String description) {
+        Step parent = CURRENT.get();
+        if (parent == null) {
+            boolean[] accepted = new boolean[1];
+            group(() -> accepted[0] = execute(action, executor, description));
+            return accepted[0];
+        }
+        Cascade cascade = parent.cascade;
+        int depth = parent.depth + 1;
+        if (depth > maxDepth || cascade.actions.incrementAndGet() > maxActions) {
+            if (cascade.truncated.compareAndSet(false, true)) {
+                logger.warn("Trigger cascade exceeded {} generations or {} actions; dropping {}", maxDepth, maxActions, description);
+            }
+            return false;
+        }
+        cascade.maxDepth.accumulateAndGet(depth, Math::max);
+        Step step = new Step(cascade, depth, action);
+        if (executor != null) {
+            cascade.pending.incrementAndGet();
+            executor.execute(() -> {
+                try {
+                    run(step);
+                } finally {
+                    if (cascade.pending.decrementAndGet() == 0) {
+                        finish(cascade);
+                    }
+                }
+            });
+        } else if (cascade.drainer == Thread.currentThread()) {
+            if (cascade.inline == null) {
+                cascade.inline = new ArrayDeque<>();
+            }
+            cascade.inline.add(step);
+        } else {
+            // A cascade continued on a device mailbox after the execution mode changed
+            run(step);
+        }
+        return true;
+    }
+
+    private void run(Step step) {
+        Step previous = CURRENT.get();
+        CURRENT.set(step);
+        try {
+            step.action.run();
+        } finally {
+            if (previous != null) {
+                CURRENT.set(previous);
+            } else {
+                CURRENT.remove();
+            }
+        }
+    }
+
+    private void finish(Cascade cascade) {
+        if (cascade.actions.get() == 0) {
+            return;
+        }
+        metrics.recordCascade(cascade.maxDepth.get(), Math.min(cascade.actions.get(), maxActions),
+                System.nanoTime() - cascade.startNanos, cascade.truncated.get());
+    }
+
+    /**
+     * State shared by the actions of one cascade.
+     */
+    private static final class Cascade {
+        final long startNanos = System.nanoTime();
+        final AtomicInteger actions = new AtomicInteger();
+        final AtomicInteger pending = new AtomicInteger();
+        final AtomicInteger maxDepth = new AtomicInteger();
+        final AtomicBoolean truncated = new AtomicBoolean();
+        // Inline actions waiting for the thread that drains them; only touched by that thread
+        volatile Thread drainer;
+        ArrayDeque<Step> inline;
+    }
+
+    /**
+     * One action of a cascade and its generation.
+     */
+    private static final class Step {
+        final Cascade cascade;
+        final int depth;
+        final Runnable action;
+
+        Step(Cascade cascade, int depth, Runnable action) {
+            this.cascade = cascade;
+            this.depth = depth;
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.ex2.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the size, depth and duration of trigger cascades: a trigger action together
+ * with every action fired, directly or indirectly, by the changes it made.
+ */
+public class CascadeMetrics {
+    private final LongAdder cascadeCount = new LongAdder();
+    private final LongAdder actionCount = new LongAdder();
+    private final LongAdder truncatedCount = new LongAdder();
+    private final LongAdder totalDurationNanos = new LongAdder();
+    private final AtomicLong maxDurationNanos = new AtomicLong();
+    private final AtomicLong maxDepth = new AtomicLong();
+
+    /**
+     * Record a completed cascade.
+     * @param depth The number of trigger generations, 1 for an action that fired nothing further.
+     * @param actions The number of actions run.
+     * @param durationNanos Nanoseconds from the first action to the end of the last one.
+     * @param truncated True if actions were dropped because the cascade hit a limit.
+     */
+    void recordCascade(int depth, int actions, long durationNanos, boolean truncated) {
+        cascadeCount.increment();
+        actionCount.add(actions);
+        totalDurationNanos.add(durationNanos);
+        maxDurationNanos.accumulateAndGet(durationNanos, Math::max);
+        maxDepth.accumulateAndGet(depth, Math::max);
+        if (truncated) {
+            truncatedCount.increment();
+        }
+    }
+
+    /**
+     * Get the number of cascades recorded.
+     * @return The cascade count.
+     */
+    public long getCascadeCount() { return cascadeCount.sum(); }
+
+    /**
+     * Get the number of trigger actions run in all cascades.
+     * @return The action count.
+     */
+    public long getActionCount() { return actionCount.sum(); }
+
+    /**
+     * Get the number of cascades that hit the depth or action limit and dropped actions.
+     * @return The truncated cascade count.
+     */
+    public long getTruncatedCount() { return truncatedCount.sum(); }
+
+    /**
+     * Get the deepest cascade recorded.
+     * @return The maximum number of trigger generations in one cascade.
+     */
+    public long getMaxDepth() { return maxDepth.get(); }
+
+    /**
+     * Get the mean duration of a cascade.
+     * @param unit The unit of the result.
+     * @return The average duration, or 0 if no cascade was recorded.
+     */
+    public long getAverageDuration(TimeUnit unit) {
+        long count = cascadeCount.sum();
+        return count == 0 ? 0 : unit.convert(totalDurationNanos.sum() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the longest duration of a cascade.
+     * @param unit The unit of the result.
+     * @return The maximum duration, or 0 if no cascade was recorded.
+     */
+    public long getMaxDuration(TimeUnit unit) {
+        return unit.convert(maxDurationNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public void reset() {
+        cascadeCount.reset();
+        actionCount.reset();
+        truncatedCount.reset();
+        totalDurationNanos.reset();
+        maxDurationNanos.set(0);
+        maxDepth.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "cascades=" + getCascadeCount()
+             + ", actions=" + getActionCount()
+             + ", truncated=" + getTruncatedCount()
+             + ", maxDepth=" + getMaxDepth()
+             + ", avgDurationMicros=" + getAverageDuration(TimeUnit.MICROSECONDS)
+             + ", maxDurationMicros=" + getMaxDuration(TimeUnit.MICROSECONDS);
+    }
+}
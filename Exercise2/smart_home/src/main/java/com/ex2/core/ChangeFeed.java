@@ -0,0 +1,147 @@
+package com.ex2.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pull-based subscription to device changes that keeps only the latest pending
+ * state of each device. A consumer reads changes whenever it is ready; intermediate
+ * states it did not read in time are skipped, so memory is bounded by the number of devices.
+ */
+public class ChangeFeed implements DeviceObserver {
+    private final Map<String, DeviceSnapshot> pending = new LinkedHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final LongAdder publishedCount = new LongAdder();
+    private final LongAdder coalescedCount = new LongAdder();
+
+    @Override
+    public void update(Device device) {
+        DeviceSnapshot snapshot = DeviceSnapshot.of(device);
+        lock.lock();
+        try {
+            offer(snapshot);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void updateAll(Collection<? extends Device> devices) {
+        List<DeviceSnapshot> snapshots = new ArrayList<>(devices.size());
+        for (Device device : devices) {
+            snapshots.add(DeviceSnapshot.of(device));
+        }
+        lock.lock();
+        try {
+            for (DeviceSnapshot snapshot : snapshots) {
+                offer(snapshot);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void offer(DeviceSnapshot snapshot) {
+        publishedCount.increment();
+        // An already pending device keeps its place in line; only its state is refreshed.
+        if (pending.put(snapshot.getId(), snapshot) != null) {
+            coalescedCount.increment();
+        }
+        notEmpty.signal();
+    }
+
+    /**
+     * Take the oldest pending change without waiting.
+     * @return The latest state of the device that changed first, or null if nothing is pending.
+     */
+    public DeviceSnapshot poll() {
+        lock.lock();
+        try {
+            return takeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the oldest pending change, waiting if necessary.
+     * @param timeout How long to wait.
+     * @param unit The unit of the timeout.
+     * @return The latest state of the device that changed first, or null if the timeout elapsed.
+     * @throws InterruptedException if interrupted while waiting.
+     */
+    public DeviceSnapshot poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (pending.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return takeLocked();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take every pending change at once.
+     * @return The latest state of each changed device, oldest change first.
+     */
+    public List<DeviceSnapshot> drain() {
+        lock.lock();
+        try {
+            List<DeviceSnapshot> changes = new ArrayList<>(pending.values());
+            pending.clear();
+            return changes;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private DeviceSnapshot takeLocked() {
+        Iterator<DeviceSnapshot> oldest = pending.values().iterator();
+        if (!oldest.hasNext()) {
+            return null;
+        }
+        DeviceSnapshot snapshot = oldest.next();
+        oldest.remove();
+        return snapshot;
+    }
+
+    /**
+     * Get the number of devices with a pending change.
+     * @return The pending count.
+     */
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of updates received from the system.
+     * @return The published count.
+     */
+    public long getPublishedCount() { return publishedCount.sum(); }
+
+    /**
+     * Get the number of intermediate updates that were replaced by a newer state before being read.
+     * @return The coalesced count.
+     */
+    public long getCoalescedCount() { return coalescedCount.sum(); }
+}
@@ -0,0 +1,352 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Append-only journal of the commands that change the system, written with group commit.
+ * Callers only queue a record; a single writer thread wakes once per commit interval, writes
+ * everything queued since its last commit and then flushes, and optionally forces, the file
+ * once. A burst of commands therefore costs one disk write instead of one per command.
+ * When the writer falls behind by a full batch, appending blocks until it catches up.
+ *
+ * The journal is split into numbered segment files. Starting a new segment lets a snapshot
+ * make all older segments obsolete.
+ */
+public class CommandJournal implements Closeable {
+    private static final Logger logger = LogManager.getLogger(CommandJournal.class);
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int MAX_PENDING = 1 << 16;
+
+    private final Path directory;
+    private final boolean fsync;
+    private final long commitIntervalNanos;
+    private final long snapshotThreshold;
+    private final Runnable snapshotRequest;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition queued = lock.newCondition();
+    private final Condition committed = lock.newCondition();
+    private final Thread writerThread;
+    private List<String> pending = new ArrayList<>();
+    private long appendedCount;
+    private long committedCount;
+    private long commitCount;
+    private long sinceSnapshot;
+    private boolean snapshotRequested;
+    private boolean rotateRequested;
+    private boolean flushRequested;
+    private boolean closed;
+    private IOException failure;
+    private long segment;
+    private FileChannel channel;
+    private Writer out;
+
+    /**
+     * Constructor for CommandJournal. Opens the segment and starts the writer thread.
+     * @param directory The directory holding the segment files.
+     * @param segment The number of the segment to append to.
+     * @param fsync True to force every commit to the storage device, false to only flush it to the OS.
+     * @param commitIntervalMillis The longest time a record waits for its group commit.
+     * @param snapshotThreshold The number of records after which a snapshot is requested, or 0 for never.
+     * @param snapshotRequest Called on the writer thread when a snapshot is due; must not block.
+     * @throws IOException If the segment cannot be opened.
+     */
+    CommandJournal(Path directory, long segment, boolean fsync, long commitIntervalMillis, long snapshotThreshold,
+                   Runnable snapshotRequest) throws IOException {
+        if (commitIntervalMillis <= 0) {
+            throw new IllegalArgumentException("Commit interval must be positive: " + commitIntervalMillis);
+        }
+        this.directory = directory;
+        this.fsync = fsync;
+        this.commitIntervalNanos = TimeUnit.MILLISECONDS.toNanos(commitIntervalMillis);
+        this.snapshotThreshold = snapshotThreshold;
+        this.snapshotRequest = snapshotRequest;
+        this.segment = segment;
+        open(segment);
+        this.writerThread = new Thread(this::writeLoop, "journal-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queue a record for the next commit and return without waiting for it.
+     * @param record The record, one line without a line terminator.
+     * @throws IllegalStateException If the journal is closed or a previous write failed.
+     */
+    void append(String record) {
+        lock.lock();
+        try {
+            checkWritable();
+            while (pending.size() >= MAX_PENDING && failure == null) {
+                queued.signal();
+                committed.awaitUninterruptibly();
+            }
+            checkWritable();
+            pending.add(record);
+            appendedCount++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until every record appended so far has been committed.
+     * @throws IllegalStateException If a write failed.
+     */
+    public void sync() {
+        lock.lock();
+        try {
+            long target = appendedCount;
+            flushRequested = true;
+            queued.signal();
+            while (committedCount < target && failure == null) {
+                committed.awaitUninterruptibly();
+            }
+            checkFailure();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Commit the queued records and continue in a new segment.
+     * @return The number of the new segment.
+     * @throws IllegalStateException If the journal is closed or a write failed.
+     */
+    long rotate() {
+        lock.lock();
+        try {
+            checkWritable();
+            long target = segment + 1;
+            rotateRequested = true;
+            queued.signal();
+            while (segment < target && failure == null) {
+                committed.awaitUninterruptibly();
+            }
+            checkFailure();
+            return target;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Commit the queued records, stop the writer thread and close the segment.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            queued.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            closeSegment();
+        } catch (IOException e) {
+            logger.warn("Failed to close journal segment {}", segment, e);
+        }
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<String> batch;
+            long upTo;
+            boolean rotate;
+            lock.lock();
+            try {
+                if (!closed && !rotateRequested && !flushRequested && pending.size() < MAX_PENDING) {
+                    try {
+                        queued.awaitNanos(commitIntervalNanos);
+                    } catch (InterruptedException e) {
+                        // Keep writing; the journal stops only when it is closed
+                    }
+                }
+                if (pending.isEmpty() && !rotateRequested) {
+                    flushRequested = false;
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+                batch = pending;
+                pending = new ArrayList<>();
+                upTo = appendedCount;
+                rotate = rotateRequested;
+                flushRequested = false;
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                for (String record : batch) {
+                    out.write(record);
+                    out.write('\n');
+                }
+                out.flush();
+                if (fsync) {
+                    channel.force(false);
+                }
+                if (rotate) {
+                    closeSegment();
+                    open(segment + 1);
+                }
+            } catch (IOException e) {
+                logger.error("Failed to write journal segment {}", segment, e);
+                error = e;
+            }
+
+            boolean requestSnapshot = false;
+            lock.lock();
+            try {
+                committedCount = upTo;
+                if (!batch.isEmpty()) {
+                    commitCount++;
+                }
+                if (error != null) {
+                    failure = error;
+                } else if (rotate) {
+                    segment++;
+                    rotateRequested = false;
+                    snapshotRequested = false;
+                }
+                sinceSnapshot = rotate ? 0 : sinceSnapshot + batch.size();
+                if (snapshotThreshold > 0 && sinceSnapshot >= snapshotThreshold && !snapshotRequested) {
+                    snapshotRequested = true;
+                    requestSnapshot = true;
+                }
+                committed.signalAll();
+                if (error != null) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (requestSnapshot) {
+                snapshotRequest.run();
+            }
+        }
+    }
+
+    private void open(long number) throws IOException {
+        FileOutputStream stream = new FileOutputStream(segmentPath(directory, number).toFile(), true);
+        channel = stream.getChannel();
+        out = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private void closeSegment() throws IOException {
+        out.close();
+    }
+
+    private void checkWritable() {
+        if (closed) {
+            throw new IllegalStateException("Journal is closed");
+        }
+        checkFailure();
+    }
+
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Journal write failed: " + failure.getMessage(), failure);
+        }
+    }
+
+    /**
+     * Get the number of records appended so far.
+     * @return The appended record count.
+     */
+    public long getAppendedCount() {
+        lock.lock();
+        try {
+            return appendedCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of group commits so far; appended records divided by commits is the average batch size.
+     * @return The commit count.
+     */
+    public long getCommitCount() {
+        lock.lock();
+        try {
+            return commitCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the number of the segment currently appended to.
+     * @return The segment number.
+     */
+    public long getSegment() {
+        lock.lock();
+        try {
+            return segment;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Get the path of a segment file.
+     * @param directory The journal directory.
+     * @param number The segment number.
+     * @return The segment path.
+     */
+    static Path segmentPath(Path directory, long number) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    /**
+     * List the segment numbers present in a directory.
+     * @param directory The journal directory.
+     * @return The segment numbers in ascending order.
+     * @throws IOException If the directory cannot be read.
+     */
+    static List<Long> segments(Path directory) throws IOException {
+        List<Long> numbers = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    numbers.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    logger.warn("Ignoring unexpected journal file {}", file);
+                }
+            }
+        }
+        numbers.sort(null);
+        return numbers;
+    }
+}
@@ -0,0 +1,270 @@
+package com.ex2.core;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalTime;
+import java.util.Arrays;
+
+/**
+ * Splits command lines into whitespace-separated tokens without allocating per line.
+ * Input is read through a reusable buffer into a reusable line buffer, and tokens are kept as offsets
+ * into it. Numbers and times are parsed straight from the characters. String tokens such as command
+ * names and device IDs come from a small cache keyed by their characters, so a script that repeats the
+ * same commands and IDs creates each string once. Not thread-safe.
+ */
+final class CommandTokenizer {
+    private static final int CACHE_SIZE = 4096;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+    private boolean eof;
+
+    private char[] line = new char[256];
+    private int lineLength;
+    private long lineNumber;
+
+    private int[] starts = new int[8];
+    private int[] ends = new int[8];
+    private int count;
+
+    private final String[] cache = new String[CACHE_SIZE];
+
+    /**
+     * Constructor for CommandTokenizer.
+     * @param in The command input; it is read in blocks, so it need not be buffered.
+     */
+    CommandTokenizer(Reader in) {
+        this.in = in;
+    }
+
+    /**
+     * Read and tokenize the next line. Line feeds end a line and carriage returns are dropped.
+     * @return True if a line was read, false at the end of the input.
+     * @throws IOException If the input cannot be read.
+     */
+    boolean next() throws IOException {
+        lineLength = 0;
+        boolean read = false;
+        while (true) {
+            if (position == limit) {
+                if (eof || !fill()) {
+                    if (!read) {
+                        return false;
+                    }
+                    break;
+                }
+            }
+            read = true;
+            char c = buffer[position++];
+            if (c == '\n') {
+                break;
+            }
+            if (c != '\r') {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, lineLength * 2);
+                }
+                line[lineLength++] = c;
+            }
+        }
+        lineNumber++;
+        split();
+        return true;
+    }
+
+    private boolean fill() throws IOException {
+        int n = in.read(buffer, 0, buffer.length);
+        if (n < 0) {
+            eof = true;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return n > 0 || fill();
+    }
+
+    private void split() {
+        count = 0;
+        int i = 0;
+        while (i < lineLength) {
+            while (i < lineLength && isSpace(line[i])) {
+                i++;
+            }
+            if (i == lineLength) {
+                break;
+            }
+            int start = i;
+            while (i < lineLength && !isSpace(line[i])) {
+                i++;
+            }
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            starts[count] = start;
+            ends[count] = i;
+            count++;
+        }
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    /**
+     * Get the number of tokens on the current line.
+     * @return The token count; 0 for a blank line.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Get the number of the current line, starting at 1.
+     * @return The line number.
+     */
+    long getLineNumber() {
+        return lineNumber;
+    }
+
+    /**
+     * Check whether the current line is a comment, starting with {@code #}.
+     * @return True for a comment line.
+     */
+    boolean isComment() {
+        return count > 0 && line[starts[0]] == '#';
+    }
+
+    /**
+     * Get a token as a string, reusing the string of an earlier token with the same characters.
+     * @param index The index of the token.
+     * @return The token.
+     */
+    String token(int index) {
+        int start = starts[index];
+        int length = ends[index] - start;
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + line[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (CACHE_SIZE - 1);
+        String cached = cache[slot];
+        if (cached != null && cached.length() == length && matches(cached, start)) {
+            return cached;
+        }
+        String token = new String(line, start, length);
+        cache[slot] = token;
+        return token;
+    }
+
+    private boolean matches(String s, int start) {
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != line[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse a token as a decimal integer.
+     * @param index The index of the token.
+     * @return The value.
+     * @throws IllegalArgumentException if the token is not an integer.
+     */
+    int parseInt(int index) {
+        return (int) parseLong(index, Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Parse a token as a decimal long.
+     * @param index The index of the token.
+     * @return The value.
+     * @throws IllegalArgumentException if the token is not a long.
+     */
+    long parseLong(int index) {
+        return parseLong(index, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    private long parseLong(int index, long min, long max) {
+        int i = starts[index];
+        int end = ends[index];
+        boolean negative = line[i] == '-';
+        if (negative || line[i] == '+') {
+            i++;
+        }
+        if (i == end) {
+            throw invalid("number", index);
+        }
+        // Accumulate negatively, as Long.parseLong does, so that Long.MIN_VALUE is representable.
+        long floor = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long value = 0;
+        for (; i < end; i++) {
+            int digit = line[i] - '0';
+            if (digit < 0 || digit > 9 || value < floor / 10 || value * 10 < floor + digit) {
+                throw invalid("number", index);
+            }
+            value = value * 10 - digit;
+        }
+        if (!negative) {
+            value = -value;
+        }
+        if (value < min || value > max) {
+            throw invalid("number", index);
+        }
+        return value;
+    }
+
+    /**
+     * Parse a token as a time of day in the format of {@link LocalTime#parse(CharSequence)}.
+     * The common {@code HH:mm} and {@code HH:mm:ss} forms are parsed in place.
+     * @param index The index of the token.
+     * @return The time.
+     * @throws java.time.format.DateTimeParseException if the token is not a time.
+     */
+    LocalTime parseTime(int index) {
+        int start = starts[index];
+        int length = ends[index] - start;
+        if ((length == 5 || length == 8) && line[start + 2] == ':' && (length == 5 || line[start + 5] == ':')) {
+            int hour = twoDigits(start);
+            int minute = twoDigits(start + 3);
+            int second = length == 8 ? twoDigits(start + 6) : 0;
+            if (hour >= 0 && hour < 24 && minute >= 0 && minute < 60 && second >= 0 && second < 60) {
+                return LocalTime.of(hour, minute, second);
+            }
+        }
+        return LocalTime.parse(text(index));
+    }
+
+    private int twoDigits(int at) {
+        int tens = line[at] - '0';
+        int ones = line[at + 1] - '0';
+        if (tens < 0 || tens > 9 || ones < 0 || ones > 9) {
+            return -1;
+        }
+        return tens * 10 + ones;
+    }
+
+    /**
+     * Parse a token as a boolean with the rules of {@link Boolean#parseBoolean(String)}.
+     * @param index The index of the token.
+     * @return True if the token is "true", ignoring case, false otherwise.
+     */
+    boolean parseBoolean(int index) {
+        int start = starts[index];
+        return ends[index] - start == 4
+                && Character.toLowerCase(line[start]) == 't'
+                && Character.toLowerCase(line[start + 1]) == 'r'
+                && Character.toLowerCase(line[start + 2]) == 'u'
+                && Character.toLowerCase(line[start + 3]) == 'e';
+    }
+
+    private String text(int index) {
+        return new String(line, starts[index], ends[index] - starts[index]);
+    }
+
+    private IllegalArgumentException invalid(String what, int index) {
+        return new IllegalArgumentException("Invalid " + what + ": " + text(index));
+    }
+}
@@ -0,0 +1,75 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.apache.logging.log4j.message.AsynchronouslyFormattable;
+import org.apache.logging.log4j.message.Message;
+import org.apache.logging.log4j.util.StringBuilderFormattable;
+
+/**
+ * Structured audit record of a command applied to a device, in the format of the {@code com.ex2.audit} logger.
+ * The system logs its audit events as parameterized messages in this format rather than as instances,
+ * so the asynchronous logger copies the fields into its reusable ring-buffer slot and a command allocates
+ * nothing for auditing. The time of the command is the timestamp of the log event.
+ * @param deviceId The ID of the device.
+ * @param deviceType The type of the device.
+ * @param action The command that was applied.
+ * @param status The device status after the command.
+ */
+@AsynchronouslyFormattable
+public record DeviceAuditEvent(String deviceId, String deviceType, String action, String status)
+        implements Message, StringBuilderFormattable {
+
+    /**
+     * Logger that receives device audit events.
+     */
+    public static final Logger AUDIT = LogManager.getLogger("com.ex2.audit");
+
+    /**
+     * Format of audit messages, with the device ID, type, action and status as parameters.
+     */
+    public static final String FORMAT = "device={} type={} action={} status={}";
+
+    /**
+     * Log an audit event for a device if the audit logger is enabled.
+     * The fields are passed as parameters of {@link #FORMAT}, which the asynchronous logger handles
+     * without allocating; nothing is evaluated when the logger is disabled.
+     * @param device The device the command was applied to.
+     * @param action The command that was applied.
+     */
+    static void log(Device device, String action) {
+        if (AUDIT.isInfoEnabled()) {
+            AUDIT.info(FORMAT, device.getId(), device.getType(), action, device.getStatus());
+        }
+    }
+
+    @Override
+    public void formatTo(StringBuilder buffer) {
+        buffer.append("device=").append(deviceId)
+              .append(" type=").append(deviceType)
+              .append(" action=").append(action)
+              .append(" status=").append(status);
+    }
+
+    @Override
+    public String getFormattedMessage() {
+        StringBuilder buffer = new StringBuilder(64);
+        formatTo(buffer);
+        return buffer.toString();
+    }
+
+    @Override
+    public String getFormat() {
+        return FORMAT;
+    }
+
+    @Override
+    public Object[] getParameters() {
+        return new Object[] {deviceId, deviceType, action, status};
+    }
+
+    @Override
+    public Throwable getThrowable() {
+        return null;
+    }
+}
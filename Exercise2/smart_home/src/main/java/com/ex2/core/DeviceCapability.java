@@ -0,0 +1,21 @@
+package com.ex2.core;
+
+/**
+ * Operations a device type supports, declared by its {@link DeviceType}.
+ */
+public enum DeviceCapability {
+    /**
+     * The device is turned on and off.
+     */
+    SWITCHABLE,
+
+    /**
+     * The device is locked and unlocked; turning it on locks it.
+     */
+    LOCKABLE,
+
+    /**
+     * The device holds a numeric setpoint, such as the temperature of a thermostat.
+     */
+    SETPOINT
+}
@@ -0,0 +1,63 @@
+package com.ex2.core;
+
+/**
+ * A single device command, used to submit several commands to the system as one batch.
+ */
+public class DeviceCommand {
+
+    /**
+     * Kinds of device commands.
+     */
+    public enum Type {
+        TURN_ON,
+        TURN_OFF,
+        SET_TEMPERATURE
+    }
+
+    private final Type type;
+    private final String deviceId;
+    private final int value;
+
+    private DeviceCommand(Type type, String deviceId, int value) {
+        this.type = type;
+        this.deviceId = deviceId;
+        this.value = value;
+    }
+
+    /**
+     * Create a command that turns a device on.
+     * @param deviceId The ID of the device.
+     * @return The command.
+     */
+    public static DeviceCommand turnOn(String deviceId) {
+        return new DeviceCommand(Type.TURN_ON, deviceId, 0);
+    }
+
+    /**
+     * Create a command that turns a device off.
+     * @param deviceId The ID of the device.
+     * @return The command.
+     */
+    public static DeviceCommand turnOff(String deviceId) {
+        return new DeviceCommand(Type.TURN_OFF, deviceId, 0);
+    }
+
+    /**
+     * Create a command that sets the temperature of a thermostat.
+     * @param deviceId The ID of the thermostat.
+     * @param temperature The temperature to set.
+     * @return The command.
+     */
+    public static DeviceCommand setTemperature(String deviceId, int temperature) {
+        return new DeviceCommand(Type.SET_TEMPERATURE, deviceId, temperature);
+    }
+
+    public Type getType() { return type; }
+    public String getDeviceId() { return deviceId; }
+    public int getValue() { return value; }
+
+    @Override
+    public String toString() {
+        return type == Type.SET_TEMPERATURE ? type + "(" + deviceId + ", " + value + ")" : type + "(" + deviceId + ")";
+    }
+}
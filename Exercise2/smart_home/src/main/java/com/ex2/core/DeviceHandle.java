@@ -0,0 +1,63 @@
+package com.ex2.core;
+
+/**
+ * Stable reference to a registered device, returned by {@link SmartHomeSystem#addDevice}.
+ * Commands issued through a handle reach the device directly instead of looking its ID up
+ * on every call. A handle is invalidated when its device is removed; it stays invalid even if
+ * a device with the same ID is added again, which yields a new handle.
+ */
+public final class DeviceHandle {
+    private final DeviceProxy proxy;
+    private volatile boolean valid;
+
+    /**
+     * Constructor for DeviceHandle. The handle starts out invalid until its device is registered.
+     * @param proxy The proxy of the device.
+     */
+    DeviceHandle(DeviceProxy proxy) {
+        this.proxy = proxy;
+    }
+
+    /**
+     * Get the ID of the device.
+     * @return The device ID.
+     */
+    public String getId() { return proxy.getId(); }
+
+    /**
+     * Get the type of the device.
+     * @return The device type.
+     */
+    public String getType() { return proxy.getType(); }
+
+    /**
+     * Check whether the device is still registered.
+     * @return True until the device is removed.
+     */
+    public boolean isValid() { return valid; }
+
+    /**
+     * Resolve the handle to its device.
+     * @return The proxy of the device.
+     * @throws IllegalArgumentException if the device has been removed.
+     */
+    DeviceProxy resolve() {
+        if (!valid) {
+            throw new IllegalArgumentException("Device with ID " + proxy.getId() + " does not exist");
+        }
+        return proxy;
+    }
+
+    void activate() {
+        valid = true;
+    }
+
+    void invalidate() {
+        valid = false;
+    }
+
+    @Override
+    public String toString() {
+        return proxy.getType() + " " + proxy.getId() + (valid ? "" : " (removed)");
+    }
+}
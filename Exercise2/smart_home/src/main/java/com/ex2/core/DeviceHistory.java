@@ -0,0 +1,421 @@
+package com.ex2.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.LongSupplier;
+
+/**
+ * Time-series history of device states, fed as an observer.
+ * Each device keeps its most recent state changes in a ring buffer and rolls them up into
+ * minute and hour aggregates, also kept in ring buffers, so memory per device is fixed.
+ * Values are numeric: the temperature of a thermostat, otherwise 1 for on or locked and 0
+ * for off or unlocked. Aggregates are weighted by how long each value was held.
+ * <p>
+ * The history of a removed device stays readable until its hour rollups have aged out, then it is
+ * evicted. The number of devices with a history is capped: at the cap, the device removed longest ago
+ * is evicted early to make room, and if no removed device is left, new devices are not recorded.
+ */
+public class DeviceHistory implements DeviceObserver {
+    /** Length of a minute rollup in milliseconds. */
+    public static final long MINUTE = 60_000;
+    /** Length of an hour rollup in milliseconds. */
+    public static final long HOUR = 60 * MINUTE;
+
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final Queue<Closed> closed = new ConcurrentLinkedQueue<>();
+    private final int maxDevices;
+    private final int sampleCapacity;
+    private final int minuteCapacity;
+    private final int hourCapacity;
+    private final LongSupplier clock;
+
+    /**
+     * State of a device at the time it changed.
+     * @param timestamp The time of the change in milliseconds since the epoch.
+     * @param value The new value.
+     */
+    public record Sample(long timestamp, int value) {
+    }
+
+    /**
+     * Aggregate of a device's values over one minute or hour.
+     * @param start The start of the period in milliseconds since the epoch.
+     * @param min The lowest value held during the period.
+     * @param max The highest value held during the period.
+     * @param average The time-weighted average value over the recorded part of the period.
+     * @param onMillis How long the value was non-zero, e.g. how long a light was on.
+     * @param changes The number of state changes during the period.
+     */
+    public record Rollup(long start, int min, int max, double average, long onMillis, int changes) {
+    }
+
+    /**
+     * A removed device's series, queued for eviction.
+     * @param id The ID of the device.
+     * @param history The series, evicted only if it is still closed at the same time.
+     * @param time The time the device was removed.
+     */
+    private record Closed(String id, Series history, long time) {
+    }
+
+    /**
+     * Constructor for DeviceHistory keeping 256 changes, an hour of minutes and a week of hours
+     * per device, about 13 KB each, for at most 10,000 devices.
+     */
+    public DeviceHistory() {
+        this(256, 60, 7 * 24, 10_000, System::currentTimeMillis);
+    }
+
+    /**
+     * Constructor for DeviceHistory for at most 10,000 devices.
+     * @param sampleCapacity The number of state changes kept per device.
+     * @param minuteCapacity The number of minute rollups kept per device.
+     * @param hourCapacity The number of hour rollups kept per device.
+     * @param clock Supplies the current time in milliseconds since the epoch.
+     * @throws IllegalArgumentException if a capacity is not positive.
+     */
+    public DeviceHistory(int sampleCapacity, int minuteCapacity, int hourCapacity, LongSupplier clock) {
+        this(sampleCapacity, minuteCapacity, hourCapacity, 10_000, clock);
+    }
+
+    /**
+     * Constructor for DeviceHistory.
+     * @param sampleCapacity The number of state changes kept per device.
+     * @param minuteCapacity The number of minute rollups kept per device.
+     * @param hourCapacity The number of hour rollups kept per device.
+     * @param maxDevices The maximum number of devices with a history, including removed ones.
+     * @param clock Supplies the current time in milliseconds since the epoch.
+     * @throws IllegalArgumentException if a capacity or the device limit is not positive.
+     */
+    public DeviceHistory(int sampleCapacity, int minuteCapacity, int hourCapacity, int maxDevices, LongSupplier clock) {
+        if (sampleCapacity <= 0 || minuteCapacity <= 0 || hourCapacity <= 0) {
+            throw new IllegalArgumentException("History capacities must be positive");
+        }
+        if (maxDevices <= 0) {
+            throw new IllegalArgumentException("History device limit must be positive: " + maxDevices);
+        }
+        this.maxDevices = maxDevices;
+        this.sampleCapacity = sampleCapacity;
+        this.minuteCapacity = minuteCapacity;
+        this.hourCapacity = hourCapacity;
+        this.clock = clock;
+    }
+
+    @Override
+    public void update(Device device) {
+        long now = clock.getAsLong();
+        evictExpired(now);
+        String id = device.getId();
+        if (device instanceof DeviceProxy && !((DeviceProxy) device).getHandle().isValid()) {
+            Series history = series.get(id);
+            if (history != null && history.close(now)) {
+                closed.add(new Closed(id, history, now));
+            }
+            return;
+        }
+        int value = DeviceProxy.stateValue(device);
+        while (true) {
+            Series history = series.get(id);
+            if (history == null) {
+                if (series.size() >= maxDevices && !evictOldest()) {
+                    return;
+                }
+                history = series.computeIfAbsent(id, key -> new Series(sampleCapacity, minuteCapacity, hourCapacity));
+            }
+            if (history.record(now, value)) {
+                return;
+            }
+            // The series was evicted concurrently; record into a fresh one.
+        }
+    }
+
+    /**
+     * Evict the series of devices removed long enough ago that their hour rollups have aged out.
+     */
+    private void evictExpired(long now) {
+        long retention = HOUR * hourCapacity;
+        Closed head;
+        while ((head = closed.peek()) != null && now - head.time() >= retention) {
+            if (closed.remove(head)) {
+                evict(head);
+            }
+        }
+    }
+
+    /**
+     * Evict the series of the device removed longest ago.
+     * @return True if a series was evicted, false if there is no removed device to evict.
+     */
+    private boolean evictOldest() {
+        Closed head;
+        while ((head = closed.poll()) != null) {
+            if (evict(head)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean evict(Closed entry) {
+        return entry.history().evict(entry.time()) && series.remove(entry.id(), entry.history());
+    }
+
+    /**
+     * Get the recorded state changes of a device.
+     * @param id The ID of the device.
+     * @param from The start of the range, inclusive, in milliseconds since the epoch.
+     * @param to The end of the range, exclusive, in milliseconds since the epoch.
+     * @return The changes in the range, oldest first.
+     */
+    public List<Sample> getSamples(String id, long from, long to) {
+        Series history = series.get(id);
+        return history != null ? history.samples(from, to) : Collections.emptyList();
+    }
+
+    /**
+     * Get the minute rollups of a device.
+     * @param id The ID of the device.
+     * @param from The start of the range, in milliseconds since the epoch.
+     * @param to The end of the range, exclusive, in milliseconds since the epoch.
+     * @return The rollups of the minutes overlapping the range, oldest first.
+     */
+    public List<Rollup> getMinuteRollups(String id, long from, long to) {
+        Series history = series.get(id);
+        return history != null ? history.rollups(history.minutes, clock.getAsLong(), from, to) : Collections.emptyList();
+    }
+
+    /**
+     * Get the hour rollups of a device.
+     * @param id The ID of the device.
+     * @param from The start of the range, in milliseconds since the epoch.
+     * @param to The end of the range, exclusive, in milliseconds since the epoch.
+     * @return The rollups of the hours overlapping the range, oldest first.
+     */
+    public List<Rollup> getHourRollups(String id, long from, long to) {
+        Series history = series.get(id);
+        return history != null ? history.rollups(history.hours, clock.getAsLong(), from, to) : Collections.emptyList();
+    }
+
+    /**
+     * Drop the history of a device.
+     * @param id The ID of the device.
+     */
+    public void forget(String id) {
+        Series history = series.remove(id);
+        if (history != null) {
+            history.discard();
+        }
+    }
+
+    /**
+     * Get the number of devices with a history, including removed devices not evicted yet.
+     * @return The device count.
+     */
+    public int getDeviceCount() {
+        return series.size();
+    }
+
+    /**
+     * History of one device. All access is synchronized on the series.
+     */
+    private static final class Series {
+        private final long[] sampleTimes;
+        private final int[] sampleValues;
+        private int sampleCount;
+        private int nextSample;
+        private final Rollups minutes;
+        private final Rollups hours;
+        private long lastTime = -1;
+        private int lastValue;
+        private boolean closed;
+        private long closedAt = -1;
+        private boolean evicted;
+
+        Series(int sampleCapacity, int minuteCapacity, int hourCapacity) {
+            this.sampleTimes = new long[sampleCapacity];
+            this.sampleValues = new int[sampleCapacity];
+            this.minutes = new Rollups(MINUTE, minuteCapacity);
+            this.hours = new Rollups(HOUR, hourCapacity);
+        }
+
+        /**
+         * Record the value of the device.
+         * @return False if the series was evicted and the value not recorded.
+         */
+        synchronized boolean record(long time, int value) {
+            if (evicted) {
+                return false;
+            }
+            if (lastTime >= 0 && value == lastValue && !closed) {
+                return true;
+            }
+            advance(time);
+            closed = false;
+            lastTime = time;
+            lastValue = value;
+            minutes.change(time, value);
+            hours.change(time, value);
+            sampleTimes[nextSample] = time;
+            sampleValues[nextSample] = value;
+            nextSample = (nextSample + 1) % sampleTimes.length;
+            sampleCount = Math.min(sampleCount + 1, sampleTimes.length);
+            return true;
+        }
+
+        /**
+         * Mark the device as removed.
+         * @return True if it was open, so that it should be queued for eviction.
+         */
+        synchronized boolean close(long time) {
+            if (closed || evicted) {
+                return false;
+            }
+            advance(time);
+            closed = true;
+            closedAt = time;
+            return true;
+        }
+
+        /**
+         * Mark the series as evicted, unless the device was added again since it was closed at the given time.
+         * @return True if the series is evicted.
+         */
+        synchronized boolean evict(long closedTime) {
+            if (evicted || (lastTime >= 0 && (!closed || closedAt != closedTime))) {
+                return evicted;
+            }
+            evicted = true;
+            return true;
+        }
+
+        /**
+         * Mark the series as evicted unconditionally.
+         */
+        synchronized void discard() {
+            evicted = true;
+        }
+
+        synchronized List<Sample> samples(long from, long to) {
+            List<Sample> result = new ArrayList<>();
+            for (int i = 0; i < sampleCount; i++) {
+                int index = (nextSample - sampleCount + i + sampleTimes.length) % sampleTimes.length;
+                if (sampleTimes[index] >= from && sampleTimes[index] < to) {
+                    result.add(new Sample(sampleTimes[index], sampleValues[index]));
+                }
+            }
+            return result;
+        }
+
+        synchronized List<Rollup> rollups(Rollups rollups, long now, long from, long to) {
+            advance(now);
+            return rollups.query(from, to);
+        }
+
+        /**
+         * Account for the time the last value was held, up to the given time.
+         */
+        private void advance(long time) {
+            if (lastTime < 0 || closed || time <= lastTime) {
+                return;
+            }
+            minutes.hold(lastTime, time, lastValue);
+            hours.hold(lastTime, time, lastValue);
+            lastTime = time;
+        }
+    }
+
+    /**
+     * Ring buffer of aggregates over fixed-length periods, in columns of primitives.
+     * The newest entry is the period currently being filled.
+     */
+    private static final class Rollups {
+        private final long width;
+        private final long[] starts;
+        private final int[] mins;
+        private final int[] maxs;
+        private final long[] weightedSums;
+        private final long[] coveredMillis;
+        private final long[] onMillis;
+        private final int[] changes;
+        private int count;
+        private int newest = -1;
+
+        Rollups(long width, int capacity) {
+            this.width = width;
+            this.starts = new long[capacity];
+            this.mins = new int[capacity];
+            this.maxs = new int[capacity];
+            this.weightedSums = new long[capacity];
+            this.coveredMillis = new long[capacity];
+            this.onMillis = new long[capacity];
+            this.changes = new int[capacity];
+        }
+
+        void change(long time, int value) {
+            int index = periodOf(time, value);
+            mins[index] = Math.min(mins[index], value);
+            maxs[index] = Math.max(maxs[index], value);
+            changes[index]++;
+        }
+
+        /**
+         * Add the interval [from, to) during which a value was held, split at period boundaries.
+         */
+        void hold(long from, long to, int value) {
+            // Periods that would be overwritten before the end of the interval need not be filled.
+            long earliest = to - width * starts.length;
+            if (from < earliest) {
+                from = earliest - Math.floorMod(earliest, width);
+            }
+            while (from < to) {
+                int index = periodOf(from, value);
+                long end = Math.min(to, starts[index] + width);
+                long held = end - from;
+                weightedSums[index] += held * value;
+                coveredMillis[index] += held;
+                if (value != 0) {
+                    onMillis[index] += held;
+                }
+                from = end;
+            }
+        }
+
+        /**
+         * Find the period containing a time, starting a new one if it is past the newest.
+         * A new period starts out holding the given value.
+         */
+        private int periodOf(long time, int value) {
+            long start = time - Math.floorMod(time, width);
+            if (newest >= 0 && starts[newest] >= start) {
+                return newest;
+            }
+            newest = (newest + 1) % starts.length;
+            count = Math.min(count + 1, starts.length);
+            starts[newest] = start;
+            mins[newest] = value;
+            maxs[newest] = value;
+            weightedSums[newest] = 0;
+            coveredMillis[newest] = 0;
+            onMillis[newest] = 0;
+            changes[newest] = 0;
+            return newest;
+        }
+
+        List<Rollup> query(long from, long to) {
+            List<Rollup> result = new ArrayList<>();
+            for (int i = count - 1; i >= 0; i--) {
+                int index = Math.floorMod(newest - i, starts.length);
+                if (starts[index] + width > from && starts[index] < to) {
+                    double average = coveredMillis[index] > 0 ? (double) weightedSums[index] / coveredMillis[index] : mins[index];
+                    result.add(new Rollup(starts[index], mins[index], maxs[index], average, onMillis[index], changes[index]));
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Serial executor for the commands of one device.
+ * Commands run one at a time in submission order, so two commands to the same device
+ * never interleave while different devices run in parallel. Asynchronous commands are
+ * drained on a backing executor; a synchronous command runs on the calling thread when
+ * the mailbox is idle and otherwise waits its turn. Work that must not run while a device is
+ * held, such as commands to other devices, can be deferred until the thread holds no mailbox.
+ */
+class DeviceMailbox implements Executor {
+    private static final Logger logger = LogManager.getLogger(DeviceMailbox.class);
+
+    /**
+     * Backing executor for mailboxes whose owner does not supply one.
+     */
+    static final ExecutorService DEFAULT_EXECUTOR = Executors.newVirtualThreadPerTaskExecutor();
+
+    private static final ThreadLocal<Held> HELD = ThreadLocal.withInitial(Held::new);
+
+    private final String deviceId;
+    private final Executor backing;
+    private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+    private final AtomicReference<Thread> owner = new AtomicReference<>();
+
+    /**
+     * Constructor for DeviceMailbox.
+     * @param deviceId The ID of the device the mailbox serves.
+     * @param backing The executor that drains queued commands. It must not run on a thread that
+     *                may wait in {@link #run(Runnable)}, such as an event loop, or that thread could
+     *                wait for a drain queued behind itself.
+     */
+    DeviceMailbox(String deviceId, Executor backing) {
+        this.deviceId = deviceId;
+        this.backing = backing;
+    }
+
+    /**
+     * Queue a command and return without waiting for it.
+     * @param command The command to run.
+     */
+    @Override
+    public void execute(Runnable command) {
+        commands.add(command);
+        if (owner.get() == null) {
+            backing.execute(this::drain);
+        }
+    }
+
+    /**
+     * Run a command and wait for it to complete.
+     * Exceptions thrown by the command propagate to the caller.
+     * @param command The command to run.
+     */
+    void run(Runnable command) {
+        Thread current = Thread.currentThread();
+        if (owner.get() == current) {
+            command.run();
+            return;
+        }
+        if (owner.compareAndSet(null, current)) {
+            Held held = HELD.get();
+            int mark = held.hold();
+            try {
+                runQueued(commands.size());
+                command.run();
+            } finally {
+                release(held, mark);
+            }
+            return;
+        }
+        FutureTask<Void> task = new FutureTask<>(command, null);
+        execute(task);
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for device " + deviceId, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Command for device " + deviceId + " failed", e.getCause());
+        }
+    }
+
+    /**
+     * Run work once the calling thread holds no device mailbox.
+     * The work and its argument are queued separately, so deferring does not allocate.
+     * @param work The work to run.
+     * @param argument The argument to pass to the work.
+     * @return True if the work was deferred, false if the thread holds no mailbox and should run it itself.
+     */
+    static <T> boolean runWhenReleased(Consumer<? super T> work, T argument) {
+        Held held = HELD.get();
+        if (held.depth == 0) {
+            return false;
+        }
+        held.deferred.add(work);
+        held.deferred.add(argument);
+        return true;
+    }
+
+    private void drain() {
+        if (!owner.compareAndSet(null, Thread.currentThread())) {
+            return;
+        }
+        Held held = HELD.get();
+        int mark = held.hold();
+        try {
+            runQueued(Integer.MAX_VALUE);
+        } finally {
+            release(held, mark);
+        }
+    }
+
+    private void runQueued(int limit) {
+        Runnable command;
+        for (int i = 0; i < limit && (command = commands.poll()) != null; i++) {
+            try {
+                command.run();
+            } catch (RuntimeException e) {
+                logger.warn("Command for device {} failed", deviceId, e);
+            }
+        }
+    }
+
+    private void release(Held held, int mark) {
+        owner.set(null);
+        if (!commands.isEmpty()) {
+            backing.execute(this::drain);
+        }
+        held.release(mark);
+    }
+
+    /**
+     * The mailboxes held by one thread and the work it deferred until it holds none.
+     * Work deferred while running deferred work belongs to the mailbox held meanwhile and runs
+     * when that one is released, so it stays within the same trigger cascade.
+     */
+    private static final class Held {
+        int depth;
+        // Pairs of work and its argument
+        final ArrayList<Object> deferred = new ArrayList<>();
+
+        /**
+         * Record that a mailbox is acquired.
+         * @return The position of the first work deferred while it is held.
+         */
+        int hold() {
+            depth++;
+            return deferred.size();
+        }
+
+        /**
+         * Record that a mailbox is released, running the work deferred since it was acquired
+         * if the thread holds no other mailbox.
+         */
+        @SuppressWarnings("unchecked")
+        void release(int mark) {
+            if (--depth > 0) {
+                return;
+            }
+            try {
+                for (int i = mark; i < deferred.size(); i += 2) {
+                    try {
+                        ((Consumer<Object>) deferred.get(i)).accept(deferred.get(i + 1));
+                    } catch (RuntimeException e) {
+                        logger.warn("Deferred device work failed", e);
+                    }
+                }
+            } finally {
+                for (int i = deferred.size() - 1; i >= mark; i--) {
+                    deferred.remove(i);
+                }
+            }
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.ex2.core;
 
+import java.util.Collection;
+
 /**
  * Observer interface for device updates.
  */
@@ -9,4 +11,15 @@ public interface DeviceObserver {
      * @param device The updated device.
      */
     void update(Device device);
+
+    /**
+     * Called once for a batch of updated devices.
+     * The default implementation calls {@link #update(Device)} for each device.
+     * @param devices The updated devices, each listed once.
+     */
+    default void updateAll(Collection<? extends Device> devices) {
+        for (Device device : devices) {
+            update(device);
+        }
+    }
 }
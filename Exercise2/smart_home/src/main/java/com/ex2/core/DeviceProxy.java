@@ -3,20 +3,54 @@ package com.ex2.core;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+
 /**
  * Proxy class for devices, providing logging and additional functionality.
+ * Every command goes through the device's mailbox, so commands to one device are
+ * serialized while commands to different devices run in parallel without a shared lock.
  */
 public class DeviceProxy implements Device {
     private static final Logger logger = LogManager.getLogger(DeviceProxy.class);
-    private Device device;
+    private volatile Device device;
+    private final DeviceType deviceType;
+    private final DeviceObserver changeListener;
+    private final DeviceMailbox mailbox;
+    private final DeviceHandle handle = new DeviceHandle(this);
+    private final List<Trigger> dependentTriggers = new CopyOnWriteArrayList<>();
+    private volatile long lastChangeNanos = System.nanoTime();
     
     /**
      * Constructor for DeviceProxy.
      * @param device The actual device to proxy.
      */
     public DeviceProxy(Device device) {
+        this(device, null);
+    }
+
+    /**
+     * Constructor for DeviceProxy that publishes state changes.
+     * @param device The actual device to proxy.
+     * @param changeListener Listener called after each state change, or null.
+     */
+    public DeviceProxy(Device device, DeviceObserver changeListener) {
+        this(device, changeListener, null);
+    }
+
+    /**
+     * Constructor for DeviceProxy that publishes state changes and owns a command mailbox.
+     * @param device The actual device to proxy.
+     * @param changeListener Listener called after each state change, or null.
+     * @param commandExecutor Executor backing the device mailbox, or null for the default one.
+     */
+    DeviceProxy(Device device, DeviceObserver changeListener, Executor commandExecutor) {
         this.device = device;
-        logger.info("Created proxy for device: {}", device.getId());
+        this.deviceType = DeviceTypeRegistry.describe(device);
+        this.changeListener = changeListener;
+        this.mailbox = new DeviceMailbox(device.getId(), commandExecutor != null ? commandExecutor : DeviceMailbox.DEFAULT_EXECUTOR);
+        logger.debug("Created proxy for device: {}", device.getId());
     }
     
     @Override
@@ -31,14 +65,20 @@ public class DeviceProxy implements Device {
     
     @Override
     public void turnOn() {
-        logger.info("Turning on {} {}", device.getType(), device.getId());
-        device.turnOn();
+        mailbox.run(() -> {
+            device.turnOn();
+            DeviceAuditEvent.log(device, "turnOn");
+            publishChange();
+        });
     }
     
     @Override
     public void turnOff() {
-        logger.info("Turning off {} {}", device.getType(), device.getId());
-        device.turnOff();
+        mailbox.run(() -> {
+            device.turnOff();
+            DeviceAuditEvent.log(device, "turnOff");
+            publishChange();
+        });
     }
     
     @Override
@@ -46,6 +86,14 @@ public class DeviceProxy implements Device {
         return device.getStatus();
     }
     
+    /**
+     * Get the type of the underlying device, resolved when the proxy was created.
+     * @return The device type.
+     */
+    public DeviceType getDeviceType() {
+        return deviceType;
+    }
+
     /**
      * Get the underlying device.
      * @return The actual device.
@@ -53,4 +101,104 @@ public class DeviceProxy implements Device {
     public Device getDevice() {
         return device;
     }
+
+    /**
+     * Get the state of a device as a number.
+     * @param device The device, or a proxy of it.
+     * @return The temperature of a thermostat, otherwise 1 for on or locked and 0 for off or unlocked.
+     */
+    static int stateValue(Device device) {
+        if (device instanceof DeviceProxy) {
+            DeviceProxy proxy = (DeviceProxy) device;
+            device = proxy.device;
+            if (!(device instanceof DeviceStateStore.View)) {
+                return proxy.deviceType.getState(device);
+            }
+        }
+        if (device instanceof DeviceStateStore.View) {
+            return ((DeviceStateStore.View) device).getState();
+        }
+        return DeviceTypeRegistry.describe(device).getState(device);
+    }
+
+    /**
+     * Change the setpoint of the device, such as the temperature of a thermostat.
+     * A device held in a {@link DeviceStateStore} is set in the store and the change is published
+     * here, as a device object publishes its own setpoint changes. Call it on the device's mailbox.
+     * @param value The new setpoint.
+     * @throws IllegalArgumentException if the value is out of range or the device has no setpoint.
+     */
+    void setSetpoint(int value) {
+        if (device instanceof DeviceStateStore.View) {
+            ((DeviceStateStore.View) device).setSetpoint(value);
+            publishChange();
+        } else {
+            deviceType.setSetpoint(device, value);
+        }
+    }
+
+    /**
+     * Replace a view of a {@link DeviceStateStore} with a standalone device in the same state, before
+     * the device leaves the store, so the proxy of a removed device still reports its last state.
+     * @param changeListener Receives changes the standalone device publishes on its own.
+     */
+    void detach(DeviceObserver changeListener) {
+        Device current = device;
+        if (current instanceof DeviceStateStore.View) {
+            device = deviceType.restore(current.getId(), stateValue(current), changeListener);
+        }
+    }
+
+    /**
+     * Queue a command against this device, in order with its other commands, without waiting.
+     * @param command The command to run.
+     */
+    void submit(Runnable command) {
+        mailbox.execute(command);
+    }
+
+    /**
+     * Run a command against this device, in order with its other commands, and wait for it.
+     * @param command The command to run.
+     */
+    void run(Runnable command) {
+        mailbox.run(command);
+    }
+
+    /**
+     * Get the handle of this device.
+     * @return The handle, valid while the device is registered.
+     */
+    DeviceHandle getHandle() {
+        return handle;
+    }
+
+    /**
+     * Get the triggers whose condition reads this device, maintained by the trigger index.
+     * @return The dependent triggers.
+     */
+    List<Trigger> getDependentTriggers() {
+        return dependentTriggers;
+    }
+
+    /**
+     * Record that the device state changed now.
+     */
+    void markChanged() {
+        lastChangeNanos = System.nanoTime();
+    }
+
+    /**
+     * Get the time of the last recorded state change.
+     * @return The {@link System#nanoTime()} value of the last change.
+     */
+    long getLastChangeNanos() {
+        return lastChangeNanos;
+    }
+
+    private void publishChange() {
+        if (changeListener != null) {
+            changeListener.update(this);
+        }
+    }
 }
@@ -0,0 +1,44 @@
+package com.ex2.core;
+
+/**
+ * Immutable view of a device's state at a point in time.
+ */
+public final class DeviceSnapshot {
+    private final String id;
+    private final String type;
+    private final String status;
+    private final long timestamp;
+
+    /**
+     * Constructor for DeviceSnapshot.
+     * @param id The device ID.
+     * @param type The device type.
+     * @param status The device status.
+     * @param timestamp The capture time in milliseconds since the epoch.
+     */
+    public DeviceSnapshot(String id, String type, String status, long timestamp) {
+        this.id = id;
+        this.type = type;
+        this.status = status;
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * Capture the current state of a device.
+     * @param device The device to capture.
+     * @return The snapshot.
+     */
+    public static DeviceSnapshot of(Device device) {
+        return new DeviceSnapshot(device.getId(), device.getType(), device.getStatus(), System.currentTimeMillis());
+    }
+
+    public String getId() { return id; }
+    public String getType() { return type; }
+    public String getStatus() { return status; }
+    public long getTimestamp() { return timestamp; }
+
+    @Override
+    public String toString() {
+        return type + " " + id + " is " + status;
+    }
+}
@@ -0,0 +1,28 @@
+package com.ex2.core;
+
+/**
+ * Type and ID of a device to provision, as read from an inventory.
+ * @param type The device type name.
+ * @param id The unique identifier for the device.
+ */
+public record DeviceSpec(String type, String id) {
+    /**
+     * Parse an inventory line of the form {@code "<type> <id>"} or {@code "<type>,<id>"}.
+     * A malformed line yields a spec with an empty ID, which provisioning rejects as invalid.
+     * @param line The line, without its line break.
+     * @return The device spec.
+     */
+    public static DeviceSpec parse(String line) {
+        String trimmed = line.trim();
+        int separator = 0;
+        while (separator < trimmed.length() && trimmed.charAt(separator) != ',' && !Character.isWhitespace(trimmed.charAt(separator))) {
+            separator++;
+        }
+        String type = trimmed.substring(0, separator);
+        String id = separator < trimmed.length() ? trimmed.substring(separator + 1).trim() : "";
+        if (id.indexOf(',') >= 0 || id.chars().anyMatch(Character::isWhitespace)) {
+            id = "";
+        }
+        return new DeviceSpec(type, id);
+    }
+}
@@ -0,0 +1,439 @@
+package com.ex2.core;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Columnar state store for very large device fleets.
+ * Instead of one heap object per device, each device is a dense slot number and its state
+ * lives in primitive columns: on/off and lock flags in a bitset, setpoints such as temperatures
+ * in an int array and the codes of the types, as assigned by a {@link DeviceTypeRegistry}, in a
+ * byte array. IDs are found through an open-addressing index of slot numbers.
+ * {@link Device} objects are only created on demand, as thin views of a slot.
+ * A {@link SmartHomeSystem} can keep its devices in a store, see {@link SmartHomeSystem#useStateStore(int)}.
+ *
+ * State updates are lock-free; adding and removing devices is serialized. The capacity is
+ * fixed when the store is created.
+ */
+public final class DeviceStateStore {
+    private static final int MAX_TYPE_CODE = 255;
+    private static final int EMPTY = 0;
+    private static final int REMOVED = -1;
+
+    private final DeviceTypeRegistry registry;
+    private final Map<DeviceType, Integer> initialStates = new HashMap<>();
+    private final int capacity;
+    private final String[] ids;
+    private final byte[] types;
+    private final AtomicLongArray onBits;
+    private final AtomicIntegerArray setpoints;
+    private volatile AtomicIntegerArray index;
+    private final int indexMask;
+    private int removedEntries;
+    private final int[] freeSlots;
+    private int freeCount;
+    private int nextSlot;
+    private volatile int size;
+
+    /**
+     * Constructor for DeviceStateStore holding devices of the types in the default registry.
+     * @param capacity The maximum number of devices the store can hold.
+     */
+    public DeviceStateStore(int capacity) {
+        this(capacity, DeviceTypeRegistry.getDefault());
+    }
+
+    /**
+     * Constructor for DeviceStateStore.
+     * @param capacity The maximum number of devices the store can hold.
+     * @param registry The registry that resolves type names and assigns their codes.
+     */
+    public DeviceStateStore(int capacity, DeviceTypeRegistry registry) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.registry = registry;
+        this.capacity = capacity;
+        this.ids = new String[capacity];
+        this.types = new byte[capacity];
+        this.onBits = new AtomicLongArray((capacity + 63) >>> 6);
+        this.setpoints = new AtomicIntegerArray(capacity);
+        int indexSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        this.index = new AtomicIntegerArray(indexSize);
+        this.indexMask = indexSize - 1;
+        this.freeSlots = new int[capacity];
+    }
+
+    /**
+     * Add a device to the store, in the initial state of its type.
+     * @param type The name of a registered device type, ignoring case.
+     * @param id The unique identifier of the device.
+     * @return The slot number of the new device.
+     * @throws IllegalArgumentException If the type is unknown or the ID is already in use.
+     * @throws IllegalStateException If the store is full.
+     */
+    public synchronized int add(String type, String id) {
+        DeviceType deviceType = registry.get(type);
+        byte code = typeCode(deviceType);
+        if (slotOf(id) >= 0) {
+            throw new IllegalArgumentException("Device with ID " + id + " already exists");
+        }
+        int slot;
+        if (freeCount > 0) {
+            slot = freeSlots[--freeCount];
+        } else if (nextSlot < capacity) {
+            slot = nextSlot++;
+        } else {
+            throw new IllegalStateException("Device state store is full: " + capacity);
+        }
+        // The initial state of a type is that of a newly created device; create one per type only
+        int initial = initialStates.computeIfAbsent(deviceType, t -> t.getState(t.create(id, null)));
+        ids[slot] = id;
+        types[slot] = code;
+        setpoints.set(slot, deviceType.hasSetpoint() ? initial : 0);
+        setFlag(slot, !deviceType.hasSetpoint() && initial != 0);
+        insert(index, id, slot);
+        size++;
+        return slot;
+    }
+
+    private void insert(AtomicIntegerArray table, String id, int slot) {
+        int position = spread(id.hashCode()) & indexMask;
+        while (table.get(position) > EMPTY) {
+            position = (position + 1) & indexMask;
+        }
+        table.set(position, slot + 1);
+    }
+
+    /**
+     * Remove a device from the store. Its slot may be reused by a later {@link #add},
+     * so views and slot numbers of the removed device must not be used afterwards.
+     * @param id The ID of the device to remove.
+     * @throws IllegalArgumentException If the device does not exist.
+     */
+    public synchronized void remove(String id) {
+        int position = positionOf(index, id);
+        if (position < 0) {
+            throw new IllegalArgumentException("Device with ID " + id + " does not exist");
+        }
+        int slot = index.get(position) - 1;
+        index.set(position, REMOVED);
+        ids[slot] = null;
+        types[slot] = 0;
+        freeSlots[freeCount++] = slot;
+        size--;
+        if (++removedEntries > capacity / 2) {
+            rebuildIndex();
+        }
+    }
+
+    /**
+     * Replace the index with one free of removed entries, so lookups of absent IDs stay short.
+     * Readers keep using the old index until the new one is published.
+     */
+    private void rebuildIndex() {
+        AtomicIntegerArray rebuilt = new AtomicIntegerArray(indexMask + 1);
+        for (int slot = 0; slot < nextSlot; slot++) {
+            if (ids[slot] != null) {
+                insert(rebuilt, ids[slot], slot);
+            }
+        }
+        index = rebuilt;
+        removedEntries = 0;
+    }
+
+    /**
+     * Get the slot number of a device.
+     * @param id The ID of the device.
+     * @return The slot number, or -1 if the device does not exist.
+     */
+    public int slotOf(String id) {
+        AtomicIntegerArray table = index;
+        int position = positionOf(table, id);
+        return position < 0 ? -1 : table.get(position) - 1;
+    }
+
+    private int positionOf(AtomicIntegerArray table, String id) {
+        int position = spread(id.hashCode()) & indexMask;
+        for (int probes = 0; probes <= indexMask; probes++) {
+            int entry = table.get(position);
+            if (entry == EMPTY) {
+                return -1;
+            }
+            if (entry > EMPTY && id.equals(ids[entry - 1])) {
+                return position;
+            }
+            position = (position + 1) & indexMask;
+        }
+        return -1;
+    }
+
+    /**
+     * Get a view of a device.
+     * @param id The ID of the device.
+     * @return A device backed by the store.
+     * @throws IllegalArgumentException If the device does not exist.
+     */
+    public Device get(String id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            throw new IllegalArgumentException("Device with ID " + id + " does not exist");
+        }
+        return new View(slot);
+    }
+
+    /**
+     * Get a view of the device in a slot.
+     * @param slot The slot number.
+     * @return A device backed by the store.
+     */
+    public Device view(int slot) {
+        checkSlot(slot);
+        return new View(slot);
+    }
+
+    /**
+     * Turn on the device in a slot, or lock it if it is a door lock.
+     * Has no effect on devices with a setpoint, such as thermostats.
+     * @param slot The slot number.
+     */
+    public void turnOn(int slot) {
+        if (!typeOf(slot).hasSetpoint()) {
+            setFlag(slot, true);
+        }
+    }
+
+    /**
+     * Turn off the device in a slot, or unlock it if it is a door lock.
+     * Has no effect on devices with a setpoint, such as thermostats.
+     * @param slot The slot number.
+     */
+    public void turnOff(int slot) {
+        if (!typeOf(slot).hasSetpoint()) {
+            setFlag(slot, false);
+        }
+    }
+
+    /**
+     * Check whether the device in a slot is on, or locked if it is a door lock.
+     * @param slot The slot number.
+     * @return True if the flag is set.
+     */
+    public boolean isOn(int slot) {
+        checkSlot(slot);
+        return (onBits.get(slot >>> 6) & (1L << slot)) != 0;
+    }
+
+    /**
+     * Set the temperature of the thermostat in a slot, or the setpoint of another device with one.
+     * @param slot The slot number.
+     * @param temperature The temperature to set.
+     * @throws IllegalArgumentException If the device has no setpoint or the value is out of its type's range.
+     */
+    public void setTemperature(int slot, int temperature) {
+        DeviceType type = typeOf(slot);
+        if (!type.hasSetpoint()) {
+            throw new IllegalArgumentException("Device " + ids[slot] + " is not a thermostat");
+        }
+        type.validateSetpoint(temperature);
+        setpoints.set(slot, temperature);
+    }
+
+    /**
+     * Get the temperature of the thermostat in a slot, or the setpoint of another device with one.
+     * @param slot The slot number.
+     * @return The current temperature.
+     */
+    public int getTemperature(int slot) {
+        checkSlot(slot);
+        return setpoints.get(slot);
+    }
+
+    /**
+     * Count the devices of one type whose flag is set, i.e. lights that are on or locks that are locked.
+     * Scans the bitset a word at a time.
+     * @param type The name of the device type, ignoring case.
+     * @return The number of devices that are on.
+     * @throws IllegalArgumentException If the type is unknown.
+     */
+    public int countOn(String type) {
+        byte code = typeCode(registry.get(type));
+        int count = 0;
+        for (int word = 0; word < onBits.length(); word++) {
+            long bits = onBits.get(word);
+            while (bits != 0) {
+                int slot = (word << 6) + Long.numberOfTrailingZeros(bits);
+                if (types[slot] == code) {
+                    count++;
+                }
+                bits &= bits - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Write the status of all devices line by line, in the same format as the system status.
+     * @param out The destination.
+     * @throws IOException If writing to the destination fails.
+     */
+    public void writeStatus(Appendable out) throws IOException {
+        writeStatus(out, null);
+    }
+
+    /**
+     * Write the status of the devices of one type line by line, in the same format as the system status.
+     * @param out The destination.
+     * @param type The device type to include, ignoring case, or null for all devices.
+     * @throws IOException If writing to the destination fails.
+     */
+    public void writeStatus(Appendable out, String type) throws IOException {
+        int end = highestSlot();
+        for (int slot = 0; slot < end; slot++) {
+            String id = ids[slot];
+            if (id != null && isOfType(slot, type)) {
+                out.append(typeOf(slot).getName()).append(" ").append(id)
+                   .append(" is ").append(statusOf(slot)).append("\n");
+            }
+        }
+    }
+
+    /**
+     * Stream views of the devices of one type, in slot order. Slots are read as the stream is consumed.
+     * @param type The device type to include, ignoring case, or null for all devices.
+     * @return A lazy stream of device views.
+     */
+    Stream<View> views(String type) {
+        return IntStream.range(0, highestSlot())
+                .mapToObj(View::new)
+                .filter(view -> view.isValid() && isOfType(view.slot, type));
+    }
+
+    private synchronized int highestSlot() {
+        return nextSlot;
+    }
+
+    private boolean isOfType(int slot, String type) {
+        byte code = types[slot];
+        return type == null || code != 0 && registry.byCode(code & 0xFF).getName().equalsIgnoreCase(type);
+    }
+
+    /**
+     * Get the number of devices in the store.
+     * @return The device count.
+     */
+    public int size() { return size; }
+
+    /**
+     * Get the maximum number of devices the store can hold.
+     * @return The capacity.
+     */
+    public int getCapacity() { return capacity; }
+
+    /**
+     * Get the size of the store's columns and index: the payload of its arrays, counting 4-byte
+     * compressed references and excluding the ID strings. Fixed when the store is created.
+     * @return The column size in bytes.
+     */
+    public long getColumnBytes() {
+        return (long) ids.length * Integer.BYTES
+             + types.length
+             + (long) onBits.length() * Long.BYTES
+             + (long) setpoints.length() * Integer.BYTES
+             + (long) index.length() * Integer.BYTES
+             + (long) freeSlots.length * Integer.BYTES;
+    }
+
+    private void setFlag(int slot, boolean on) {
+        int word = slot >>> 6;
+        long mask = 1L << slot;
+        long bits;
+        do {
+            bits = onBits.get(word);
+        } while (!onBits.compareAndSet(word, bits, on ? bits | mask : bits & ~mask));
+    }
+
+    private byte checkSlot(int slot) {
+        byte code = slot >= 0 && slot < capacity ? types[slot] : 0;
+        if (code == 0) {
+            throw new IllegalArgumentException("No device in slot " + slot);
+        }
+        return code;
+    }
+
+    private DeviceType typeOf(int slot) {
+        return registry.byCode(checkSlot(slot) & 0xFF);
+    }
+
+    private int stateOf(int slot) {
+        return typeOf(slot).hasSetpoint() ? setpoints.get(slot) : isOn(slot) ? 1 : 0;
+    }
+
+    private String statusOf(int slot) {
+        return typeOf(slot).getStatus(stateOf(slot));
+    }
+
+    private byte typeCode(DeviceType type) {
+        int code = registry.codeOf(type);
+        if (code > MAX_TYPE_CODE) {
+            throw new IllegalArgumentException("Too many device types for a state store: " + type.getName());
+        }
+        return (byte) code;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * Thin device view of one slot; holds nothing but the slot number and the ID of its device.
+     */
+    final class View implements Device {
+        private final int slot;
+        private final String id;
+
+        View(int slot) {
+            this.slot = slot;
+            this.id = ids[slot];
+        }
+
+        @Override
+        public String getId() { return id; }
+
+        @Override
+        public String getType() { return typeOf(slot).getName(); }
+
+        @Override
+        public void turnOn() { DeviceStateStore.this.turnOn(slot); }
+
+        @Override
+        public void turnOff() { DeviceStateStore.this.turnOff(slot); }
+
+        @Override
+        public String getStatus() { return statusOf(slot); }
+
+        /**
+         * Get the state of the device as a number, as {@link DeviceType#getState(Device)} would.
+         * @return The setpoint of a setpoint device, otherwise 1 for on or locked and 0 for off or unlocked.
+         */
+        int getState() { return stateOf(slot); }
+
+        /**
+         * Set the setpoint of the device, such as the temperature of a thermostat.
+         * @param value The new setpoint.
+         * @throws IllegalArgumentException If the device has no setpoint or the value is out of its type's range.
+         */
+        void setSetpoint(int value) { setTemperature(slot, value); }
+
+        /**
+         * Check whether the device of this view is still in the store.
+         * @return False once the device has been removed, even if its slot has been reused.
+         */
+        boolean isValid() { return id != null && ids[slot] == id; }
+    }
+}
@@ -0,0 +1,133 @@
+package com.ex2.core;
+
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Describes a type of device: its name, its capabilities and how to create it and read its state.
+ * Types are discovered with {@link java.util.ServiceLoader}: an implementation with a public no-argument
+ * constructor listed in {@code META-INF/services/com.ex2.core.DeviceType} becomes available to
+ * {@link DeviceTypeRegistry#getDefault()}, so new device types need no change to the core.
+ * The system resolves a device's type once, when the device is registered, and dispatches on its
+ * capabilities from then on.
+ */
+public abstract class DeviceType {
+    private final String name;
+    private final Set<DeviceCapability> capabilities;
+    private final boolean switchable;
+    private final boolean lockable;
+    private final boolean setpoint;
+    private final String activeState;
+    private final String inactiveState;
+
+    /**
+     * Constructor for DeviceType.
+     * @param name The type name, as returned by {@link Device#getType()}; matched case-insensitively.
+     * @param capabilities The operations the devices support.
+     * @param activeState The status of a device that is on or locked, or null if it has none.
+     * @param inactiveState The status of a device that is off or unlocked, or null if it has none.
+     */
+    protected DeviceType(String name, Set<DeviceCapability> capabilities, String activeState, String inactiveState) {
+        this.name = name;
+        this.capabilities = Collections.unmodifiableSet(capabilities.isEmpty()
+                ? EnumSet.noneOf(DeviceCapability.class) : EnumSet.copyOf(capabilities));
+        this.switchable = capabilities.contains(DeviceCapability.SWITCHABLE);
+        this.lockable = capabilities.contains(DeviceCapability.LOCKABLE);
+        this.setpoint = capabilities.contains(DeviceCapability.SETPOINT);
+        this.activeState = activeState;
+        this.inactiveState = inactiveState;
+    }
+
+    public String getName() { return name; }
+    public Set<DeviceCapability> getCapabilities() { return capabilities; }
+    public boolean isSwitchable() { return switchable; }
+    public boolean isLockable() { return lockable; }
+    public boolean hasSetpoint() { return setpoint; }
+    public String getActiveState() { return activeState; }
+    public String getInactiveState() { return inactiveState; }
+
+    /**
+     * Create a device of this type in its initial state.
+     * @param id The unique identifier for the device.
+     * @param changeListener Receives state changes the device publishes on its own, or null to bind it when it is added to a system.
+     * @return The created device.
+     */
+    public abstract Device create(String id, DeviceObserver changeListener);
+
+    /**
+     * Bind a device created without a change listener to the system that registers it, so that the
+     * changes it publishes on its own reach that system instead of the default one.
+     * A device already bound to a listener keeps it. The default implementation does nothing.
+     * @param device The device, not a proxy.
+     * @param changeListener The registering system's listener.
+     */
+    public void bind(Device device, DeviceObserver changeListener) {
+    }
+
+    /**
+     * Create a device of this type in a saved state. No change is published.
+     * The default implementation turns a created device on or off.
+     * @param id The unique identifier for the device.
+     * @param state The saved state, as returned by {@link #getState(Device)}.
+     * @param changeListener Receives later state changes the device publishes on its own, or null to bind it when it is added to a system.
+     * @return The created device.
+     */
+    public Device restore(String id, int state, DeviceObserver changeListener) {
+        Device device = create(id, changeListener);
+        if (state != 0) {
+            device.turnOn();
+        } else {
+            device.turnOff();
+        }
+        return device;
+    }
+
+    /**
+     * Get the state of a device of this type as a number.
+     * The default implementation returns 1 if the device reports the active state and 0 otherwise.
+     * @param device The device, not a proxy.
+     * @return The setpoint of a setpoint device, otherwise 1 for on or locked and 0 for off or unlocked.
+     */
+    public int getState(Device device) {
+        return device.getStatus().equals(activeState) ? 1 : 0;
+    }
+
+    /**
+     * Get the status a device of this type reports in a given state, without the device.
+     * The default implementation reports the active or inactive state if the type has them, and
+     * otherwise restores a device in the state and asks it.
+     * @param state The state, as returned by {@link #getState(Device)}.
+     * @return The status.
+     */
+    public String getStatus(int state) {
+        if (activeState != null && inactiveState != null) {
+            return state != 0 ? activeState : inactiveState;
+        }
+        return restore(name, state, null).getStatus();
+    }
+
+    /**
+     * Check that a setpoint is in the range the devices accept.
+     * @param value The setpoint.
+     * @throws IllegalArgumentException if the value is out of range or the type has no setpoint.
+     */
+    public void validateSetpoint(int value) {
+        throw new IllegalArgumentException("Device type " + name + " has no setpoint");
+    }
+
+    /**
+     * Change the setpoint of a device of this type.
+     * @param device The device, not a proxy.
+     * @param value The new setpoint.
+     * @throws IllegalArgumentException if the value is out of range or the type has no setpoint.
+     */
+    public void setSetpoint(Device device, int value) {
+        throw new IllegalArgumentException("Device type " + name + " has no setpoint");
+    }
+
+    @Override
+    public String toString() {
+        return name + " " + capabilities;
+    }
+}
@@ -0,0 +1,167 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Registry of the known device types, keyed by lower-case type name.
+ * The default registry holds every {@link DeviceType} found by {@link ServiceLoader} on the class path;
+ * further types can be registered at runtime. Each type also gets a small numeric code, in order of
+ * registration, for stores that keep the type of many devices compactly.
+ */
+public final class DeviceTypeRegistry {
+    private static final Logger logger = LogManager.getLogger(DeviceTypeRegistry.class);
+
+    private final Map<String, DeviceType> types = new ConcurrentHashMap<>();
+    private final List<DeviceType> codes = new CopyOnWriteArrayList<>();
+
+    /**
+     * Constructor for an empty DeviceTypeRegistry.
+     */
+    public DeviceTypeRegistry() {
+    }
+
+    /**
+     * Get the registry of the types discovered on the class path, loading it on first use.
+     * @return The default registry.
+     */
+    public static DeviceTypeRegistry getDefault() {
+        return Holder.DEFAULT;
+    }
+
+    /**
+     * Holds the default registry; the JVM loads it once, on the first call to {@link #getDefault()}.
+     */
+    private static final class Holder {
+        static final DeviceTypeRegistry DEFAULT = load(DeviceTypeRegistry.class.getClassLoader());
+    }
+
+    /**
+     * Create a registry of the device types a class loader provides through {@link ServiceLoader}.
+     * @param classLoader The class loader to search.
+     * @return The registry.
+     */
+    public static DeviceTypeRegistry load(ClassLoader classLoader) {
+        DeviceTypeRegistry registry = new DeviceTypeRegistry();
+        for (DeviceType type : ServiceLoader.load(DeviceType.class, classLoader)) {
+            registry.register(type);
+        }
+        logger.debug("Loaded device types: {}", registry.types.keySet());
+        return registry;
+    }
+
+    /**
+     * Register a device type.
+     * @param type The type to register.
+     * @throws IllegalArgumentException if a type with the same name is already registered.
+     */
+    public synchronized void register(DeviceType type) {
+        if (types.putIfAbsent(type.getName().toLowerCase(Locale.ROOT), type) != null) {
+            throw new IllegalArgumentException("Device type already registered: " + type.getName());
+        }
+        codes.add(type);
+    }
+
+    /**
+     * Unregister a device type. Devices already created keep working; new devices of the type
+     * can no longer be created. Its code is kept, so {@link #byCode(int)} still resolves it.
+     * @param name The type name, ignoring case.
+     * @return True if the type was registered, false otherwise.
+     */
+    public boolean unregister(String name) {
+        return types.remove(name.toLowerCase(Locale.ROOT)) != null;
+    }
+
+    /**
+     * Get the code of a registered device type.
+     * @param type The type.
+     * @return The code, starting at 1 for the first type registered; never reused.
+     * @throws IllegalArgumentException if the type is not registered.
+     */
+    public int codeOf(DeviceType type) {
+        int index = codes.indexOf(type);
+        if (index < 0) {
+            throw new IllegalArgumentException("Unknown device type: " + type.getName());
+        }
+        return index + 1;
+    }
+
+    /**
+     * Get a device type by its code.
+     * @param code The code, as returned by {@link #codeOf(DeviceType)}.
+     * @return The type.
+     * @throws IllegalArgumentException if no type has this code.
+     */
+    public DeviceType byCode(int code) {
+        if (code < 1 || code > codes.size()) {
+            throw new IllegalArgumentException("Unknown device type code: " + code);
+        }
+        return codes.get(code - 1);
+    }
+
+    /**
+     * Find a device type by name, ignoring case.
+     * @param name The type name.
+     * @return The type, or null if it is not registered.
+     */
+    public DeviceType find(String name) {
+        DeviceType type = types.get(name);
+        return type != null ? type : types.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Get a device type by name, ignoring case.
+     * @param name The type name.
+     * @return The type.
+     * @throws IllegalArgumentException if the type is not registered.
+     */
+    public DeviceType get(String name) {
+        DeviceType type = find(name);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown device type: " + name);
+        }
+        return type;
+    }
+
+    /**
+     * Get all registered device types.
+     * @return The types.
+     */
+    public Collection<DeviceType> getTypes() {
+        return Collections.unmodifiableCollection(types.values());
+    }
+
+    /**
+     * Describe a device: its registered type, or a switchable on/off type for devices of an unregistered type.
+     * @param device The device, not a proxy.
+     * @return The device's type.
+     */
+    static DeviceType describe(Device device) {
+        DeviceType type = getDefault().find(device.getType());
+        return type != null ? type : new Unregistered(device.getType());
+    }
+
+    /**
+     * Type of a device constructed directly whose type is not registered.
+     */
+    private static final class Unregistered extends DeviceType {
+        Unregistered(String name) {
+            super(name, EnumSet.of(DeviceCapability.SWITCHABLE), "on", "off");
+        }
+
+        @Override
+        public Device create(String id, DeviceObserver changeListener) {
+            throw new IllegalArgumentException("Unknown device type: " + getName());
+        }
+    }
+}
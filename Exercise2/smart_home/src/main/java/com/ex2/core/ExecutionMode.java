@@ -0,0 +1,17 @@
+package com.ex2.core;
+
+/**
+ * Strategies for running device commands issued by schedules, triggers and batches.
+ */
+public enum ExecutionMode {
+    /**
+     * Commands run on the thread that issued them.
+     */
+    DIRECT,
+
+    /**
+     * Commands run on virtual threads, one device mailbox at a time, so blocking
+     * devices do not hold up each other while commands to one device stay in order.
+     */
+    VIRTUAL_THREADS
+}
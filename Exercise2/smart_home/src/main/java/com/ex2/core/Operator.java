@@ -0,0 +1,58 @@
+package com.ex2.core;
+
+/**
+ * Comparison operators supported in trigger conditions.
+ */
+enum Operator {
+    GREATER_THAN(">"),
+    LESS_THAN("<"),
+    GREATER_OR_EQUAL(">="),
+    LESS_OR_EQUAL("<="),
+    EQUALS("=="),
+    NOT_EQUALS("!=");
+
+    private final String symbol;
+
+    Operator(String symbol) {
+        this.symbol = symbol;
+    }
+
+    /**
+     * Get the textual symbol of the operator.
+     * @return The operator symbol.
+     */
+    public String getSymbol() { return symbol; }
+
+    /**
+     * Apply the operator to a value and a threshold.
+     * @param value The current value.
+     * @param threshold The threshold to compare against.
+     * @return True if the comparison holds, false otherwise.
+     */
+    public boolean test(int value, int threshold) {
+        switch (this) {
+            case GREATER_THAN: return value > threshold;
+            case LESS_THAN: return value < threshold;
+            case GREATER_OR_EQUAL: return value >= threshold;
+            case LESS_OR_EQUAL: return value <= threshold;
+            case EQUALS: return value == threshold;
+            case NOT_EQUALS: return value != threshold;
+            default:
+                throw new IllegalStateException("Unhandled operator: " + symbol);
+        }
+    }
+
+    /**
+     * Resolve an operator from its textual symbol.
+     * @param symbol The operator symbol.
+     * @return The matching operator, or null if the symbol is unknown.
+     */
+    public static Operator fromSymbol(String symbol) {
+        for (Operator operator : values()) {
+            if (operator.symbol.equals(symbol)) {
+                return operator;
+            }
+        }
+        return null;
+    }
+}
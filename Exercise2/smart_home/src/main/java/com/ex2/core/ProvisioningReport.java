@@ -0,0 +1,63 @@
+package com.ex2.core;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of a bulk device import, batch by batch.
+ * @param batches The result of each batch, in import order.
+ */
+public record ProvisioningReport(List<Batch> batches) {
+
+    /**
+     * Outcome of one batch of a bulk device import.
+     * @param added The number of devices registered.
+     * @param duplicates The number of devices rejected because their ID was already registered.
+     * @param invalid The number of entries rejected because of an unknown type or a missing ID.
+     * @param elapsedNanos The time taken to construct and register the batch.
+     */
+    public record Batch(int added, int duplicates, int invalid, long elapsedNanos) {
+    }
+
+    /**
+     * Get the number of devices registered by the import.
+     * @return The added device count.
+     */
+    public int getAdded() {
+        return batches.stream().mapToInt(Batch::added).sum();
+    }
+
+    /**
+     * Get the number of entries rejected because their ID was already registered.
+     * @return The duplicate count.
+     */
+    public int getDuplicates() {
+        return batches.stream().mapToInt(Batch::duplicates).sum();
+    }
+
+    /**
+     * Get the number of entries rejected because of an unknown type or a missing ID.
+     * @return The invalid entry count.
+     */
+    public int getInvalid() {
+        return batches.stream().mapToInt(Batch::invalid).sum();
+    }
+
+    /**
+     * Get the total time spent constructing and registering devices.
+     * @param unit The unit of the result.
+     * @return The elapsed time.
+     */
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(batches.stream().mapToLong(Batch::elapsedNanos).sum(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "added=" + getAdded()
+             + ", duplicates=" + getDuplicates()
+             + ", invalid=" + getInvalid()
+             + ", batches=" + batches.size()
+             + ", elapsedMillis=" + getElapsed(TimeUnit.MILLISECONDS);
+    }
+}
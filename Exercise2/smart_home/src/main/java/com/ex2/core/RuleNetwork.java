@@ -0,0 +1,527 @@
+package com.ex2.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Rete-style network of trigger conditions that propagates only the changes of a device's state.
+ *
+ * Each distinct comparison is one shared alpha node, whatever number of triggers use it;
+ * {@code t > 75} and {@code t >= 76} are the same node. Identical sub-expressions share one
+ * beta node. Every node caches its truth value; conjunctions and disjunctions cache how many
+ * operands hold. When a device changes from one value to another, only the comparisons whose
+ * threshold lies between the two values can flip, and those are found by binary search in the
+ * device's sorted thresholds. A flipped node updates its parents' counts, level by level, and
+ * the triggers whose condition flips are reported. Triggers that share conditions with
+ * thousands of others on a busy device therefore add no work to a change that does not flip them.
+ *
+ * Conditions with time windows change without a device change and are left to linear
+ * evaluation; the network reports them as unmanaged dependents of the devices they read.
+ * All methods are synchronized on the network.
+ */
+class RuleNetwork {
+    private final Map<String, Node> nodes = new HashMap<>();
+    private final Map<DeviceProxy, AlphaTable> tables = new IdentityHashMap<>();
+    private final Map<Trigger, Node> roots = new IdentityHashMap<>();
+    private final List<ArrayDeque<Node>> levels = new ArrayList<>();
+
+    /**
+     * Triggers whose condition flipped in one propagation.
+     */
+    static final class Delta {
+        final List<Trigger> activated = new ArrayList<>();
+        final List<Trigger> deactivated = new ArrayList<>();
+        List<Trigger> unmanaged = List.of();
+    }
+
+    /**
+     * Add a trigger, sharing every node that already exists.
+     * @param trigger The trigger to add.
+     * @return True if the network manages the trigger, false if it is left to linear evaluation.
+     */
+    synchronized boolean add(Trigger trigger) {
+        Node root = build(trigger.getCompiledCondition().getRoot());
+        if (root == null) {
+            for (DeviceProxy source : trigger.getCompiledCondition().getSources()) {
+                table(source).unmanaged.add(trigger);
+            }
+            return false;
+        }
+        root.triggers.add(trigger);
+        roots.put(trigger, root);
+        return true;
+    }
+
+    /**
+     * Remove a trigger, dropping the nodes no other trigger uses.
+     * @param trigger The trigger to remove.
+     */
+    synchronized void remove(Trigger trigger) {
+        Node root = roots.remove(trigger);
+        if (root == null) {
+            for (DeviceProxy source : trigger.getCompiledCondition().getSources()) {
+                AlphaTable table = tables.get(source);
+                if (table != null) {
+                    table.unmanaged.remove(trigger);
+                    dropIfEmpty(table);
+                }
+            }
+            return;
+        }
+        root.triggers.remove(trigger);
+        release(root);
+    }
+
+    /**
+     * Check whether a trigger managed by the network holds, according to the last propagation.
+     * @param trigger The trigger.
+     * @return True if the network manages the trigger and its condition holds.
+     */
+    synchronized boolean holds(Trigger trigger) {
+        Node root = roots.get(trigger);
+        return root != null && root.value;
+    }
+
+    /**
+     * Propagate the current state of a device through the network.
+     * @param device The proxy of the device that changed.
+     * @return The triggers whose condition flipped and the unmanaged triggers reading the device,
+     *         or null if there are none.
+     */
+    synchronized Delta propagate(DeviceProxy device) {
+        AlphaTable table = tables.get(device);
+        if (table == null) {
+            return null;
+        }
+        int previous = table.value;
+        int current = DeviceProxy.stateValue(device.getDevice());
+        table.value = current;
+        if (previous != current) {
+            int low = Math.min(previous, current);
+            int high = Math.max(previous, current);
+            // value > t flips for low <= t < high; value < t flips for low < t <= high
+            flip(table.above, table.aboveThresholds, low, high - 1, current);
+            flip(table.below, table.belowThresholds, low + 1, high, current);
+            flip(table.equal, table.equalThresholds, previous, previous, current);
+            flip(table.equal, table.equalThresholds, current, current, current);
+            flip(table.notEqual, table.notEqualThresholds, previous, previous, current);
+            flip(table.notEqual, table.notEqualThresholds, current, current, current);
+        }
+        for (Alpha alpha : table.stateful) {
+            alpha.value = alpha.comparison.evaluate();
+            enqueue(alpha);
+        }
+        Delta delta = settle();
+        if (!table.unmanaged.isEmpty()) {
+            if (delta == null) {
+                delta = new Delta();
+            }
+            delta.unmanaged = table.unmanaged;
+        }
+        return delta;
+    }
+
+    /**
+     * Re-read every device and recompute every node, e.g. after propagation was suspended.
+     */
+    synchronized void resync() {
+        List<Trigger> managed = new ArrayList<>(roots.keySet());
+        List<Trigger> unmanaged = new ArrayList<>();
+        for (AlphaTable table : tables.values()) {
+            for (Trigger trigger : table.unmanaged) {
+                if (!unmanaged.contains(trigger)) {
+                    unmanaged.add(trigger);
+                }
+            }
+        }
+        nodes.clear();
+        tables.clear();
+        roots.clear();
+        for (Trigger trigger : managed) {
+            add(trigger);
+        }
+        for (Trigger trigger : unmanaged) {
+            add(trigger);
+        }
+    }
+
+    /**
+     * Get the number of distinct nodes, for sizing and tests.
+     * @return The node count.
+     */
+    synchronized int getNodeCount() {
+        return nodes.size();
+    }
+
+    private void flip(Alpha[] alphas, int[] thresholds, int from, int to, int value) {
+        for (int i = lowerBound(thresholds, from); i < thresholds.length && thresholds[i] <= to; i++) {
+            Alpha alpha = alphas[i];
+            alpha.value = alpha.operator.test(value, alpha.threshold);
+            enqueue(alpha);
+        }
+    }
+
+    /**
+     * Process queued nodes lowest level first, so every node is settled after all of its operands.
+     */
+    private Delta settle() {
+        Delta delta = null;
+        for (int level = 0; level < levels.size(); level++) {
+            ArrayDeque<Node> queue = levels.get(level);
+            Node node;
+            while ((node = queue.poll()) != null) {
+                node.queued = false;
+                if (node.value == node.reported) {
+                    continue;
+                }
+                node.reported = node.value;
+                for (Node parent : node.parents) {
+                    parent.operandChanged(node.value);
+                    enqueue(parent);
+                }
+                if (!node.triggers.isEmpty()) {
+                    if (delta == null) {
+                        delta = new Delta();
+                    }
+                    (node.value ? delta.activated : delta.deactivated).addAll(node.triggers);
+                }
+            }
+        }
+        return delta;
+    }
+
+    private void enqueue(Node node) {
+        if (!node.queued) {
+            node.queued = true;
+            levels.get(node.level).add(node);
+        }
+    }
+
+    private Node build(TriggerCondition.Node condition) {
+        if (condition instanceof TriggerCondition.Comparison) {
+            return alpha((TriggerCondition.Comparison) condition);
+        }
+        if (condition instanceof TriggerCondition.Not) {
+            Node operand = build(((TriggerCondition.Not) condition).getOperand());
+            return operand == null ? null : beta(new Not(), "!(" + operand.key + ")", new Node[] {operand});
+        }
+        boolean and = condition instanceof TriggerCondition.And;
+        if (!and && !(condition instanceof TriggerCondition.Or)) {
+            return null;
+        }
+        TriggerCondition.Node[] conditionOperands = and
+                ? ((TriggerCondition.And) condition).getOperands()
+                : ((TriggerCondition.Or) condition).getOperands();
+        Node[] operands = new Node[conditionOperands.length];
+        StringBuilder key = new StringBuilder(and ? "&(" : "|(");
+        for (int i = 0; i < operands.length; i++) {
+            operands[i] = build(conditionOperands[i]);
+            if (operands[i] == null) {
+                for (int built = 0; built < i; built++) {
+                    release(operands[built]);
+                }
+                return null;
+            }
+            key.append(i > 0 ? "," : "").append(operands[i].key);
+        }
+        return beta(and ? new And(operands.length) : new Or(), key.append(')').toString(), operands);
+    }
+
+    private Node alpha(TriggerCondition.Comparison comparison) {
+        Operator operator = comparison.getOperator();
+        int threshold = comparison.getThreshold();
+        if (comparison.getBand() == 0) {
+            // Normalize, so equivalent comparisons share a node and a sorted array
+            if (operator == Operator.GREATER_OR_EQUAL) {
+                operator = Operator.GREATER_THAN;
+                threshold--;
+            } else if (operator == Operator.LESS_OR_EQUAL) {
+                operator = Operator.LESS_THAN;
+                threshold++;
+            }
+        }
+        DeviceProxy source = comparison.getSource();
+        String key = source.getId() + operator.getSymbol() + threshold + (comparison.getBand() != 0 ? "~" + comparison.getBand() : "");
+        Node existing = nodes.get(key);
+        if (existing != null) {
+            existing.references++;
+            return existing;
+        }
+        AlphaTable table = table(source);
+        Alpha alpha = new Alpha(table, comparison, operator, threshold);
+        alpha.key = key;
+        if (comparison.getBand() != 0) {
+            alpha.value = comparison.evaluate();
+            table.stateful.add(alpha);
+        } else {
+            alpha.value = operator.test(table.value, threshold);
+            table.insert(alpha);
+        }
+        alpha.reported = alpha.value;
+        alpha.references = 1;
+        nodes.put(key, alpha);
+        level(0);
+        return alpha;
+    }
+
+    private Node beta(Node node, String key, Node[] operands) {
+        Node existing = nodes.get(key);
+        if (existing != null) {
+            for (Node operand : operands) {
+                release(operand);
+            }
+            existing.references++;
+            return existing;
+        }
+        node.key = key;
+        node.operands = operands;
+        for (Node operand : operands) {
+            operand.parents.add(node);
+            node.level = Math.max(node.level, operand.level + 1);
+        }
+        node.recompute();
+        node.reported = node.value;
+        node.references = 1;
+        nodes.put(key, node);
+        level(node.level);
+        return node;
+    }
+
+    /**
+     * Drop one reference to a node, removing it and releasing its operands when none is left.
+     */
+    private void release(Node node) {
+        if (--node.references > 0) {
+            return;
+        }
+        nodes.remove(node.key);
+        if (node instanceof Alpha) {
+            Alpha alpha = (Alpha) node;
+            alpha.table.delete(alpha);
+            dropIfEmpty(alpha.table);
+            return;
+        }
+        for (Node operand : node.operands) {
+            operand.parents.remove(node);
+            release(operand);
+        }
+    }
+
+    private AlphaTable table(DeviceProxy source) {
+        return tables.computeIfAbsent(source, AlphaTable::new);
+    }
+
+    private void dropIfEmpty(AlphaTable table) {
+        if (table.isEmpty()) {
+            tables.remove(table.source);
+        }
+    }
+
+    private void level(int level) {
+        while (levels.size() <= level) {
+            levels.add(new ArrayDeque<>());
+        }
+    }
+
+    private static int lowerBound(int[] sorted, int value) {
+        int index = Arrays.binarySearch(sorted, value);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Node of the network. Beta nodes hold their operands; alpha nodes compare a device value.
+     */
+    private abstract static class Node {
+        String key;
+        Node[] operands;
+        final List<Node> parents = new ArrayList<>(1);
+        final List<Trigger> triggers = new ArrayList<>(1);
+        int references;
+        int level;
+        boolean value;
+        boolean reported;
+        boolean queued;
+
+        /**
+         * Update the node after one of its operands changed to the given value.
+         */
+        void operandChanged(boolean operandValue) {
+        }
+
+        /**
+         * Compute the node from the values its operands have reported.
+         */
+        void recompute() {
+            for (Node operand : operands) {
+                if (operand.reported) {
+                    operandChanged(true);
+                }
+            }
+        }
+    }
+
+    private static final class Alpha extends Node {
+        final AlphaTable table;
+        final TriggerCondition.Comparison comparison;
+        final Operator operator;
+        final int threshold;
+
+        Alpha(AlphaTable table, TriggerCondition.Comparison comparison, Operator operator, int threshold) {
+            this.table = table;
+            this.comparison = comparison;
+            this.operator = operator;
+            this.threshold = threshold;
+        }
+    }
+
+    private static final class And extends Node {
+        private final int size;
+        private int holding;
+
+        And(int size) {
+            this.size = size;
+        }
+
+        @Override
+        void operandChanged(boolean operandValue) {
+            holding += operandValue ? 1 : -1;
+            value = holding == size;
+        }
+    }
+
+    private static final class Or extends Node {
+        private int holding;
+
+        @Override
+        void operandChanged(boolean operandValue) {
+            holding += operandValue ? 1 : -1;
+            value = holding > 0;
+        }
+    }
+
+    private static final class Not extends Node {
+        @Override
+        void operandChanged(boolean operandValue) {
+            value = !operandValue;
+        }
+
+        @Override
+        void recompute() {
+            value = !operands[0].reported;
+        }
+    }
+
+    /**
+     * The alpha nodes of one device, with comparisons kept sorted by threshold per operator.
+     */
+    private static final class AlphaTable {
+        final DeviceProxy source;
+        final List<Alpha> stateful = new ArrayList<>();
+        final List<Trigger> unmanaged = new CopyOnWriteArrayList<>();
+        int value;
+        int[] aboveThresholds = new int[0];
+        Alpha[] above = new Alpha[0];
+        int[] belowThresholds = new int[0];
+        Alpha[] below = new Alpha[0];
+        int[] equalThresholds = new int[0];
+        Alpha[] equal = new Alpha[0];
+        int[] notEqualThresholds = new int[0];
+        Alpha[] notEqual = new Alpha[0];
+
+        AlphaTable(DeviceProxy source) {
+            this.source = source;
+            this.value = DeviceProxy.stateValue(source.getDevice());
+        }
+
+        void insert(Alpha alpha) {
+            switch (alpha.operator) {
+                case GREATER_THAN:
+                    aboveThresholds = insert(aboveThresholds, alpha.threshold);
+                    above = insert(above, aboveThresholds, alpha);
+                    break;
+                case LESS_THAN:
+                    belowThresholds = insert(belowThresholds, alpha.threshold);
+                    below = insert(below, belowThresholds, alpha);
+                    break;
+                case EQUALS:
+                    equalThresholds = insert(equalThresholds, alpha.threshold);
+                    equal = insert(equal, equalThresholds, alpha);
+                    break;
+                default:
+                    notEqualThresholds = insert(notEqualThresholds, alpha.threshold);
+                    notEqual = insert(notEqual, notEqualThresholds, alpha);
+            }
+        }
+
+        void delete(Alpha alpha) {
+            if (stateful.remove(alpha)) {
+                return;
+            }
+            switch (alpha.operator) {
+                case GREATER_THAN:
+                    above = delete(above, aboveThresholds, alpha.threshold);
+                    aboveThresholds = delete(aboveThresholds, alpha.threshold);
+                    break;
+                case LESS_THAN:
+                    below = delete(below, belowThresholds, alpha.threshold);
+                    belowThresholds = delete(belowThresholds, alpha.threshold);
+                    break;
+                case EQUALS:
+                    equal = delete(equal, equalThresholds, alpha.threshold);
+                    equalThresholds = delete(equalThresholds, alpha.threshold);
+                    break;
+                default:
+                    notEqual = delete(notEqual, notEqualThresholds, alpha.threshold);
+                    notEqualThresholds = delete(notEqualThresholds, alpha.threshold);
+            }
+        }
+
+        boolean isEmpty() {
+            return stateful.isEmpty() && unmanaged.isEmpty() && above.length == 0 && below.length == 0
+                    && equal.length == 0 && notEqual.length == 0;
+        }
+
+        private static int[] insert(int[] sorted, int threshold) {
+            int index = lowerBound(sorted, threshold);
+            int[] grown = new int[sorted.length + 1];
+            System.arraycopy(sorted, 0, grown, 0, index);
+            grown[index] = threshold;
+            System.arraycopy(sorted, index, grown, index + 1, sorted.length - index);
+            return grown;
+        }
+
+        /**
+         * Insert an alpha at the position its threshold took in the already grown thresholds.
+         */
+        private static Alpha[] insert(Alpha[] alphas, int[] grownThresholds, Alpha alpha) {
+            int index = lowerBound(grownThresholds, alpha.threshold);
+            Alpha[] grown = new Alpha[alphas.length + 1];
+            System.arraycopy(alphas, 0, grown, 0, index);
+            grown[index] = alpha;
+            System.arraycopy(alphas, index, grown, index + 1, alphas.length - index);
+            return grown;
+        }
+
+        private static int[] delete(int[] sorted, int threshold) {
+            int index = Arrays.binarySearch(sorted, threshold);
+            int[] shrunk = new int[sorted.length - 1];
+            System.arraycopy(sorted, 0, shrunk, 0, index);
+            System.arraycopy(sorted, index + 1, shrunk, index, sorted.length - index - 1);
+            return shrunk;
+        }
+
+        private static Alpha[] delete(Alpha[] alphas, int[] thresholds, int threshold) {
+            int index = Arrays.binarySearch(thresholds, threshold);
+            Alpha[] shrunk = new Alpha[alphas.length - 1];
+            System.arraycopy(alphas, 0, shrunk, 0, index);
+            System.arraycopy(alphas, index + 1, shrunk, index, alphas.length - index - 1);
+            return shrunk;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.ex2.core;
+
+import java.time.LocalTime;
+
+/**
+ * A daily schedule that turns a device on or off at a fixed time of day.
+ */
+public class Schedule {
+    private final long id;
+    private final String deviceId;
+    private final LocalTime time;
+    private final boolean turnOn;
+    private final Runnable action;
+    private volatile boolean cancelled;
+
+    // Wheel bookkeeping, owned by the ScheduleEngine ticker thread.
+    long deadlineNanos;
+    long remainingRounds;
+
+    /**
+     * Constructor for Schedule.
+     * @param id The unique identifier of the schedule.
+     * @param deviceId The ID of the device.
+     * @param time The time of day the action runs.
+     * @param turnOn True to turn on, false to turn off.
+     * @param action The action to run.
+     */
+    Schedule(long id, String deviceId, LocalTime time, boolean turnOn, Runnable action) {
+        this.id = id;
+        this.deviceId = deviceId;
+        this.time = time;
+        this.turnOn = turnOn;
+        this.action = action;
+    }
+
+    public long getId() { return id; }
+    public String getDeviceId() { return deviceId; }
+    public LocalTime getTime() { return time; }
+    public boolean isTurnOn() { return turnOn; }
+    public boolean isCancelled() { return cancelled; }
+
+    Runnable getAction() { return action; }
+    void cancel() { cancelled = true; }
+
+    @Override
+    public String toString() {
+        return "#" + id + " " + deviceId + " turn " + (turnOn ? "on" : "off") + " at " + time;
+    }
+}
@@ -0,0 +1,262 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs daily schedules using a hashed timer wheel.
+ * Adding and cancelling a schedule are O(1): new schedules are queued for the ticker
+ * thread, which places them into a wheel slot, and cancelled schedules are marked and
+ * swept out the next time their slot comes round. Due actions run on a worker pool,
+ * so a slow action does not hold up the other schedules.
+ */
+class ScheduleEngine {
+    private static final Logger logger = LogManager.getLogger(ScheduleEngine.class);
+    private static final long DAY_NANOS = TimeUnit.DAYS.toNanos(1);
+
+    private final long tickNanos;
+    private final List<List<Schedule>> wheel;
+    private final int mask;
+    private final Queue<Schedule> pendingAdds = new ConcurrentLinkedQueue<>();
+    private final Map<Long, Schedule> schedules = new ConcurrentHashMap<>();
+    private final AtomicLong nextId = new AtomicLong(1);
+    private final ExecutorService workers;
+    private final ScheduledExecutorService ticker;
+    private final ScheduledFuture<?> tickTask;
+    private final boolean ownsThreads;
+    private final long startNanos = System.nanoTime();
+    private long tick;
+
+    /**
+     * Constructor for ScheduleEngine.
+     * @param workerThreads The number of threads that run due actions.
+     * @param tickMillis The resolution of the wheel in milliseconds.
+     * @param wheelSize The number of wheel slots; rounded up to a power of two.
+     */
+    ScheduleEngine(int workerThreads, long tickMillis, int wheelSize) {
+        this(workerThreads > 0 ? Executors.newFixedThreadPool(workerThreads, daemonThreads("schedule-worker")) : null,
+                Executors.newSingleThreadScheduledExecutor(daemonThreads("schedule-ticker")), tickMillis, wheelSize, true);
+    }
+
+    /**
+     * Constructor for a ScheduleEngine that shares its threads with other engines,
+     * such as the engines of the homes of a {@link SmartHomeHost}.
+     * @param workers The pool that runs due actions; not shut down with the engine.
+     * @param ticker The executor that advances the wheel; not shut down with the engine.
+     * @param tickMillis The resolution of the wheel in milliseconds.
+     * @param wheelSize The number of wheel slots; rounded up to a power of two.
+     */
+    ScheduleEngine(ExecutorService workers, ScheduledExecutorService ticker, long tickMillis, int wheelSize) {
+        this(workers, ticker, tickMillis, wheelSize, false);
+    }
+
+    private ScheduleEngine(ExecutorService workers, ScheduledExecutorService ticker, long tickMillis, int wheelSize, boolean ownsThreads) {
+        if (workers == null || tickMillis <= 0 || wheelSize <= 0) {
+            if (ownsThreads) {
+                ticker.shutdownNow();
+            }
+            throw new IllegalArgumentException("Invalid schedule engine configuration");
+        }
+        int slots = Integer.highestOneBit(wheelSize - 1) << 1;
+        slots = Math.max(slots, 1);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.wheel = new ArrayList<>(slots);
+        for (int i = 0; i < slots; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        this.mask = slots - 1;
+        this.workers = workers;
+        this.ticker = ticker;
+        this.ownsThreads = ownsThreads;
+        this.tickTask = ticker.scheduleAtFixedRate(this::advance, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Register a daily schedule.
+     * @param deviceId The ID of the device.
+     * @param time The time of day the action runs.
+     * @param turnOn True to turn on, false to turn off.
+     * @param action The action to run.
+     * @return The registered schedule.
+     */
+    Schedule scheduleDaily(String deviceId, LocalTime time, boolean turnOn, Runnable action) {
+        return scheduleDaily(nextId.getAndIncrement(), deviceId, time, turnOn, action);
+    }
+
+    /**
+     * Register a daily schedule under a given ID, e.g. one restored from persisted state.
+     * Later schedules get higher IDs.
+     * @param scheduleId The ID of the schedule, not held by an active schedule.
+     * @param deviceId The ID of the device.
+     * @param time The time of day the action runs.
+     * @param turnOn True to turn on, false to turn off.
+     * @param action The action to run.
+     * @return The registered schedule.
+     */
+    Schedule scheduleDaily(long scheduleId, String deviceId, LocalTime time, boolean turnOn, Runnable action) {
+        nextId.accumulateAndGet(scheduleId + 1, Math::max);
+        Schedule schedule = new Schedule(scheduleId, deviceId, time, turnOn, action);
+        long delaySeconds = LocalTime.now().until(time, ChronoUnit.SECONDS);
+        if (delaySeconds < 0) delaySeconds += TimeUnit.DAYS.toSeconds(1);
+        schedule.deadlineNanos = System.nanoTime() + TimeUnit.SECONDS.toNanos(delaySeconds);
+        schedules.put(schedule.getId(), schedule);
+        pendingAdds.add(schedule);
+        return schedule;
+    }
+
+    /**
+     * Get an active schedule.
+     * @param scheduleId The ID of the schedule.
+     * @return The schedule, or null if it is not active.
+     */
+    Schedule get(long scheduleId) {
+        return schedules.get(scheduleId);
+    }
+
+    /**
+     * Cancel a schedule.
+     * @param scheduleId The ID of the schedule.
+     * @return The cancelled schedule, or null if it was not active.
+     */
+    Schedule cancel(long scheduleId) {
+        Schedule schedule = schedules.remove(scheduleId);
+        if (schedule != null) {
+            schedule.cancel();
+        }
+        return schedule;
+    }
+
+    /**
+     * Cancel every schedule of a device.
+     * @param deviceId The ID of the device.
+     * @return The number of cancelled schedules.
+     */
+    int cancelByDevice(String deviceId) {
+        int cancelled = 0;
+        for (Schedule schedule : schedules.values()) {
+            if (schedule.getDeviceId().equals(deviceId) && cancel(schedule.getId()) != null) {
+                cancelled++;
+            }
+        }
+        return cancelled;
+    }
+
+    /**
+     * Get the active schedules ordered by ID.
+     * @return The active schedules.
+     */
+    List<Schedule> getSchedules() {
+        List<Schedule> active = new ArrayList<>(schedules.values());
+        active.sort((a, b) -> Long.compare(a.getId(), b.getId()));
+        return active;
+    }
+
+    /**
+     * Get the number of active schedules.
+     * @return The schedule count.
+     */
+    int size() {
+        return schedules.size();
+    }
+
+    /**
+     * Stop the ticker and the worker pool, or only stop ticking if the threads are shared.
+     */
+    void shutdown() {
+        tickTask.cancel(false);
+        if (ownsThreads) {
+            ticker.shutdownNow();
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Process every tick that has fully elapsed. Runs on the ticker thread only.
+     */
+    private void advance() {
+        try {
+            long lastElapsedTick = (System.nanoTime() - startNanos) / tickNanos - 1;
+            transferPendingAdds();
+            while (tick <= lastElapsedTick) {
+                expire(wheel.get((int) (tick & mask)));
+                tick++;
+            }
+        } catch (RuntimeException e) {
+            logger.error("Schedule engine tick failed", e);
+        }
+    }
+
+    private void transferPendingAdds() {
+        Schedule schedule;
+        while ((schedule = pendingAdds.poll()) != null) {
+            if (schedule.isCancelled()) {
+                continue;
+            }
+            long deadlineTick = (schedule.deadlineNanos - startNanos) / tickNanos;
+            long slotTick = Math.max(deadlineTick, tick);
+            schedule.remainingRounds = (slotTick - tick) / wheel.size();
+            wheel.get((int) (slotTick & mask)).add(schedule);
+        }
+    }
+
+    private void expire(List<Schedule> slot) {
+        int kept = 0;
+        for (int i = 0; i < slot.size(); i++) {
+            Schedule schedule = slot.get(i);
+            if (schedule.isCancelled()) {
+                continue;
+            }
+            if (schedule.remainingRounds > 0) {
+                schedule.remainingRounds--;
+                slot.set(kept++, schedule);
+                continue;
+            }
+            workers.execute(() -> run(schedule));
+            schedule.deadlineNanos += DAY_NANOS;
+            pendingAdds.add(schedule);
+        }
+        slot.subList(kept, slot.size()).clear();
+    }
+
+    private void run(Schedule schedule) {
+        if (schedule.isCancelled()) {
+            return;
+        }
+        try {
+            schedule.getAction().run();
+        } catch (RuntimeException e) {
+            logger.warn("Scheduled action failed: {}", schedule, e);
+        }
+    }
+
+    /**
+     * Create a factory of numbered daemon threads.
+     * @param name The prefix of the thread names.
+     * @return The thread factory.
+     */
+    static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
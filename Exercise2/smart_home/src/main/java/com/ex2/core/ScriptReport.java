@@ -0,0 +1,39 @@
+package com.ex2.core;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of running a command script.
+ * @param commands The number of commands run, including failed ones; blank and comment lines are not counted.
+ * @param errors The number of commands that failed.
+ * @param elapsedNanos The time taken to run the script.
+ * @param firstError The line number and message of the first failed command, or null if none failed.
+ */
+public record ScriptReport(long commands, long errors, long elapsedNanos, String firstError) {
+
+    /**
+     * Get the throughput of the script.
+     * @return The number of commands run per second.
+     */
+    public double getCommandsPerSecond() {
+        return elapsedNanos == 0 ? 0 : commands * 1e9 / elapsedNanos;
+    }
+
+    /**
+     * Get the time taken to run the script.
+     * @param unit The unit of the result.
+     * @return The elapsed time.
+     */
+    public long getElapsed(TimeUnit unit) {
+        return unit.convert(elapsedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "commands=" + commands
+             + ", errors=" + errors
+             + ", elapsedMillis=" + getElapsed(TimeUnit.MILLISECONDS)
+             + ", commandsPerSecond=" + Math.round(getCommandsPerSecond())
+             + (firstError != null ? ", firstError=" + firstError : "");
+    }
+}
@@ -0,0 +1,193 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Hosts the homes of many tenants in one JVM.
+ * Every home is an independent {@link SmartHomeSystem} with its own devices, triggers, schedules
+ * and observers. Homes are sharded over a fixed set of event-loop threads by tenant ID: all commands
+ * of a home run on its loop, one at a time, so a home never contends with itself and the number of
+ * threads does not grow with the number of homes. Due schedules and trigger sweeps also run on the
+ * home's loop; the schedule ticker and asynchronous observers use threads shared by all homes.
+ */
+public class SmartHomeHost {
+    private static final Logger logger = LogManager.getLogger(SmartHomeHost.class);
+
+    private final ExecutorService[] loops;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService observerExecutor;
+    private final Map<String, SmartHomeSystem> homes = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
+
+    /**
+     * Constructor for SmartHomeHost with one event loop per available processor.
+     */
+    public SmartHomeHost() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructor for SmartHomeHost.
+     * @param eventLoops The number of event-loop threads the homes are sharded over.
+     * @throws IllegalArgumentException if the number of event loops is not positive.
+     */
+    public SmartHomeHost(int eventLoops) {
+        if (eventLoops <= 0) {
+            throw new IllegalArgumentException("Invalid number of event loops: " + eventLoops);
+        }
+        this.loops = new ExecutorService[eventLoops];
+        for (int i = 0; i < eventLoops; i++) {
+            loops[i] = Executors.newSingleThreadExecutor(ScheduleEngine.daemonThreads("home-loop-" + i));
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ScheduleEngine.daemonThreads("home-scheduler"));
+        this.observerExecutor = Executors.newCachedThreadPool(ScheduleEngine.daemonThreads("home-observer-dispatch"));
+        logger.info("SmartHomeHost started with {} event loops", eventLoops);
+    }
+
+    /**
+     * Get the home of a tenant, creating it on first use.
+     * @param tenantId The ID of the tenant.
+     * @return The tenant's system.
+     * @throws IllegalStateException if the host has been shut down.
+     */
+    public SmartHomeSystem openHome(String tenantId) {
+        if (shutdown) {
+            throw new IllegalStateException("SmartHomeHost has been shut down");
+        }
+        return homes.computeIfAbsent(tenantId, id -> new SmartHomeSystem(id, loopOf(id), scheduler, observerExecutor));
+    }
+
+    /**
+     * Get the home of a tenant.
+     * @param tenantId The ID of the tenant.
+     * @return The tenant's system.
+     * @throws IllegalArgumentException if the tenant has no home on this host.
+     */
+    public SmartHomeSystem getHome(String tenantId) {
+        SmartHomeSystem home = homes.get(tenantId);
+        if (home == null) {
+            throw new IllegalArgumentException("Unknown tenant: " + tenantId);
+        }
+        return home;
+    }
+
+    /**
+     * Stop the home of a tenant and remove it from the host.
+     * @param tenantId The ID of the tenant.
+     * @return True if the tenant had a home, false otherwise.
+     */
+    public boolean closeHome(String tenantId) {
+        SmartHomeSystem home = homes.remove(tenantId);
+        if (home == null) {
+            return false;
+        }
+        home.stop();
+        return true;
+    }
+
+    /**
+     * Run a command against a tenant's home on the home's event loop, without waiting.
+     * Commands of one home run in submission order.
+     * @param tenantId The ID of the tenant.
+     * @param command The command to run.
+     * @throws IllegalArgumentException if the tenant has no home on this host.
+     */
+    public void execute(String tenantId, Consumer<SmartHomeSystem> command) {
+        SmartHomeSystem home = getHome(tenantId);
+        loopOf(tenantId).execute(() -> {
+            try {
+                command.accept(home);
+            } catch (RuntimeException e) {
+                logger.warn("Command for tenant {} failed: {}", tenantId, e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Run a query or command against a tenant's home on the home's event loop.
+     * @param tenantId The ID of the tenant.
+     * @param command The command to run.
+     * @param <T> The type of the result.
+     * @return A future completed with the command's result, or exceptionally if it failed.
+     * @throws IllegalArgumentException if the tenant has no home on this host.
+     */
+    public <T> CompletableFuture<T> submit(String tenantId, Function<SmartHomeSystem, T> command) {
+        SmartHomeSystem home = getHome(tenantId);
+        return CompletableFuture.supplyAsync(() -> command.apply(home), loopOf(tenantId));
+    }
+
+    /**
+     * Get the IDs of the tenants with a home on this host.
+     * @return The tenant IDs.
+     */
+    public Collection<String> getTenantIds() {
+        return Collections.unmodifiableSet(homes.keySet());
+    }
+
+    /**
+     * Get the number of homes on this host.
+     * @return The home count.
+     */
+    public int getHomeCount() {
+        return homes.size();
+    }
+
+    /**
+     * Get the number of event-loop threads.
+     * @return The event loop count.
+     */
+    public int getEventLoopCount() {
+        return loops.length;
+    }
+
+    /**
+     * Get the event loop a tenant's home is bound to.
+     * @param tenantId The ID of the tenant.
+     * @return The loop index, stable for the lifetime of the host.
+     */
+    public int getEventLoopIndex(String tenantId) {
+        return Math.floorMod(tenantId.hashCode(), loops.length);
+    }
+
+    /**
+     * Stop every home and the shared threads. Commands already queued on the event loops still run.
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (String tenantId : homes.keySet()) {
+            closeHome(tenantId);
+        }
+        for (ExecutorService loop : loops) {
+            loop.shutdown();
+        }
+        try {
+            for (ExecutorService loop : loops) {
+                if (!loop.awaitTermination(800, TimeUnit.MILLISECONDS)) {
+                    loop.shutdownNow();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        scheduler.shutdownNow();
+        observerExecutor.shutdown();
+        logger.info("SmartHomeHost stopped");
+    }
+
+    private ExecutorService loopOf(String tenantId) {
+        return loops[getEventLoopIndex(tenantId)];
+    }
+}
@@ -2,45 +2,142 @@ package com.ex2.core;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DateTimeException;
 import java.time.LocalTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.ex2.factory.DeviceFactory;
-import com.ex2.devices.Thermostat;
 
 /**
  * Main class for the Smart Home System.
- * Implements the Singleton pattern.
+ * The default instance returned by {@link #getInstance()} owns its threads. Homes opened on a
+ * {@link SmartHomeHost} are independent instances, one per tenant, that share the host's threads
+ * and run their commands on the host's event loops.
  */
 public class SmartHomeSystem {
-    private static SmartHomeSystem instance;
+    private final String tenantId;
     private final Map<String, DeviceProxy> devices = new ConcurrentHashMap<>();
     private final List<DeviceObserver> observers = new CopyOnWriteArrayList<>();
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
-    private final List<Trigger> triggers = new CopyOnWriteArrayList<>();
+    private final DeviceObserver changePublisher = this::publishChange;
+    private final Consumer<DeviceProxy> triggerEvaluation = this::evaluateTriggers;
+    private final ScheduledExecutorService scheduler;
+    private final ScheduleEngine scheduleEngine;
+    private final ExecutorService commandExecutor;
+    private volatile ExecutionMode executionMode = ExecutionMode.DIRECT;
+    private final ExecutorService observerExecutor;
+    private final Executor eventLoop;
+    private final boolean ownsThreads;
+    private final TriggerIndex triggers = new TriggerIndex();
+    private final TriggerMetrics triggerMetrics = new TriggerMetrics();
+    private final CascadeMetrics cascadeMetrics = new CascadeMetrics();
+    private final CascadeExecutor cascades = new CascadeExecutor(cascadeMetrics);
+    private volatile boolean triggerCyclesAllowed;
+    private volatile TriggerEvaluationMode triggerMode = TriggerEvaluationMode.POLLING;
+    private long triggerSweepSeconds = 5;
+    private ScheduledFuture<?> triggerChecker;
+    private final ThreadLocal<Map<String, DeviceProxy>> batchChanges = new ThreadLocal<>();
+    private volatile StatePersistence persistence;
+    private volatile BinarySnapshot lazyDevices;
+    private volatile DeviceStateStore stateStore;
     private static final Logger logger = LogManager.getLogger(SmartHomeSystem.class);
 
     private SmartHomeSystem() {
+        this.tenantId = "default";
+        this.scheduler = Executors.newScheduledThreadPool(1);
+        this.scheduleEngine = new ScheduleEngine(
+                Integer.getInteger("smarthome.scheduleWorkers", Runtime.getRuntime().availableProcessors()),
+                Long.getLong("smarthome.scheduleTickMillis", 1000L),
+                Integer.getInteger("smarthome.scheduleWheelSize", 4096));
+        this.commandExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        this.observerExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "observer-dispatch");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.eventLoop = null;
+        this.ownsThreads = true;
         logger.info("SmartHomeSystem initialized");
         startTriggerChecker();
     }
 
     /**
-     * Get the singleton instance of SmartHomeSystem.
+     * Constructor for the home of one tenant of a {@link SmartHomeHost}.
+     * The home shares the host's threads; its device commands, due schedules and trigger sweeps run
+     * on its event loop. Device mailboxes drain queued commands on virtual threads instead, so the
+     * loop never waits for a device whose commands are queued behind it.
+     * @param tenantId The ID of the tenant.
+     * @param eventLoop The single-threaded executor the home is bound to.
+     * @param scheduler Shared executor for trigger sweeps, schedule ticks and journal snapshots.
+     * @param observerExecutor Shared pool that dispatches to asynchronous observers.
+     */
+    SmartHomeSystem(String tenantId, ExecutorService eventLoop, ScheduledExecutorService scheduler,
+                    ExecutorService observerExecutor) {
+        this.tenantId = tenantId;
+        this.scheduler = scheduler;
+        this.scheduleEngine = new ScheduleEngine(eventLoop, scheduler,
+                Long.getLong("smarthome.scheduleTickMillis", 1000L),
+                Integer.getInteger("smarthome.tenantScheduleWheelSize", 64));
+        this.commandExecutor = DeviceMailbox.DEFAULT_EXECUTOR;
+        this.observerExecutor = observerExecutor;
+        this.eventLoop = eventLoop;
+        this.ownsThreads = false;
+        logger.debug("SmartHomeSystem initialized for tenant {}", tenantId);
+        startTriggerChecker();
+    }
+
+    /**
+     * Get the default instance of SmartHomeSystem, creating it on first use.
+     * Creation is made thread-safe by class initialization, so later calls are a plain field read.
      * @return The SmartHomeSystem instance.
      */
-    public static synchronized SmartHomeSystem getInstance() {
-        if (instance == null) {
-            instance = new SmartHomeSystem();
-        }
-        return instance;
+    public static SmartHomeSystem getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Holds the default instance; the JVM initializes it once, on the first call to {@link #getInstance()}.
+     */
+    private static final class Holder {
+        static final SmartHomeSystem INSTANCE = new SmartHomeSystem();
+    }
+
+    /**
+     * Get the tenant this system belongs to.
+     * @return The tenant ID, or {@code "default"} for the default instance.
+     */
+    public String getTenantId() {
+        return tenantId;
     }
 
     /**
      * Stop the scheduler and shutdown the system.
+     * A home of a {@link SmartHomeHost} only stops its own sweeps and schedules; the shared threads keep running.
      */
     public void stop() {
+        disablePersistence();
+        if (!ownsThreads) {
+            synchronized (this) {
+                if (triggerChecker != null) {
+                    triggerChecker.cancel(false);
+                    triggerChecker = null;
+                }
+            }
+            scheduleEngine.shutdown();
+            return;
+        }
+        observerExecutor.shutdown();
+        scheduleEngine.shutdown();
+        commandExecutor.shutdown();
         scheduler.shutdown();
         try {
             if (!scheduler.awaitTermination(800, TimeUnit.MILLISECONDS)) {
@@ -52,123 +149,983 @@ public class SmartHomeSystem {
     }
 
     /**
-     * Start the periodic trigger checker.
+     * Start the periodic trigger checker, replacing any running one.
+     */
+    private synchronized void startTriggerChecker() {
+        if (triggerChecker != null) {
+            triggerChecker.cancel(false);
+            triggerChecker = null;
+        }
+        if (triggerSweepSeconds > 0) {
+            Runnable sweep = eventLoop != null ? () -> eventLoop.execute(this::checkTriggers) : this::checkTriggers;
+            triggerChecker = scheduler.scheduleAtFixedRate(sweep, 0, triggerSweepSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Select when trigger conditions are evaluated.
+     * In {@link TriggerEvaluationMode#EVENT_DRIVEN} mode the periodic sweep only acts as a safety net
+     * and may be disabled with {@link #setTriggerSweepInterval(long)}.
+     * @param mode The evaluation mode.
+     */
+    public synchronized void setTriggerEvaluationMode(TriggerEvaluationMode mode) {
+        if (mode == TriggerEvaluationMode.POLLING && triggerSweepSeconds <= 0) {
+            throw new IllegalStateException("Polling mode requires a positive sweep interval");
+        }
+        triggerMode = mode;
+        if (mode == TriggerEvaluationMode.RULE_NETWORK) {
+            // The network was not kept up to date; rebuild it and settle triggers that changed meanwhile
+            triggers.network().resync();
+            checkTriggers();
+            resetTriggers();
+        }
+        logger.info("Trigger evaluation mode set to {}", mode);
+    }
+
+    /**
+     * Get the current trigger evaluation mode.
+     * @return The evaluation mode.
+     */
+    public TriggerEvaluationMode getTriggerEvaluationMode() {
+        return triggerMode;
+    }
+
+    /**
+     * Set the interval of the periodic trigger sweep.
+     * @param seconds The interval in seconds, or 0 to disable the sweep in event-driven mode.
+     * @throws IllegalArgumentException if the interval is negative, or zero while polling.
+     */
+    public synchronized void setTriggerSweepInterval(long seconds) {
+        if (seconds < 0 || (seconds == 0 && triggerMode == TriggerEvaluationMode.POLLING)) {
+            throw new IllegalArgumentException("Invalid trigger sweep interval: " + seconds);
+        }
+        triggerSweepSeconds = seconds;
+        startTriggerChecker();
+        logger.info("Trigger sweep interval set to {}s", seconds);
+    }
+
+    /**
+     * Get the latency metrics of fired triggers.
+     * @return The trigger metrics.
+     */
+    public TriggerMetrics getTriggerMetrics() {
+        return triggerMetrics;
+    }
+
+    /**
+     * Get the depth, size and duration metrics of trigger cascades.
+     * @return The cascade metrics.
+     */
+    public CascadeMetrics getCascadeMetrics() {
+        return cascadeMetrics;
+    }
+
+    /**
+     * Bound the work of a single trigger cascade. Actions fired by the changes of other trigger
+     * actions run breadth-first, one generation after another; once a cascade reaches either
+     * limit its remaining actions are dropped and the cascade is counted as truncated.
+     * @param maxDepth The maximum number of trigger generations (default 32).
+     * @param maxActions The maximum number of actions (default 1000).
+     * @throws IllegalArgumentException if a limit is not positive.
+     */
+    public void setCascadeLimits(int maxDepth, int maxActions) {
+        cascades.setLimits(maxDepth, maxActions);
+        logger.info("Trigger cascade limits set to depth {} and {} actions", maxDepth, maxActions);
+    }
+
+    /**
+     * Allow triggers that form a cycle, such as a pair switching a device on and off again.
+     * By default {@link #addTrigger(String, String)} rejects them; cycles that are allowed are
+     * only bounded by the cascade limits.
+     * @param allowed True to accept cyclic triggers.
+     */
+    public void setTriggerCyclesAllowed(boolean allowed) {
+        triggerCyclesAllowed = allowed;
+    }
+
+    /**
+     * Restore the devices, triggers and schedules persisted in a directory, then journal
+     * every further change there. Recovery loads the latest snapshot and replays the journal
+     * written after it, then writes a full snapshot of the resulting state, so devices, triggers
+     * and schedules that existed before persistence was enabled are persisted as well.
+     * Journal records are committed in groups by a background writer every
+     * {@code smarthome.journalCommitMillis} milliseconds (default 2), so commands do not wait
+     * for the disk; a snapshot is taken every {@code smarthome.snapshotEveryRecords} records
+     * (default 100000).
+     * @param directory The directory holding the snapshot and the journal.
+     * @param fsync True to force every group commit to the storage device.
+     * @throws IOException If the persisted state cannot be read or the journal cannot be opened.
+     * @throws IllegalStateException If persistence is already enabled, or the devices are kept in a state store.
+     */
+    public synchronized void enablePersistence(Path directory, boolean fsync) throws IOException {
+        if (persistence != null) {
+            throw new IllegalStateException("Persistence is already enabled");
+        }
+        requireNoStateStore("Persistence");
+        StatePersistence recovered = StatePersistence.recover(this, directory, fsync,
+                Long.getLong("smarthome.journalCommitMillis", 2L),
+                Long.getLong("smarthome.snapshotEveryRecords", 100_000L), scheduler);
+        persistence = recovered;
+        try {
+            // Changes from here on are journaled; the snapshot covers everything before, including unjournaled state.
+            recovered.snapshot();
+        } catch (IOException | RuntimeException e) {
+            persistence = null;
+            recovered.close();
+            throw e;
+        }
+        logger.info("Persistence enabled in {}", directory);
+    }
+
+    /**
+     * Write a snapshot of the current state and discard the journal it replaces.
+     * @throws IOException If the snapshot cannot be written.
+     * @throws IllegalStateException If persistence is not enabled.
+     */
+    public void takeSnapshot() throws IOException {
+        StatePersistence current = persistence;
+        if (current == null) {
+            throw new IllegalStateException("Persistence is not enabled");
+        }
+        current.snapshot();
+    }
+
+    /**
+     * Commit outstanding journal records and stop journaling. Does nothing if persistence is not enabled.
+     */
+    public synchronized void disablePersistence() {
+        if (persistence != null) {
+            persistence.close();
+            persistence = null;
+            logger.info("Persistence disabled");
+        }
+    }
+
+    /**
+     * Write the devices and triggers to a binary snapshot that {@link #loadBinarySnapshot} can map.
+     * @param file The snapshot file.
+     * @throws IOException If the file cannot be written.
+     * @throws IllegalStateException If the devices are kept in a state store.
+     */
+    public void writeBinarySnapshot(Path file) throws IOException {
+        requireNoStateStore("Binary snapshots");
+        materializeAll();
+        List<String[]> savedTriggers = new ArrayList<>();
+        for (Trigger trigger : triggers.all()) {
+            savedTriggers.add(new String[] {trigger.getCondition(), trigger.getAction()});
+        }
+        long started = System.nanoTime();
+        BinarySnapshot.write(file, new ArrayList<>(devices.values()), savedTriggers);
+        logger.info("Wrote binary snapshot of {} devices to {} in {} ms", devices.size(), file, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    /**
+     * Load the devices and triggers of a binary snapshot.
+     * The file is memory-mapped and devices are materialized only when first accessed, so
+     * startup cost does not grow with the number of devices that are never touched. Listing
+     * all devices, e.g. through {@link #getStatus()}, materializes the rest. Devices already
+     * registered keep precedence over snapshot entries with the same ID.
+     * @param file The snapshot file.
+     * @return The number of devices in the snapshot.
+     * @throws IOException If the file cannot be mapped or is not a snapshot.
+     * @throws IllegalStateException If devices of a previous snapshot are still being loaded, or the
+     *         devices are kept in a state store.
+     */
+    public synchronized int loadBinarySnapshot(Path file) throws IOException {
+        if (lazyDevices != null) {
+            throw new IllegalStateException("Devices of a previous snapshot are still being loaded");
+        }
+        requireNoStateStore("Binary snapshots");
+        long started = System.nanoTime();
+        BinarySnapshot snapshot = BinarySnapshot.open(file);
+        for (String id : devices.keySet()) {
+            int slot = snapshot.find(id);
+            if (slot >= 0) {
+                snapshot.claim(slot);
+            }
+        }
+        lazyDevices = snapshot;
+        for (String[] trigger : snapshot.getTriggers()) {
+            if (!hasTrigger(trigger[0], trigger[1])) {
+                addTrigger(trigger[0], trigger[1], true);
+            }
+        }
+        logger.info("Mapped binary snapshot of {} devices from {} in {} ms", snapshot.size(), file, (System.nanoTime() - started) / 1_000_000);
+        return snapshot.size();
+    }
+
+    /**
+     * Get the number of snapshot devices not materialized yet.
+     * @return The number of lazily loaded devices still waiting in the snapshot.
+     */
+    public int getLazyDeviceCount() {
+        BinarySnapshot snapshot = lazyDevices;
+        return snapshot != null ? snapshot.remaining() : 0;
+    }
+
+    /**
+     * Keep the devices of this system in a columnar {@link DeviceStateStore} instead of one object each,
+     * for fleets of millions of devices. Devices added by type, through {@link #addDevice(String, String)}
+     * or {@link #importDevices(Stream)}, then live in a slot of the store and are commanded and read through
+     * thin views of it. A device only gets a proxy when it first needs one: when it is commanded or added
+     * singly, or a handle, trigger or schedule refers to it. Until then it costs only its slot, and status
+     * reports read it from the store. Devices added as objects through {@link #addDevice(Device)} are kept
+     * as objects. Persistence and binary snapshots are not available for a system with a state store.
+     * @param capacity The maximum number of devices the store can hold.
+     * @throws IllegalArgumentException If the capacity is not positive.
+     * @throws IllegalStateException If the system already has devices, a state store or persistence.
+     */
+    public synchronized void useStateStore(int capacity) {
+        if (stateStore != null) {
+            throw new IllegalStateException("A state store is already in use");
+        }
+        if (persistence != null) {
+            throw new IllegalStateException("Persistence is not supported with a state store");
+        }
+        if (!devices.isEmpty() || lazyDevices != null) {
+            throw new IllegalStateException("A state store must be used before devices are added");
+        }
+        stateStore = new DeviceStateStore(capacity);
+        logger.info("Keeping devices in a state store of capacity {}", capacity);
+    }
+
+    /**
+     * Get the state store holding the devices, e.g. to count devices that are on.
+     * Changes made through the store directly are not published to observers or triggers.
+     * @return The state store, or null if the devices are kept as objects.
+     */
+    public DeviceStateStore getStateStore() {
+        return stateStore;
+    }
+
+    private void requireNoStateStore(String feature) {
+        if (stateStore != null) {
+            throw new IllegalStateException(feature + " are not supported with a state store");
+        }
+    }
+
+    /**
+     * Find a registered device, giving a device in the state store or the loaded snapshot a proxy on first access.
+     * @param id The ID of the device.
+     * @return The device proxy, or null if the device does not exist.
+     */
+    private DeviceProxy lookup(String id) {
+        DeviceProxy proxy = devices.get(id);
+        if (proxy != null) {
+            return proxy;
+        }
+        DeviceStateStore store = stateStore;
+        if (store != null) {
+            return materialize(store, id);
+        }
+        BinarySnapshot snapshot = lazyDevices;
+        if (snapshot == null) {
+            return null;
+        }
+        int slot = snapshot.find(id);
+        if (slot < 0) {
+            return null;
+        }
+        synchronized (snapshot) {
+            materialize(snapshot, slot);
+            return devices.get(id);
+        }
+    }
+
+    /**
+     * Materialize every device still waiting in the loaded snapshot.
+     */
+    private void materializeAll() {
+        BinarySnapshot snapshot = lazyDevices;
+        if (snapshot == null) {
+            return;
+        }
+        synchronized (snapshot) {
+            for (int slot = 0; slot < snapshot.size() && snapshot.remaining() > 0; slot++) {
+                materialize(snapshot, slot);
+            }
+        }
+    }
+
+    private void materialize(BinarySnapshot snapshot, int slot) {
+        if (snapshot.claim(slot)) {
+            DeviceProxy proxy = new DeviceProxy(snapshot.create(slot, changePublisher), changePublisher, commandExecutor);
+            if (devices.putIfAbsent(proxy.getId(), proxy) == null) {
+                proxy.getHandle().activate();
+            }
+        }
+        if (snapshot.remaining() == 0 && lazyDevices == snapshot) {
+            lazyDevices = null;
+        }
+    }
+
+    /**
+     * Give a device in the state store a proxy wrapping a view of its slot.
+     * The proxies of store devices are added and removed while holding the store's lock.
+     * @param store The state store.
+     * @param id The ID of the device.
+     * @return The device proxy, or null if the device does not exist.
+     */
+    private DeviceProxy materialize(DeviceStateStore store, String id) {
+        if (store.slotOf(id) < 0) {
+            return null;
+        }
+        synchronized (store) {
+            DeviceProxy proxy = devices.get(id);
+            int slot = store.slotOf(id);
+            if (proxy == null && slot >= 0) {
+                proxy = new DeviceProxy(store.view(slot), changePublisher, commandExecutor);
+                devices.put(id, proxy);
+                proxy.getHandle().activate();
+            }
+            return proxy;
+        }
+    }
+
+    private static boolean isStored(DeviceProxy proxy) {
+        return proxy.getDevice() instanceof DeviceStateStore.View;
+    }
+
+    /**
+     * Get the command journal.
+     * @return The journal, or null if persistence is not enabled.
+     */
+    public CommandJournal getJournal() {
+        StatePersistence current = persistence;
+        return current != null ? current.getJournal() : null;
+    }
+
+    /**
+     * Add a new device to the system.
+     * @param type The type of the device.
+     * @param id The unique identifier for the device.
+     * @return The handle of the new device.
+     */
+    public DeviceHandle addDevice(String type, String id) {
+        if (lookup(id) != null) {
+            throw new IllegalArgumentException("Device with ID " + id + " already exists");
+        }
+        DeviceStateStore store = stateStore;
+        DeviceHandle handle = store != null
+                ? addStored(store, type, id)
+                : register(DeviceFactory.createDevice(type, id, changePublisher));
+        logger.info("Added {} with ID {}", type, id);
+        return handle;
+    }
+
+    private DeviceHandle addStored(DeviceStateStore store, String type, String id) {
+        DeviceProxy proxy;
+        synchronized (store) {
+            if (devices.containsKey(id)) {
+                throw new IllegalArgumentException("Device with ID " + id + " already exists");
+            }
+            store.add(type, id);
+            proxy = materialize(store, id);
+        }
+        notifyObservers(proxy);
+        return proxy.getHandle();
+    }
+
+    /**
+     * Add an already constructed device to the system.
+     * A device created without a change listener, such as a thermostat, is bound to this system,
+     * so the changes it publishes on its own reach this system's observers and triggers.
+     * @param device The device to add.
+     * @return The handle of the new device.
+     */
+    public DeviceHandle addDevice(Device device) {
+        if (lookup(device.getId()) != null) {
+            throw new IllegalArgumentException("Device with ID " + device.getId() + " already exists");
+        }
+        DeviceHandle handle = register(device);
+        logger.info("Added {} with ID {}", device.getType(), device.getId());
+        return handle;
+    }
+
+    /**
+     * Import devices from an inventory file with one {@code "<type> <id>"} or {@code "<type>,<id>"}
+     * entry per line; blank lines and lines starting with {@code #} are skipped.
+     * See {@link #importDevices(Stream)}.
+     * @param file The inventory file.
+     * @return The per-batch results of the import.
+     * @throws IOException If the file cannot be read.
+     */
+    public ProvisioningReport importDevices(Path file) throws IOException {
+        try (Stream<String> lines = Files.lines(file)) {
+            return importDevices(lines.filter(line -> !line.isBlank() && !line.startsWith("#")).map(DeviceSpec::parse));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Import many devices at once, for example to provision a building.
+     * Entries are taken in batches of {@code smarthome.provisionBatchSize} (default 10000). The devices
+     * of a batch are validated and constructed in parallel, then registered atomically one by one:
+     * an entry whose ID is already registered is counted as a duplicate instead of failing the import,
+     * and an entry of an unknown type or without an ID is counted as invalid. Observers are notified
+     * once, through {@link DeviceObserver#updateAll}, with every added device. With a state store the
+     * devices are added to the store one batch at a time, without proxies.
+     * @param specs The devices to add.
+     * @return The per-batch results of the import.
+     * @throws IllegalStateException If the state store is full.
+     */
+    public ProvisioningReport importDevices(Stream<DeviceSpec> specs) {
+        int batchSize = Math.max(1, Integer.getInteger("smarthome.provisionBatchSize", 10_000));
+        List<ProvisioningReport.Batch> batches = new ArrayList<>();
+        List<Device> added = new ArrayList<>();
+        List<DeviceSpec> batch = new ArrayList<>(batchSize);
+        Iterator<DeviceSpec> entries = specs.iterator();
+        while (entries.hasNext()) {
+            batch.add(entries.next());
+            if (batch.size() == batchSize || !entries.hasNext()) {
+                batches.add(importBatch(batch, added));
+                batch.clear();
+            }
+        }
+        notifyObservers(added);
+        ProvisioningReport report = new ProvisioningReport(batches);
+        logger.info("Imported devices: {}", report);
+        return report;
+    }
+
+    private ProvisioningReport.Batch importBatch(List<DeviceSpec> batch, List<Device> added) {
+        long started = System.nanoTime();
+        DeviceTypeRegistry registry = DeviceTypeRegistry.getDefault();
+        DeviceStateStore store = stateStore;
+        if (store != null) {
+            return importStoredBatch(store, batch, added, started);
+        }
+        // Construct in parallel; a null entry marks an invalid spec
+        List<DeviceProxy> constructed = batch.parallelStream().map(spec -> {
+            DeviceType type = spec.type() != null ? registry.find(spec.type()) : null;
+            if (type == null || spec.id() == null || spec.id().isEmpty()) {
+                return null;
+            }
+            return new DeviceProxy(type.create(spec.id(), changePublisher), changePublisher, commandExecutor);
+        }).collect(Collectors.toList());
+        int count = 0;
+        int duplicates = 0;
+        int invalid = 0;
+        StatePersistence current = persistence;
+        for (DeviceProxy proxy : constructed) {
+            if (proxy == null) {
+                invalid++;
+            } else if ((lazyDevices != null && lookup(proxy.getId()) != null) || devices.putIfAbsent(proxy.getId(), proxy) != null) {
+                duplicates++;
+            } else {
+                proxy.getHandle().activate();
+                if (current != null) {
+                    current.recordAdd(proxy);
+                }
+                added.add(proxy);
+                count++;
+            }
+        }
+        return batchResult(batch, count, duplicates, invalid, started);
+    }
+
+    private ProvisioningReport.Batch importStoredBatch(DeviceStateStore store, List<DeviceSpec> batch, List<Device> added, long started) {
+        DeviceTypeRegistry registry = DeviceTypeRegistry.getDefault();
+        int count = 0;
+        int duplicates = 0;
+        int invalid = 0;
+        synchronized (store) {
+            for (DeviceSpec spec : batch) {
+                DeviceType type = spec.type() != null ? registry.find(spec.type()) : null;
+                if (type == null || spec.id() == null || spec.id().isEmpty()) {
+                    invalid++;
+                } else if (devices.containsKey(spec.id()) || store.slotOf(spec.id()) >= 0) {
+                    duplicates++;
+                } else {
+                    added.add(store.view(store.add(type.getName(), spec.id())));
+                    count++;
+                }
+            }
+        }
+        return batchResult(batch, count, duplicates, invalid, started);
+    }
+
+    private static ProvisioningReport.Batch batchResult(List<DeviceSpec> batch, int count, int duplicates, int invalid, long started) {
+        long elapsed = System.nanoTime() - started;
+        logger.debug("Imported batch of {} devices: {} added, {} duplicates, {} invalid in {} ms",
+                batch.size(), count, duplicates, invalid, elapsed / 1_000_000);
+        return new ProvisioningReport.Batch(count, duplicates, invalid, elapsed);
+    }
+
+    private DeviceHandle register(Device device) {
+        DeviceProxy proxy = new DeviceProxy(device, changePublisher, commandExecutor);
+        if (!putNew(proxy)) {
+            throw new IllegalArgumentException("Device with ID " + device.getId() + " already exists");
+        }
+        proxy.getDeviceType().bind(device, changePublisher);
+        proxy.getHandle().activate();
+        StatePersistence current = persistence;
+        if (current != null) {
+            current.recordAdd(proxy);
+        }
+        notifyObservers(proxy);
+        return proxy.getHandle();
+    }
+
+    /**
+     * Register a proxy unless its ID is taken, also by a device in the state store.
+     * @param proxy The proxy of the new device.
+     * @return True if the proxy was registered.
+     */
+    private boolean putNew(DeviceProxy proxy) {
+        DeviceStateStore store = stateStore;
+        if (store == null) {
+            return devices.putIfAbsent(proxy.getId(), proxy) == null;
+        }
+        synchronized (store) {
+            return store.slotOf(proxy.getId()) < 0 && devices.putIfAbsent(proxy.getId(), proxy) == null;
+        }
+    }
+
+    /**
+     * Get the handle of a registered device.
+     * @param id The ID of the device.
+     * @return The device handle.
+     * @throws IllegalArgumentException if the device does not exist.
+     */
+    public DeviceHandle getHandle(String id) {
+        return getDeviceProxyById(id).getHandle();
+    }
+
+    /**
+     * Select how commands issued by schedules, triggers and batches are run.
+     * @param mode The execution mode.
+     */
+    public void setExecutionMode(ExecutionMode mode) {
+        executionMode = mode;
+        logger.info("Execution mode set to {}", mode);
+    }
+
+    /**
+     * Get the current execution mode.
+     * @return The execution mode.
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Run a command against a device according to the execution mode.
+     * @param proxy The target device.
+     * @param command The command to run.
+     */
+    private void runOnDevice(DeviceProxy proxy, Runnable command) {
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            proxy.submit(command);
+        } else {
+            command.run();
+        }
+    }
+
+    /**
+     * Remove triggers associated with a specific device.
+     * @param deviceId The ID of the device.
+     */
+    private void removeTriggersByDevice(String deviceId) {
+        triggers.removeByDevice(deviceId);
+        logger.info("Removed triggers associated with device: {}", deviceId);
+    }
+
+    /**
+     * Remove a device from the system.
+     * @param id The ID of the device to remove.
+     */
+    public void removeDevice(String id) {
+        DeviceProxy proxy = unregister(id);
+        if (proxy != null) {
+            StatePersistence current = persistence;
+            if (current != null) {
+                current.recordRemove(id);
+            }
+            notifyObservers(proxy);
+            logger.info("Removed {} with ID {}", proxy.getType(), id);
+            System.out.println("Device removed: " + proxy.getType() + " with ID " + id);
+        } else {
+            throw new IllegalArgumentException("Device with ID " + id + " does not exist");
+        }
+    }
+
+    /**
+     * Remove a device together with its triggers and schedules, without journaling or notifying.
+     * @param id The ID of the device.
+     * @return The removed device, or null if it did not exist.
+     */
+    private DeviceProxy unregister(String id) {
+        DeviceProxy proxy;
+        DeviceStateStore store = stateStore;
+        if (store != null) {
+            synchronized (store) {
+                proxy = lookup(id);
+                if (proxy != null) {
+                    devices.remove(id);
+                    if (isStored(proxy)) {
+                        proxy.detach(changePublisher);
+                        store.remove(id);
+                    }
+                }
+            }
+        } else {
+            lookup(id);
+            proxy = devices.remove(id);
+        }
+        if (proxy != null) {
+            proxy.getHandle().invalidate();
+            removeTriggersByDevice(id);
+            scheduleEngine.cancelByDevice(id);
+        }
+        return proxy;
+    }
+
+    /**
+     * Turn on a device.
+     * @param id The ID of the device to turn on.
+     */
+    public void turnOn(String id) {
+        turnOn(getDeviceProxyById(id));
+    }
+
+    /**
+     * Turn on a device through its handle, without looking up its ID.
+     * @param handle The handle of the device to turn on.
+     * @throws IllegalArgumentException if the device has been removed.
+     */
+    public void turnOn(DeviceHandle handle) {
+        turnOn(handle.resolve());
+    }
+
+    /**
+     * Turn on an already resolved device.
+     * @param proxy The proxy of the device to turn on.
+     */
+    void turnOn(DeviceProxy proxy) {
+        proxy.turnOn();
+    }
+    
+    /**
+     * Turn off a device.
+     * @param id The ID of the device to turn off.
+     */
+    public void turnOff(String id) {
+        turnOff(getDeviceProxyById(id));
+    }
+
+    /**
+     * Turn off a device through its handle, without looking up its ID.
+     * @param handle The handle of the device to turn off.
+     * @throws IllegalArgumentException if the device has been removed.
+     */
+    public void turnOff(DeviceHandle handle) {
+        turnOff(handle.resolve());
+    }
+
+    /**
+     * Turn off an already resolved device.
+     * @param proxy The proxy of the device to turn off.
+     */
+    void turnOff(DeviceProxy proxy) {
+        proxy.turnOff();
+    }
+
+    /**
+     * Set a schedule for a device to turn on or off at a specific time.
+     * @param id The ID of the device.
+     * @param time The time to schedule the action.
+     * @param turnOn True to turn on, false to turn off.
+     * @return The schedule, which repeats daily until cancelled.
+     */
+    public Schedule setSchedule(String id, LocalTime time, boolean turnOn) {
+        return setSchedule(getHandle(id), time, turnOn);
+    }
+
+    /**
+     * Set a schedule for a device, identified by its handle, to turn on or off at a specific time.
+     * @param handle The handle of the device.
+     * @param time The time to schedule the action.
+     * @param turnOn True to turn on, false to turn off.
+     * @return The schedule, which repeats daily until cancelled.
+     * @throws IllegalArgumentException if the device has been removed.
+     */
+    public Schedule setSchedule(DeviceHandle handle, LocalTime time, boolean turnOn) {
+        DeviceProxy proxy = handle.resolve();
+        Schedule schedule = scheduleEngine.scheduleDaily(proxy.getId(), time, turnOn, scheduledAction(handle, turnOn));
+
+        StatePersistence current = persistence;
+        if (current != null) {
+            current.recordSchedule(schedule, true);
+        }
+        logger.info("Scheduled {} {} to turn {} at {}", proxy.getType(), proxy.getId(), turnOn ? "on" : "off", time);
+        return schedule;
+    }
+
+    /**
+     * Build the action a schedule runs against its device.
+     * @param handle The handle of the device.
+     * @param turnOn True to turn the device on, false to turn it off.
+     * @return The action.
+     */
+    private Runnable scheduledAction(DeviceHandle handle, boolean turnOn) {
+        return () -> {
+            DeviceProxy target = handle.resolve();
+            runOnDevice(target, () -> {
+                if (turnOn) turnOn(target);
+                else turnOff(target);
+            });
+        };
+    }
+
+    /**
+     * Cancel a schedule.
+     * @param scheduleId The ID of the schedule.
+     * @throws IllegalArgumentException if no active schedule has this ID.
+     */
+    public void cancelSchedule(long scheduleId) {
+        Schedule schedule = scheduleEngine.cancel(scheduleId);
+        if (schedule == null) {
+            throw new IllegalArgumentException("Schedule not found: " + scheduleId);
+        }
+        StatePersistence current = persistence;
+        if (current != null) {
+            current.recordSchedule(schedule, false);
+        }
+        logger.info("Cancelled schedule {}", scheduleId);
+    }
+
+    /**
+     * Get all active schedules.
+     * @return The active schedules ordered by ID.
+     */
+    public List<Schedule> getSchedules() {
+        return scheduleEngine.getSchedules();
+    }
+
+    /**
+     * List all active schedules.
+     * @return A string representation of all schedules.
+     */
+    public String listSchedules() {
+        StringBuilder sb = new StringBuilder();
+        for (Schedule schedule : scheduleEngine.getSchedules()) {
+            sb.append(schedule).append("\n");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Set the temperature for a thermostat device.
+     * @param id The ID of the thermostat.
+     * @param temperature The temperature to set.
+     */
+    public void setTemperature(String id, int temperature) {
+        setTemperature(getDeviceProxyById(id), temperature);
+    }
+
+    /**
+     * Set the temperature for a thermostat device through its handle, without looking up its ID.
+     * @param handle The handle of the thermostat.
+     * @param temperature The temperature to set.
+     * @throws IllegalArgumentException if the device has been removed or is not a thermostat.
+     */
+    public void setTemperature(DeviceHandle handle, int temperature) {
+        setTemperature(handle.resolve(), temperature);
+    }
+
+    /**
+     * Set the temperature of an already resolved thermostat.
+     * @param proxy The proxy of the thermostat.
+     * @param temperature The temperature to set.
+     * @throws IllegalArgumentException if the device is not a thermostat or the temperature is out of range.
+     */
+    void setTemperature(DeviceProxy proxy, int temperature) {
+        DeviceType type = proxy.getDeviceType();
+        if (!type.hasSetpoint()) {
+            throw new IllegalArgumentException("Device " + proxy.getId() + " is not a thermostat");
+        }
+        Device device = proxy.getDevice();
+        proxy.run(() -> {
+            proxy.setSetpoint(temperature);
+            DeviceAuditEvent.log(device, "setTemperature");
+        });
+        if (triggerMode == TriggerEvaluationMode.POLLING) {
+            checkTriggers(proxy.getDependentTriggers());
+        }
+    }
+
+    /**
+     * Apply a batch of commands as one unit.
+     * All commands are validated before any is applied, so an invalid command rejects the whole batch.
+     * Observers are notified once per changed device through {@link DeviceObserver#updateAll},
+     * and the triggers depending on the changed devices are evaluated once at the end.
+     * @param commands The commands to apply, in order.
+     * @throws IllegalArgumentException if any command is invalid.
+     */
+    public void applyBatch(List<DeviceCommand> commands) {
+        List<DeviceProxy> targets = new ArrayList<>(commands.size());
+        boolean check = triggerMode == TriggerEvaluationMode.EVENT_DRIVEN;
+        for (DeviceCommand command : commands) {
+            targets.add(validateCommand(command));
+            check |= command.getType() == DeviceCommand.Type.SET_TEMPERATURE;
+        }
+
+        Map<String, DeviceProxy> changed;
+        if (executionMode == ExecutionMode.VIRTUAL_THREADS) {
+            changed = Collections.synchronizedMap(new LinkedHashMap<>());
+            CountDownLatch done = new CountDownLatch(commands.size());
+            for (int i = 0; i < commands.size(); i++) {
+                DeviceCommand command = commands.get(i);
+                DeviceProxy proxy = targets.get(i);
+                proxy.submit(() -> {
+                    try {
+                        applyInBatch(command, proxy, changed);
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while applying batch", e);
+            }
+        } else {
+            changed = new LinkedHashMap<>();
+            for (int i = 0; i < commands.size(); i++) {
+                applyInBatch(commands.get(i), targets.get(i), changed);
+            }
+        }
+
+        notifyObservers(changed.values());
+        boolean network = triggerMode == TriggerEvaluationMode.RULE_NETWORK;
+        Set<Trigger> dependents = new LinkedHashSet<>();
+        for (DeviceProxy proxy : changed.values()) {
+            proxy.markChanged();
+            if (network) {
+                propagateRules(proxy);
+            } else {
+                dependents.addAll(proxy.getDependentTriggers());
+            }
+        }
+        List<Trigger> candidates = new ArrayList<>(dependents);
+        if (check) {
+            checkTriggers(candidates);
+        }
+        resetTriggers(candidates);
+        logger.info("Applied batch of {} commands to {} devices", commands.size(), changed.size());
+    }
+
+    /**
+     * Apply one batch command, collecting the published change instead of dispatching it.
      */
-    private void startTriggerChecker() {
-        scheduler.scheduleAtFixedRate(this::checkTriggers, 0, 5, TimeUnit.SECONDS);
+    private void applyInBatch(DeviceCommand command, DeviceProxy proxy, Map<String, DeviceProxy> changed) {
+        batchChanges.set(changed);
+        try {
+            switch (command.getType()) {
+                case TURN_ON: proxy.turnOn(); break;
+                case TURN_OFF: proxy.turnOff(); break;
+                case SET_TEMPERATURE:
+                    Device device = proxy.getDevice();
+                    proxy.run(() -> {
+                        proxy.setSetpoint(command.getValue());
+                        DeviceAuditEvent.log(device, "setTemperature");
+                    });
+                    break;
+            }
+        } finally {
+            batchChanges.remove();
+        }
     }
 
     /**
-     * Add a new device to the system.
-     * @param type The type of the device.
-     * @param id The unique identifier for the device.
+     * Validate a batch command without applying it.
+     * @param command The command to validate.
+     * @return The proxy of the target device.
+     * @throws IllegalArgumentException if the command cannot be applied.
      */
-    public void addDevice(String type, String id) {
-        if (devices.containsKey(id)) {
-            throw new IllegalArgumentException("Device with ID " + id + " already exists");
+    private DeviceProxy validateCommand(DeviceCommand command) {
+        DeviceProxy proxy = getDeviceProxyById(command.getDeviceId());
+        if (command.getType() == DeviceCommand.Type.SET_TEMPERATURE) {
+            if (!proxy.getDeviceType().hasSetpoint()) {
+                throw new IllegalArgumentException("Device " + command.getDeviceId() + " is not a thermostat");
+            }
+            proxy.getDeviceType().validateSetpoint(command.getValue());
         }
-        Device device = DeviceFactory.createDevice(type, id);
-        DeviceProxy proxy = new DeviceProxy(device);
-        devices.put(id, proxy);
-        notifyObservers(proxy);
-        logger.info("Added " + type + " with ID " + id);
+        return proxy;
     }
 
     /**
-     * Remove triggers associated with a specific device.
-     * @param deviceId The ID of the device.
+     * Add an observer to the system.
+     * @param observer The observer to add.
      */
-    private void removeTriggersByDevice(String deviceId) {
-        triggers.removeIf(trigger -> 
-            trigger.getCondition().startsWith(deviceId) || 
-            trigger.getAction().contains("(" + deviceId + ")")
-        );
-        logger.info("Removed triggers associated with device: " + deviceId);
+    public void addObserver(DeviceObserver observer) {
+        observers.add(observer);
+        logger.info("Added new observer");
     }
 
     /**
-     * Remove a device from the system.
-     * @param id The ID of the device to remove.
+     * Add an observer that receives updates asynchronously through a bounded queue,
+     * so a slow observer does not delay device commands.
+     * @param observer The observer to add.
+     * @param capacity The maximum number of pending updates for this observer.
+     * @param policy What to do when the queue is full.
+     * @return The registered wrapper, exposing lag and drop counters; pass it to
+     *         {@link #removeObserver(DeviceObserver)} to unregister.
      */
-    public void removeDevice(String id) {
-        DeviceProxy proxy = devices.remove(id);
-        if (proxy != null) {
-            notifyObservers(proxy);
-            removeTriggersByDevice(id);
-            logger.info("Removed " + proxy.getType() + " with ID " + id);
-            System.out.println("Device removed: " + proxy.getType() + " with ID " + id);
-        } else {
-            throw new IllegalArgumentException("Device with ID " + id + " does not exist");
-        }
+    public AsyncDeviceObserver addAsyncObserver(DeviceObserver observer, int capacity, AsyncDeviceObserver.OverflowPolicy policy) {
+        AsyncDeviceObserver async = new AsyncDeviceObserver(observer, observerExecutor, capacity, policy);
+        observers.add(async);
+        logger.info("Added new asynchronous observer with capacity {} and policy {}", capacity, policy);
+        return async;
     }
 
     /**
-     * Turn on a device.
-     * @param id The ID of the device to turn on.
-     */
-    public void turnOn(String id) {
-        DeviceProxy proxy = getDeviceProxyById(id);
-        proxy.turnOn();
-        notifyObservers(proxy);
-        resetTriggers();
-    }
-    
-    /**
-     * Turn off a device.
-     * @param id The ID of the device to turn off.
+     * Subscribe to a change feed that keeps only the latest pending state of each device.
+     * @return The registered feed; pass it to {@link #removeObserver(DeviceObserver)} to unsubscribe.
      */
-    public void turnOff(String id) {
-        DeviceProxy proxy = getDeviceProxyById(id);
-        proxy.turnOff();
-        notifyObservers(proxy);
-        resetTriggers();
+    public ChangeFeed subscribeChangeFeed() {
+        ChangeFeed feed = new ChangeFeed();
+        observers.add(feed);
+        logger.info("Added new change feed");
+        return feed;
     }
 
     /**
-     * Set a schedule for a device to turn on or off at a specific time.
-     * @param id The ID of the device.
-     * @param time The time to schedule the action.
-     * @param turnOn True to turn on, false to turn off.
+     * Start recording the state history of every device, with minute and hour rollups.
+     * @return The registered history; pass it to {@link #removeObserver(DeviceObserver)} to stop recording.
      */
-    public void setSchedule(String id, LocalTime time, boolean turnOn) {
-        DeviceProxy proxy = getDeviceProxyById(id);
-        LocalTime now = LocalTime.now();
-        long initialDelay = now.until(time, java.time.temporal.ChronoUnit.SECONDS);
-        if (initialDelay < 0) initialDelay += 24 * 60 * 60;
-
-        scheduler.scheduleAtFixedRate(() -> {
-            if (turnOn) turnOn(id);
-            else turnOff(id);
-        }, initialDelay, 24 * 60 * 60, TimeUnit.SECONDS);
-
-        logger.info("Scheduled " + proxy.getType() + " " + id + " to turn " + (turnOn ? "on" : "off") + " at " + time);
+    public DeviceHistory recordHistory() {
+        DeviceHistory history = new DeviceHistory();
+        observers.add(history);
+        registeredDevices(null).forEach(history::update);
+        logger.info("Started recording device history");
+        return history;
     }
 
     /**
-     * Set the temperature for a thermostat device.
-     * @param id The ID of the thermostat.
-     * @param temperature The temperature to set.
+     * Remove an observer from the system.
+     * @param observer The observer to remove.
      */
-    public void setTemperature(String id, int temperature) {
-        DeviceProxy proxy = getDeviceProxyById(id);
-        if (proxy.getDevice() instanceof Thermostat) {
-            ((Thermostat) proxy.getDevice()).setTemperature(temperature);
-            logger.info("Set temperature of {} to {}°F", id, temperature);
-            notifyObservers(proxy);
-            checkTriggers();
-            resetTriggers();
-        } else {
-            throw new IllegalArgumentException("Device " + id + " is not a thermostat");
-        }
+    public void removeObserver(DeviceObserver observer) {
+        observers.remove(observer);
+        logger.info("Removed observer");
     }
 
     /**
-     * Add an observer to the system.
-     * @param observer The observer to add.
+     * Notify all observers about a batch of device updates.
+     * @param devices The updated devices.
      */
-    public void addObserver(DeviceObserver observer) {
-        observers.add(observer);
-        logger.info("Added new observer");
+    public void notifyObservers(Collection<? extends Device> devices) {
+        if (devices.isEmpty()) {
+            return;
+        }
+        for (DeviceObserver observer : observers) {
+            observer.updateAll(devices);
+        }
     }
 
     /**
@@ -181,33 +1138,191 @@ public class SmartHomeSystem {
         }
     }
 
+    /**
+     * Publish a device state change.
+     * Notifies observers and, depending on the evaluation mode, evaluates the triggers
+     * whose condition reads the device. Fired triggers that no longer hold are reset.
+     * When the change is made on a device's mailbox, the triggers are evaluated once the mailbox
+     * is released, so a trigger action never waits for a device while holding another.
+     * Observers are notified once per change and receive the registered proxy of the device.
+     * @param device The device whose state changed.
+     */
+    public void publishChange(Device device) {
+        DeviceProxy proxy;
+        boolean registered;
+        if (device instanceof DeviceProxy) {
+            proxy = (DeviceProxy) device;
+            registered = proxy.getHandle().isValid();
+        } else {
+            proxy = devices.get(device.getId());
+            registered = proxy != null && proxy.getDevice() == device;
+        }
+        StatePersistence current = persistence;
+        if (current != null && registered) {
+            current.recordState(proxy);
+        }
+        Map<String, DeviceProxy> batch = batchChanges.get();
+        if (batch != null && registered) {
+            batch.put(proxy.getId(), proxy);
+            return;
+        }
+        if (!registered) {
+            notifyObservers(device);
+            return;
+        }
+        notifyObservers(proxy);
+        proxy.markChanged();
+        // Trigger actions command other devices, so they must not run while this device is held
+        if (!DeviceMailbox.runWhenReleased(triggerEvaluation, proxy)) {
+            evaluateTriggers(proxy);
+        }
+    }
+
+    /**
+     * Evaluate the triggers affected by a device change according to the evaluation mode.
+     * @param proxy The proxy of the device that changed.
+     */
+    private void evaluateTriggers(DeviceProxy proxy) {
+        if (triggerMode == TriggerEvaluationMode.RULE_NETWORK) {
+            propagateRules(proxy);
+            return;
+        }
+        if (triggerMode == TriggerEvaluationMode.EVENT_DRIVEN) {
+            checkTriggers(proxy.getDependentTriggers());
+        }
+        resetTriggers(proxy.getDependentTriggers());
+    }
+
     /**
      * Get the status of all devices in the system.
+     * Builds the whole report in memory; prefer {@link #writeStatus(Appendable, String)}
+     * or {@link #streamStatus(String)} for large installations.
      * @return A string representation of all device statuses.
      */
     public String getStatus() {
         StringBuilder status = new StringBuilder();
-        for (DeviceProxy proxy : devices.values()) {
-            status.append(proxy.getType()).append(" ").append(proxy.getId())
-                  .append(" is ").append(proxy.getStatus()).append("\n");
+        try {
+            writeStatus(status, null);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
         return status.toString();
     }
 
+    /**
+     * Stream snapshots of all devices in the system.
+     * @return A lazy stream of device snapshots.
+     */
+    public Stream<DeviceSnapshot> streamStatus() {
+        return streamStatus(null);
+    }
+
+    /**
+     * Stream snapshots of the devices of one type.
+     * Snapshots are taken lazily as the stream is consumed, so the stream reflects devices
+     * added or removed while it is traversed on a best-effort basis.
+     * @param type The device type to include, ignoring case, or null for all devices.
+     * @return A lazy stream of device snapshots.
+     */
+    public Stream<DeviceSnapshot> streamStatus(String type) {
+        materializeAll();
+        return registeredDevices(type).map(DeviceSnapshot::of);
+    }
+
+    /**
+     * Open a cursor that pages through the status of devices.
+     * The matching devices are captured once, so reading a page costs only the size of the page.
+     * @param type The device type to include, ignoring case, or null for all devices.
+     * @return The cursor, positioned before the first device.
+     */
+    public StatusCursor openStatusCursor(String type) {
+        materializeAll();
+        return new StatusCursor(registeredDevices(type).toArray(Device[]::new));
+    }
+
+    /**
+     * Write the status of devices line by line, without building the full report in memory.
+     * @param out The destination, e.g. a Writer, a PrintStream or a StringBuilder.
+     * @param type The device type to include, ignoring case, or null for all devices.
+     * @throws IOException If writing to the destination fails.
+     */
+    public void writeStatus(Appendable out, String type) throws IOException {
+        materializeAll();
+        DeviceStateStore store = stateStore;
+        for (DeviceProxy proxy : devices.values()) {
+            if (isOfType(proxy, type) && (store == null || !isStored(proxy))) {
+                out.append(proxy.getType()).append(" ").append(proxy.getId())
+                   .append(" is ").append(proxy.getStatus()).append("\n");
+            }
+        }
+        if (store != null) {
+            store.writeStatus(out, type);
+        }
+    }
+
+    /**
+     * Stream the registered devices of one type, without materializing snapshot devices.
+     * Devices in the state store are streamed as views of the store, whether or not they have a proxy.
+     * @param type The device type to include, ignoring case, or null for all devices.
+     * @return A lazy stream of the proxies and store views of the devices.
+     */
+    private Stream<Device> registeredDevices(String type) {
+        Stream<DeviceProxy> proxies = devices.values().stream().filter(proxy -> isOfType(proxy, type));
+        DeviceStateStore store = stateStore;
+        if (store == null) {
+            return proxies.map(Device.class::cast);
+        }
+        return Stream.concat(proxies.filter(proxy -> !isStored(proxy)), store.views(type));
+    }
+
+    private static boolean isOfType(DeviceProxy proxy, String type) {
+        return type == null || proxy.getType().equalsIgnoreCase(type);
+    }
+
     /**
      * Add a trigger to the system.
      * @param condition The condition for the trigger.
      * @param action The action to perform when the condition is met.
+     * @throws IllegalArgumentException if the trigger is malformed, or would form a cycle with
+     *         registered triggers while cycles are not allowed.
      */
     public void addTrigger(String condition, String action) {
-        if (!isValidCondition(condition)) {
-            throw new IllegalArgumentException("Invalid condition format: " + condition);
+        addTrigger(condition, action, false);
+    }
+
+    /**
+     * Add a trigger to the system.
+     * Triggers restored from persisted state skip the cycle check, since they were accepted when added,
+     * and are not evaluated until a device they read changes, so restoring them fires no actions.
+     * @param condition The condition for the trigger.
+     * @param action The action to perform when the condition is met.
+     * @param restored True for a trigger restored from persisted state.
+     */
+    void addTrigger(String condition, String action, boolean restored) {
+        TriggerCondition compiledCondition = compileCondition(condition);
+        TriggerAction compiledAction = compileAction(action);
+        Trigger trigger = new Trigger(condition, action, compiledCondition, compiledAction);
+        if (!restored && !triggerCyclesAllowed) {
+            List<Trigger> cycle = triggers.addAcyclic(trigger);
+            if (cycle != null) {
+                StringBuilder chain = new StringBuilder();
+                for (Trigger link : cycle) {
+                    chain.append(link.getCondition()).append(" -> ").append(link.getAction()).append(" => ");
+                }
+                chain.append(condition);
+                throw new IllegalArgumentException("Trigger would form a cycle: " + chain);
+            }
+        } else {
+            triggers.add(trigger);
+        }
+        StatePersistence current = persistence;
+        if (current != null) {
+            current.recordTrigger(condition, action, true);
         }
-        if (!isValidAction(action)) {
-            throw new IllegalArgumentException("Invalid action format: " + action);
+        logger.info("Added trigger: {} -> {}", condition, action);
+        if (!restored && triggerMode != TriggerEvaluationMode.POLLING) {
+            checkTriggers(Collections.singletonList(trigger));
         }
-        triggers.add(new Trigger(condition, action));
-        logger.info("Added trigger: " + condition + " -> " + action);
     }
 
     /**
@@ -216,16 +1331,14 @@ public class SmartHomeSystem {
      * @param action The action of the trigger to remove.
      */
     public void removeTrigger(String condition, String action) {
-        Trigger triggerToRemove = null;
-        for (Trigger trigger : triggers) {
-            if (trigger.getCondition().equals(condition) && trigger.getAction().equals(action)) {
-                triggerToRemove = trigger;
-                break;
-            }
-        }
+        Trigger triggerToRemove = triggers.find(condition, action);
         if (triggerToRemove != null) {
             triggers.remove(triggerToRemove);
-            logger.info("Removed trigger: " + condition + " -> " + action);
+            StatePersistence current = persistence;
+            if (current != null) {
+                current.recordTrigger(condition, action, false);
+            }
+            logger.info("Removed trigger: {} -> {}", condition, action);
         } else {
             throw new IllegalArgumentException("Trigger not found: " + condition + " -> " + action);
         }
@@ -237,65 +1350,115 @@ public class SmartHomeSystem {
      */
     public String listTriggers() {
         StringBuilder sb = new StringBuilder();
-        for (Trigger trigger : triggers) {
+        for (Trigger trigger : triggers.all()) {
             sb.append(trigger.getCondition()).append(" -> ").append(trigger.getAction()).append("\n");
         }
         return sb.toString();
     }
 
     /**
-     * Validate the condition format for a trigger.
-     * @param condition The condition to validate.
-     * @return True if the condition is valid, false otherwise.
+     * Parse and compile a trigger condition; see {@link TriggerParser} for the expression language.
+     * @param condition The condition to compile.
+     * @return The compiled condition.
+     * @throws IllegalArgumentException if the condition is malformed or references an unsupported device.
      */
-    private boolean isValidCondition(String condition) {
-        String[] parts = condition.split(" ");
-        if (parts.length != 3) {
-            return false;
-        }
-        String deviceId = parts[0];
-        String operator = parts[1];
-        String value = parts[2];
-    
-        return devices.containsKey(deviceId) &&
-               (operator.equals(">") || operator.equals("<") || operator.equals("==")) &&
-               value.matches("-?\\d+");
+    private TriggerCondition compileCondition(String condition) {
+        return TriggerParser.parseCondition(condition, this::lookup);
     }
 
     /**
-     * Validate the action format for a trigger.
-     * @param action The action to validate.
-     * @return True if the action is valid, false otherwise.
+     * Parse and compile a trigger action of the form {@code "<command>(<id>)"} or {@code "setTemperature(<id>, <value>)"}.
+     * @param action The action to compile.
+     * @return The compiled action.
+     * @throws IllegalArgumentException if the action is malformed or references an unknown device.
      */
-    private boolean isValidAction(String action) {
-        String[] parts = action.split("\\(");
-        if (parts.length != 2 || !parts[1].endsWith(")")) {
-            return false;
-        }
-        String command = parts[0];
-        String deviceId = parts[1].substring(0, parts[1].length() - 1);
-    
-        return (command.equals("turnOn") || command.equals("turnOff") || command.equals("setTemperature")) &&
-               devices.containsKey(deviceId);
+    private TriggerAction compileAction(String action) {
+        return TriggerParser.parseAction(action, this::lookup);
     }
 
-     /**
+    /**
      * Check and execute triggers based on current device states.
      */
     public void checkTriggers() {
-        Iterator<Trigger> iterator = triggers.iterator();
-        while (iterator.hasNext()) {
-            Trigger trigger = iterator.next();
-            try {
-                if (!trigger.hasFired() && evaluateCondition(trigger.getCondition())) {
-                    executeAction(trigger.getAction());
-                    trigger.setFired(true);
-                    logger.info("Trigger fired: " + trigger.getCondition() + " -> " + trigger.getAction());
+        checkTriggers(triggers.all());
+    }
+
+    /**
+     * Check and execute only the triggers whose condition reads a given device.
+     * @param deviceId The ID of the device whose state changed.
+     */
+    public void checkTriggers(String deviceId) {
+        checkTriggers(triggers.dependents(deviceId));
+    }
+
+    private void checkTriggers(List<Trigger> candidates) {
+        if (candidates.isEmpty()) {
+            return;
+        }
+        cascades.group(() -> {
+            for (Trigger trigger : candidates) {
+                if (!trigger.hasFired() && trigger.getCompiledCondition().evaluate()) {
+                    activate(trigger);
                 }
-            } catch (IllegalArgumentException e) {
-                logger.warn("Removing invalid trigger: " + trigger.getCondition() + " -> " + trigger.getAction());
-                iterator.remove();
             }
+        });
+    }
+
+    /**
+     * Fire a trigger whose condition holds, unless it has already fired.
+     * A trigger activated by the action of another trigger joins that action's cascade.
+     * @param trigger The trigger to fire.
+     */
+    private void activate(Trigger trigger) {
+        if (trigger.markFired()) {
+            long changedAt = trigger.getCompiledCondition().getLastChangeNanos();
+            DeviceProxy target = trigger.getCompiledAction().getTarget();
+            cascades.execute(() -> fire(trigger, changedAt),
+                    executionMode == ExecutionMode.VIRTUAL_THREADS ? target::submit : null, trigger.getAction());
+        }
+    }
+
+    /**
+     * Propagate a device change through the rule network, firing the triggers whose condition
+     * started to hold and resetting those whose condition stopped holding.
+     * @param proxy The proxy of the device that changed.
+     */
+    private void propagateRules(DeviceProxy proxy) {
+        RuleNetwork.Delta delta = triggers.network().propagate(proxy);
+        if (delta == null) {
+            return;
+        }
+        for (Trigger trigger : delta.deactivated) {
+            if (trigger.markReset()) {
+                logger.debug("Trigger reset: {}", trigger.getCondition());
+            }
+        }
+        if (!delta.activated.isEmpty()) {
+            cascades.group(() -> {
+                for (Trigger trigger : delta.activated) {
+                    activate(trigger);
+                }
+            });
+        }
+        if (!delta.unmanaged.isEmpty()) {
+            checkTriggers(delta.unmanaged);
+            resetTriggers(delta.unmanaged);
+        }
+    }
+
+    /**
+     * Execute the action of a trigger whose condition holds.
+     * @param trigger The trigger to fire.
+     * @param changedAt The time of the state change that made the condition hold.
+     */
+    private void fire(Trigger trigger, long changedAt) {
+        try {
+            trigger.getCompiledAction().execute(this);
+            triggerMetrics.recordFiring(System.nanoTime() - changedAt);
+            logger.info("Trigger fired: {} -> {}", trigger.getCondition(), trigger.getAction());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Removing invalid trigger: {} -> {}", trigger.getCondition(), trigger.getAction());
+            triggers.remove(trigger);
         }
     }
 
@@ -303,60 +1466,138 @@ public class SmartHomeSystem {
      * Reset triggers that have fired and whose conditions are no longer met.
      */
     public void resetTriggers() {
-        for (Trigger trigger : triggers) {
-            if (trigger.hasFired() && !evaluateCondition(trigger.getCondition())) {
-                trigger.setFired(false);
-                logger.info("Trigger reset: " + trigger.getCondition());
+        resetTriggers(triggers.all());
+    }
+
+    /**
+     * Reset only the fired triggers whose condition reads a given device.
+     * @param deviceId The ID of the device whose state changed.
+     */
+    public void resetTriggers(String deviceId) {
+        resetTriggers(triggers.dependents(deviceId));
+    }
+
+    private void resetTriggers(List<Trigger> candidates) {
+        for (Trigger trigger : candidates) {
+            if (trigger.hasFired() && !trigger.getCompiledCondition().evaluate() && trigger.markReset()) {
+                logger.debug("Trigger reset: {}", trigger.getCondition());
             }
         }
     }
 
     /**
-     * Evaluate a trigger condition.
-     * @param condition The condition to evaluate.
-     * @return True if the condition is met, false otherwise.
+     * Check whether a device is registered.
+     * @param id The ID of the device.
+     * @return True if the device exists.
      */
-    private boolean evaluateCondition(String condition) {
-        String[] parts = condition.split(" ");
-        String deviceId = parts[0];
-        String operator = parts[1];
-        String value = parts[2];
+    boolean hasDevice(String id) {
+        return lookup(id) != null;
+    }
 
-        DeviceProxy proxy = getDeviceProxyById(deviceId);
+    /**
+     * Check whether a trigger is registered.
+     * @param condition The condition of the trigger.
+     * @param action The action of the trigger.
+     * @return True if the trigger exists.
+     */
+    boolean hasTrigger(String condition, String action) {
+        return triggers.find(condition, action) != null;
+    }
 
-        if (proxy == null) {
-            throw new IllegalArgumentException("Device does not exist: " + deviceId);
+    /**
+     * Restore a persisted device unless one with its ID exists. Observers are not notified.
+     * @param type The type of the device.
+     * @param id The ID of the device.
+     * @throws IllegalArgumentException if the type is unknown.
+     */
+    void restoreDevice(String type, String id) {
+        if (lookup(id) == null) {
+            DeviceProxy proxy = new DeviceProxy(DeviceFactory.createDevice(type, id, changePublisher), changePublisher, commandExecutor);
+            if (devices.putIfAbsent(id, proxy) == null) {
+                proxy.getHandle().activate();
+            }
         }
+    }
+
+    /**
+     * Remove a device, its triggers and its schedules if it exists, as recorded in persisted state.
+     * Observers are not notified.
+     * @param id The ID of the device.
+     */
+    void restoreRemoval(String id) {
+        unregister(id);
+    }
 
-        if (proxy.getDevice() instanceof Thermostat) {
-            int temp = ((Thermostat) proxy.getDevice()).getTemperature();
-            int threshold = Integer.parseInt(value);
-            switch (operator) {
-                case ">": return temp > threshold;
-                case "<": return temp < threshold;
-                case "==": return temp == threshold;
-                default:
-                    throw new IllegalArgumentException("Invalid operator in condition: " + operator);
+    /**
+     * Restore the persisted state of a device, as returned by {@link DeviceType#getState(Device)}.
+     * The state is set on the device directly, on this thread, with change publication paused:
+     * observers are not notified and no trigger is evaluated.
+     * @param id The ID of the device.
+     * @param state The setpoint of a setpoint device, otherwise non-zero for on or locked.
+     * @throws IllegalArgumentException if the device does not exist or the state is invalid.
+     */
+    void restoreState(String id, int state) {
+        DeviceProxy proxy = getDeviceProxyById(id);
+        Device device = proxy.getDevice();
+        batchChanges.set(new HashMap<>());
+        try {
+            if (proxy.getDeviceType().hasSetpoint()) {
+                proxy.setSetpoint(state);
+            } else if (state != 0) {
+                device.turnOn();
+            } else {
+                device.turnOff();
             }
+        } finally {
+            batchChanges.remove();
         }
-        throw new IllegalArgumentException("Unsupported device type for condition: " + proxy.getType());
     }
 
     /**
-     * Execute a trigger action.
-     * @param action The action to execute.
+     * Restore a persisted schedule under its persisted ID.
+     * If a different schedule already holds that ID, e.g. one created before persistence was enabled,
+     * the restored schedule gets a new ID; if the same schedule holds it, nothing changes.
+     * @param scheduleId The persisted ID of the schedule.
+     * @param deviceId The ID of the device.
+     * @param time The time of day the schedule runs.
+     * @param turnOn True to turn the device on, false to turn it off.
+     * @return The restored schedule.
+     * @throws IllegalArgumentException if the device does not exist.
      */
-    private void executeAction(String action) {
-        String[] parts = action.split("\\(");
-        String command = parts[0];
-        String deviceId = parts[1].replace(")", "");
-
-        switch (command) {
-            case "turnOn": turnOn(deviceId); break;
-            case "turnOff": turnOff(deviceId); break;
-            default:
-                throw new IllegalArgumentException("Unknown command in action: " + command);
+    Schedule restoreSchedule(long scheduleId, String deviceId, LocalTime time, boolean turnOn) {
+        Schedule existing = scheduleEngine.get(scheduleId);
+        if (existing != null && existing.getDeviceId().equals(deviceId) && existing.getTime().equals(time) && existing.isTurnOn() == turnOn) {
+            return existing;
         }
+        Runnable action = scheduledAction(getHandle(deviceId), turnOn);
+        return existing == null
+                ? scheduleEngine.scheduleDaily(scheduleId, deviceId, time, turnOn, action)
+                : scheduleEngine.scheduleDaily(deviceId, time, turnOn, action);
+    }
+
+    /**
+     * Cancel a restored schedule without journaling it.
+     * @param scheduleId The ID of the schedule.
+     */
+    void restoreCancellation(long scheduleId) {
+        scheduleEngine.cancel(scheduleId);
+    }
+
+    /**
+     * Get the registered devices for a snapshot.
+     * @return A live view of the registered device proxies.
+     */
+    Collection<DeviceProxy> snapshotDevices() {
+        materializeAll();
+        return devices.values();
+    }
+
+    /**
+     * Get the registered triggers for a snapshot.
+     * @return The triggers in registration order.
+     */
+    List<Trigger> snapshotTriggers() {
+        return triggers.all();
     }
 
     /**
@@ -366,7 +1607,7 @@ public class SmartHomeSystem {
      * @throws IllegalArgumentException if the device does not exist.
      */
     private DeviceProxy getDeviceProxyById(String id) {
-        DeviceProxy proxy = devices.get(id);
+        DeviceProxy proxy = lookup(id);
         if (proxy == null) {
             throw new IllegalArgumentException("Device with ID " + id + " does not exist");
         }
@@ -375,73 +1616,161 @@ public class SmartHomeSystem {
 
     /**
      * Start the interactive command-line interface for the smart home system.
+     * The interface reads commands until {@code exit} or the end of the input, then stops the system.
      */
     public void start() {
         boolean running = true;
         System.out.print("\n.........................................................................");
         System.out.print("\n.................Welcome To Smart_Home_System Control Hub................");
         System.out.print("\n.........................................................................\n");
-        try (Scanner scanner = new Scanner(System.in)) {
+        try (Reader in = new InputStreamReader(System.in)) {
+            CommandTokenizer command = new CommandTokenizer(in);
             while (running) {
                 System.out.print("\n.........................................................................\n");
                 System.out.print("Enter command: ");
-                String input = scanner.nextLine();
+                if (!command.next()) {
+                    break;
+                }
                 System.out.print(".........................................................................\n");
-                running = processCommand(input);
+                running = processCommand(command);
                 System.out.print(".........................................................................\n");
             }
+        } catch (IOException e) {
+            logger.error("Failed to read commands", e);
         }
+        stop();
         System.out.print("\n.........................................................................");
         System.out.print("\n.................Thank You! Exiting......................................");
         System.out.print("\n.........................................................................\n");
     }
 
-    private boolean processCommand(String input) {
-        String[] parts = input.split(" ");    
-        try {
-            switch (parts[0]) {
-                case "add":
-                    if (parts.length != 3) throw new IllegalArgumentException("Usage: add <type> <id>");
-                    addDevice(parts[1], parts[2]);
-                    break;
-                case "remove":
-                    if (parts.length != 2) throw new IllegalArgumentException("Usage: remove <id>");
-                    removeDevice(parts[1]);
-                    break;
-                case "turnOn":
-                    if (parts.length != 2) throw new IllegalArgumentException("Usage: turnOn <id>");
-                    turnOn(parts[1]);
-                    break;
-                case "turnOff":
-                    if (parts.length != 2) throw new IllegalArgumentException("Usage: turnOff <id>");
-                    turnOff(parts[1]);
-                    break;
-                case "schedule":
-                    if (parts.length != 4) throw new IllegalArgumentException("Usage: schedule <id> <time> <true/false>");
-                    setSchedule(parts[1], LocalTime.parse(parts[2]), Boolean.parseBoolean(parts[3]));
-                    break;
-                case "setTemperature":
-                    if (parts.length != 3) throw new IllegalArgumentException("Usage: setTemperature <id> <temperature>");
-                    setTemperature(parts[1], Integer.parseInt(parts[2]));
-                    break;
-                case "status":
-                    System.out.println(getStatus());
-                    break;
-                case "listTriggers":
-                    System.out.println("Current triggers:");
-                    System.out.println(listTriggers());
+    /**
+     * Run a script of commands from a file. See {@link #runScript(Reader)}.
+     * @param file The script file.
+     * @return The command and error counts and the throughput of the script.
+     * @throws IOException If the file cannot be read.
+     */
+    public ScriptReport runScript(Path file) throws IOException {
+        try (Reader in = Files.newBufferedReader(file)) {
+            return runScript(in);
+        }
+    }
+
+    /**
+     * Run a script of commands, one per line, in the syntax of the command-line interface, for example
+     * to replay recorded traffic or to load-test the system. Blank lines and lines starting with
+     * {@code #} are skipped, and {@code exit} ends the script without stopping the system. A failed
+     * command is counted and the script carries on. Lines are tokenized in place, so repeated commands
+     * and device IDs do not allocate, and commands run back to back.
+     * @param in The script; it is read in blocks, so it need not be buffered, and it is not closed.
+     * @return The command and error counts and the throughput of the script.
+     * @throws IOException If the script cannot be read.
+     */
+    public ScriptReport runScript(Reader in) throws IOException {
+        CommandTokenizer command = new CommandTokenizer(in);
+        long commands = 0;
+        long errors = 0;
+        String firstError = null;
+        long start = System.nanoTime();
+        while (command.next()) {
+            if (command.size() == 0 || command.isComment()) {
+                continue;
+            }
+            commands++;
+            try {
+                if (!executeCommand(command)) {
                     break;
-                case "exit":
-                    stop();
-                    return false;
-                default:
-                    System.out.println("Unknown command. Available commands: add, remove, turnOn, turnOff, setTemperature, schedule, status, listTriggers, exit");
+                }
+            } catch (RuntimeException e) {
+                errors++;
+                if (firstError == null) {
+                    firstError = "line " + command.getLineNumber() + ": " + e.getMessage();
+                }
+                logger.debug("Script command on line {} failed: {}", command.getLineNumber(), e.getMessage());
+            }
+        }
+        ScriptReport report = new ScriptReport(commands, errors, System.nanoTime() - start, firstError);
+        logger.info("Script finished: {}", report);
+        return report;
+    }
+
+    private boolean processCommand(CommandTokenizer command) {
+        if (command.size() == 0) {
+            return true;
+        }
+        try {
+            if (!executeCommand(command)) {
+                return false;
             }
-            Thread.sleep(100);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            logger.debug("Command on line {} failed: {}", command.getLineNumber(), e.getMessage(), e);
+            System.out.println("Error: " + e.getMessage());
         } catch (Exception e) {
             logger.warn("Error processing command", e);
             System.out.println("Error: " + e.getMessage());
         }
         return true;
     }
+
+    /**
+     * Run the command on the current line of a tokenizer.
+     * @param command The tokenized command line, with at least one token.
+     * @return False for {@code exit}, true otherwise.
+     * @throws IllegalArgumentException if the command is unknown or malformed, or fails.
+     */
+    private boolean executeCommand(CommandTokenizer command) {
+        int parts = command.size();
+        switch (command.token(0)) {
+            case "add":
+                if (parts != 3) throw new IllegalArgumentException("Usage: add <type> <id>");
+                addDevice(command.token(1), command.token(2));
+                break;
+            case "remove":
+                if (parts != 2) throw new IllegalArgumentException("Usage: remove <id>");
+                removeDevice(command.token(1));
+                break;
+            case "turnOn":
+                if (parts != 2) throw new IllegalArgumentException("Usage: turnOn <id>");
+                turnOn(command.token(1));
+                break;
+            case "turnOff":
+                if (parts != 2) throw new IllegalArgumentException("Usage: turnOff <id>");
+                turnOff(command.token(1));
+                break;
+            case "schedule":
+                if (parts != 4) throw new IllegalArgumentException("Usage: schedule <id> <time> <true/false>");
+                setSchedule(command.token(1), command.parseTime(2), command.parseBoolean(3));
+                break;
+            case "setTemperature":
+                if (parts != 3) throw new IllegalArgumentException("Usage: setTemperature <id> <temperature>");
+                setTemperature(command.token(1), command.parseInt(2));
+                break;
+            case "status":
+                if (parts > 2) throw new IllegalArgumentException("Usage: status [type]");
+                try {
+                    writeStatus(System.out, parts == 2 ? command.token(1) : null);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                System.out.flush();
+                break;
+            case "listTriggers":
+                System.out.println("Current triggers:");
+                System.out.println(listTriggers());
+                break;
+            case "listSchedules":
+                System.out.println("Current schedules:");
+                System.out.println(listSchedules());
+                break;
+            case "cancelSchedule":
+                if (parts != 2) throw new IllegalArgumentException("Usage: cancelSchedule <scheduleId>");
+                cancelSchedule(command.parseLong(1));
+                break;
+            case "exit":
+                return false;
+            default:
+                throw new IllegalArgumentException("Unknown command. Available commands: add, remove, turnOn, turnOff, setTemperature, schedule, listSchedules, cancelSchedule, status, listTriggers, exit");
+        }
+        return true;
+    }
 }
@@ -0,0 +1,309 @@
+package com.ex2.core;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+
+/**
+ * Persists the state of a SmartHomeSystem as a compact snapshot plus a journal of the
+ * commands applied since. Records are single lines of tab-separated fields:
+ * <pre>
+ * ADD type id          REMOVE id
+ * ON id                OFF id                TEMP id temperature
+ * TRIGGER condition action                   UNTRIGGER condition action
+ * SCHEDULE scheduleId id time turnOn         UNSCHEDULE scheduleId
+ * </pre>
+ * Every record is idempotent, so replaying a record whose effect is already part of the
+ * snapshot is harmless; schedules are matched by ID, so identical schedules are told apart.
+ * The snapshot starts with {@code SNAPSHOT segment}, naming the first journal segment to replay,
+ * and ends with {@code END}. Records are replayed straight into the system's state: observers
+ * are not notified and triggers do not fire while recovering.
+ */
+class StatePersistence {
+    private static final Logger logger = LogManager.getLogger(StatePersistence.class);
+    private static final String SNAPSHOT_FILE = "snapshot.txt";
+
+    private final SmartHomeSystem system;
+    private final Path directory;
+    private CommandJournal journal;
+
+    private StatePersistence(SmartHomeSystem system, Path directory) {
+        this.system = system;
+        this.directory = directory;
+    }
+
+    /**
+     * Restore the persisted state into a system and open the journal for new records.
+     * @param system The system to restore into.
+     * @param directory The directory holding the snapshot and the journal.
+     * @param fsync True to force every journal commit to the storage device.
+     * @param commitIntervalMillis The longest time a journal record waits for its group commit.
+     * @param snapshotThreshold The number of journal records after which a snapshot is taken, or 0 for never.
+     * @param snapshotExecutor Runs snapshots requested by the journal.
+     * @return The persistence, ready to record.
+     * @throws IOException If the state cannot be read or the journal cannot be opened.
+     */
+    static StatePersistence recover(SmartHomeSystem system, Path directory, boolean fsync, long commitIntervalMillis,
+                                    long snapshotThreshold, Executor snapshotExecutor) throws IOException {
+        long started = System.nanoTime();
+        Files.createDirectories(directory);
+        long firstSegment = 0;
+        int snapshotRecords = 0;
+        Map<Long, Long> scheduleIds = new HashMap<>();
+        List<String> snapshot = readSnapshot(directory.resolve(SNAPSHOT_FILE));
+        if (snapshot != null) {
+            firstSegment = Long.parseLong(snapshot.get(0).split("\t")[1]);
+            for (String record : snapshot.subList(1, snapshot.size())) {
+                apply(system, record, scheduleIds);
+                snapshotRecords++;
+            }
+        }
+        int journalRecords = 0;
+        long lastSegment = firstSegment - 1;
+        for (long segment : CommandJournal.segments(directory)) {
+            lastSegment = Math.max(lastSegment, segment);
+            if (segment < firstSegment) {
+                continue;
+            }
+            journalRecords += replay(system, CommandJournal.segmentPath(directory, segment), scheduleIds);
+        }
+        StatePersistence persistence = new StatePersistence(system, directory);
+        persistence.journal = new CommandJournal(directory, Math.max(lastSegment + 1, firstSegment), fsync, commitIntervalMillis,
+                snapshotThreshold, () -> snapshotExecutor.execute(persistence::snapshotQuietly));
+        logger.info("Recovered {} snapshot records and {} journal records from {} in {} ms",
+                snapshotRecords, journalRecords, directory, (System.nanoTime() - started) / 1_000_000);
+        return persistence;
+    }
+
+    CommandJournal getJournal() {
+        return journal;
+    }
+
+    void recordAdd(Device device) {
+        journal.append(encode("ADD", device.getType(), device.getId()));
+        recordState(device);
+    }
+
+    void recordRemove(String id) {
+        journal.append(encode("REMOVE", id));
+    }
+
+    void recordState(Device device) {
+        journal.append(stateRecord(device));
+    }
+
+    void recordTrigger(String condition, String action, boolean added) {
+        journal.append(encode(added ? "TRIGGER" : "UNTRIGGER", condition, action));
+    }
+
+    void recordSchedule(Schedule schedule, boolean added) {
+        journal.append(added ? scheduleRecord(schedule) : encode("UNSCHEDULE", String.valueOf(schedule.getId())));
+    }
+
+    /**
+     * Write a snapshot of the current state and delete the journal segments it replaces.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    synchronized void snapshot() throws IOException {
+        long started = System.nanoTime();
+        long segment = journal.rotate();
+        Path temporary = directory.resolve(SNAPSHOT_FILE + ".tmp");
+        int records = 0;
+        try (BufferedWriter out = Files.newBufferedWriter(temporary, StandardCharsets.UTF_8)) {
+            out.write(encode("SNAPSHOT", String.valueOf(segment)));
+            out.write('\n');
+            for (Device device : system.snapshotDevices()) {
+                out.write(encode("ADD", device.getType(), device.getId()));
+                out.write('\n');
+                out.write(stateRecord(device));
+                out.write('\n');
+                records += 2;
+            }
+            for (Trigger trigger : system.snapshotTriggers()) {
+                out.write(encode("TRIGGER", trigger.getCondition(), trigger.getAction()));
+                out.write('\n');
+                records++;
+            }
+            for (Schedule schedule : system.getSchedules()) {
+                out.write(scheduleRecord(schedule));
+                out.write('\n');
+                records++;
+            }
+            out.write("END\n");
+        }
+        Files.move(temporary, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        for (long old : CommandJournal.segments(directory)) {
+            if (old < segment) {
+                Files.deleteIfExists(CommandJournal.segmentPath(directory, old));
+            }
+        }
+        logger.info("Wrote snapshot of {} records in {} ms", records, (System.nanoTime() - started) / 1_000_000);
+    }
+
+    private void snapshotQuietly() {
+        try {
+            snapshot();
+        } catch (IOException | IllegalStateException e) {
+            logger.warn("Periodic snapshot failed", e);
+        }
+    }
+
+    /**
+     * Commit outstanding records and close the journal.
+     */
+    void close() {
+        journal.close();
+    }
+
+    private static List<String> readSnapshot(Path file) throws IOException {
+        List<String> records;
+        try {
+            records = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        if (records.size() < 2 || !records.get(0).startsWith("SNAPSHOT\t") || !records.get(records.size() - 1).equals("END")) {
+            throw new IOException("Snapshot " + file + " is incomplete");
+        }
+        return records.subList(0, records.size() - 1);
+    }
+
+    private static int replay(SmartHomeSystem system, Path segment, Map<Long, Long> scheduleIds) throws IOException {
+        int count = 0;
+        try (BufferedReader in = Files.newBufferedReader(segment, StandardCharsets.UTF_8)) {
+            String record;
+            while ((record = in.readLine()) != null) {
+                try {
+                    apply(system, record, scheduleIds);
+                    count++;
+                } catch (RuntimeException e) {
+                    logger.warn("Skipping journal record in {}: {} ({})", segment.getFileName(), record, e.getMessage());
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Apply one record to a system. Records whose effect is already present are ignored.
+     * @param system The system to apply the record to.
+     * @param record The record.
+     * @param scheduleIds Maps the persisted ID of each schedule restored so far to its ID in the system.
+     */
+    static void apply(SmartHomeSystem system, String record, Map<Long, Long> scheduleIds) {
+        String[] fields = decode(record);
+        switch (fields[0]) {
+            case "ADD":
+                system.restoreDevice(fields[1], fields[2]);
+                break;
+            case "REMOVE":
+                system.restoreRemoval(fields[1]);
+                break;
+            case "ON":
+                system.restoreState(fields[1], 1);
+                break;
+            case "OFF":
+                system.restoreState(fields[1], 0);
+                break;
+            case "TEMP":
+                system.restoreState(fields[1], Integer.parseInt(fields[2]));
+                break;
+            case "TRIGGER":
+                if (!system.hasTrigger(fields[1], fields[2])) {
+                    system.addTrigger(fields[1], fields[2], true);
+                }
+                break;
+            case "UNTRIGGER":
+                if (system.hasTrigger(fields[1], fields[2])) {
+                    system.removeTrigger(fields[1], fields[2]);
+                }
+                break;
+            case "SCHEDULE":
+                long persistedId = Long.parseLong(fields[1]);
+                Schedule schedule = system.restoreSchedule(persistedId, fields[2], LocalTime.parse(fields[3]), Boolean.parseBoolean(fields[4]));
+                scheduleIds.put(persistedId, schedule.getId());
+                break;
+            case "UNSCHEDULE":
+                Long restoredId = scheduleIds.remove(Long.parseLong(fields[1]));
+                if (restoredId != null) {
+                    system.restoreCancellation(restoredId);
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown journal record: " + record);
+        }
+    }
+
+    private static String scheduleRecord(Schedule schedule) {
+        return encode("SCHEDULE", String.valueOf(schedule.getId()), schedule.getDeviceId(),
+                schedule.getTime().toString(), String.valueOf(schedule.isTurnOn()));
+    }
+
+    private static String stateRecord(Device device) {
+        DeviceType type = device instanceof DeviceProxy
+                ? ((DeviceProxy) device).getDeviceType() : DeviceTypeRegistry.describe(device);
+        int state = DeviceProxy.stateValue(device);
+        if (type.hasSetpoint()) {
+            return encode("TEMP", device.getId(), String.valueOf(state));
+        }
+        return encode(state != 0 ? "ON" : "OFF", device.getId());
+    }
+
+    /**
+     * Join fields into a record, escaping tabs, line breaks and backslashes.
+     */
+    static String encode(String... fields) {
+        StringBuilder record = new StringBuilder(64);
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                record.append('\t');
+            }
+            String field = fields[i];
+            for (int c = 0; c < field.length(); c++) {
+                char ch = field.charAt(c);
+                switch (ch) {
+                    case '\\': record.append("\\\\"); break;
+                    case '\t': record.append("\\t"); break;
+                    case '\n': record.append("\\n"); break;
+                    case '\r': record.append("\\r"); break;
+                    default: record.append(ch);
+                }
+            }
+        }
+        return record.toString();
+    }
+
+    static String[] decode(String record) {
+        List<String> fields = new ArrayList<>(4);
+        StringBuilder field = new StringBuilder();
+        for (int c = 0; c < record.length(); c++) {
+            char ch = record.charAt(c);
+            if (ch == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (ch == '\\' && c + 1 < record.length()) {
+                char escaped = record.charAt(++c);
+                field.append(escaped == 't' ? '\t' : escaped == 'n' ? '\n' : escaped == 'r' ? '\r' : escaped);
+            } else {
+                field.append(ch);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
@@ -0,0 +1,66 @@
+package com.ex2.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pages through the status of a set of devices captured by {@link SmartHomeSystem#openStatusCursor(String)}.
+ * The devices are fixed when the cursor is opened, so every page costs only its own size and pages
+ * never overlap or skip a device: devices added afterwards are not included, and devices removed
+ * afterwards are left out of the remaining pages. Each snapshot reflects the device when its page is read.
+ * Not thread-safe.
+ */
+public final class StatusCursor {
+    private final Device[] devices;
+    private int position;
+
+    /**
+     * Constructor for StatusCursor.
+     * @param devices The proxies, or views of the state store, of the devices to page through, in page order.
+     */
+    StatusCursor(Device[] devices) {
+        this.devices = devices;
+    }
+
+    /**
+     * Check whether devices remain to be read.
+     * @return True if a further page may hold snapshots; it can still be empty if the remaining devices were removed.
+     */
+    public boolean hasNext() {
+        return position < devices.length;
+    }
+
+    /**
+     * Get the number of devices not read yet, including any removed since the cursor was opened.
+     * @return The remaining device count.
+     */
+    public int getRemaining() {
+        return devices.length - position;
+    }
+
+    /**
+     * Read the next page.
+     * @param limit The maximum number of snapshots to return.
+     * @return The snapshots on the page, empty when past the end.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    public List<DeviceSnapshot> next(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Page limit must be positive: " + limit);
+        }
+        List<DeviceSnapshot> page = new ArrayList<>(Math.min(limit, getRemaining()));
+        while (position < devices.length && page.size() < limit) {
+            Device device = devices[position++];
+            if (isRegistered(device)) {
+                page.add(DeviceSnapshot.of(device));
+            }
+        }
+        return page;
+    }
+
+    private static boolean isRegistered(Device device) {
+        return device instanceof DeviceProxy
+                ? ((DeviceProxy) device).getHandle().isValid()
+                : ((DeviceStateStore.View) device).isValid();
+    }
+}
@@ -1,26 +1,48 @@
 package com.ex2.core;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Represents a trigger in the smart home system.
+ * Holds the source text of the condition and action alongside their compiled forms.
+ * The fired flag is atomic, since the devices a condition reads can change on different threads at once.
  */
 class Trigger {
     private final String condition;
     private final String action;
-    private boolean hasFired;
-    
+    private final TriggerCondition compiledCondition;
+    private final TriggerAction compiledAction;
+    private final AtomicBoolean fired = new AtomicBoolean();
+
     /**
      * Constructor for Trigger.
      * @param condition The condition for the trigger.
      * @param action The action to perform when the condition is met.
+     * @param compiledCondition The compiled condition.
+     * @param compiledAction The compiled action.
      */
-    public Trigger(String condition, String action) {
+    public Trigger(String condition, String action, TriggerCondition compiledCondition, TriggerAction compiledAction) {
         this.condition = condition;
         this.action = action;
-        this.hasFired = false;
+        this.compiledCondition = compiledCondition;
+        this.compiledAction = compiledAction;
     }
-    
+
     public String getCondition() { return condition; }
     public String getAction() { return action; }
-    public boolean hasFired() { return hasFired; }
-    public void setFired(boolean fired) { this.hasFired = fired; }
+    public TriggerCondition getCompiledCondition() { return compiledCondition; }
+    public TriggerAction getCompiledAction() { return compiledAction; }
+    public boolean hasFired() { return fired.get(); }
+
+    /**
+     * Mark the trigger as fired.
+     * @return True if this call fired it, false if it had already fired.
+     */
+    public boolean markFired() { return fired.compareAndSet(false, true); }
+
+    /**
+     * Mark a fired trigger as reset.
+     * @return True if this call reset it, false if it had not fired.
+     */
+    public boolean markReset() { return fired.compareAndSet(true, false); }
 }
\ No newline at end of file
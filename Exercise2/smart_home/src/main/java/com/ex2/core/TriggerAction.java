@@ -0,0 +1,75 @@
+package com.ex2.core;
+
+/**
+ * Compiled form of a trigger action such as {@code "turnOn(living_room_light)"} or
+ * {@code "setTemperature(hall_thermostat, 68)"}.
+ */
+class TriggerAction {
+
+    /**
+     * Commands that may appear in a trigger action.
+     */
+    enum Command {
+        TURN_ON("turnOn"),
+        TURN_OFF("turnOff"),
+        SET_TEMPERATURE("setTemperature");
+
+        private final String name;
+
+        Command(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+
+        /**
+         * Resolve a command from its textual name.
+         * @param name The command name.
+         * @return The matching command, or null if the name is unknown.
+         */
+        public static Command fromName(String name) {
+            for (Command command : values()) {
+                if (command.name.equals(name)) {
+                    return command;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final Command command;
+    private final DeviceProxy target;
+    private final int argument;
+
+    /**
+     * Constructor for TriggerAction.
+     * @param command The command to run.
+     * @param target The device the command is applied to.
+     * @param argument The temperature for {@link Command#SET_TEMPERATURE}, otherwise unused.
+     */
+    public TriggerAction(Command command, DeviceProxy target, int argument) {
+        this.command = command;
+        this.target = target;
+        this.argument = argument;
+    }
+
+    public Command getCommand() { return command; }
+    public DeviceProxy getTarget() { return target; }
+    public String getDeviceId() { return target.getId(); }
+    public int getArgument() { return argument; }
+
+    /**
+     * Execute the action against the given system.
+     * @param system The system that owns the target device.
+     * @throws IllegalArgumentException if the command cannot be executed from a trigger.
+     */
+    public void execute(SmartHomeSystem system) {
+        switch (command) {
+            case TURN_ON: system.turnOn(target); break;
+            case TURN_OFF: system.turnOff(target); break;
+            case SET_TEMPERATURE: system.setTemperature(target, argument); break;
+            default:
+                throw new IllegalArgumentException("Unknown command in action: " + command.getName());
+        }
+    }
+}
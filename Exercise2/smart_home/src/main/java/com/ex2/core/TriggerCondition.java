@@ -0,0 +1,262 @@
+package com.ex2.core;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * Compiled form of a trigger condition such as {@code "hall_thermostat > 75 && front_door == unlocked"}.
+ * The condition is parsed once, when the trigger is added, into a tree of nodes holding the resolved
+ * devices and thresholds, so evaluation reads device fields and compares integers without allocating.
+ */
+class TriggerCondition {
+    private final Node root;
+    private final List<DeviceProxy> sources;
+
+    /**
+     * Constructor for TriggerCondition.
+     * @param root The root of the expression tree.
+     * @param sources The proxies of the devices the condition reads, each listed once.
+     */
+    public TriggerCondition(Node root, List<DeviceProxy> sources) {
+        this.root = root;
+        this.sources = sources;
+    }
+
+    public Node getRoot() { return root; }
+    public List<DeviceProxy> getSources() { return sources; }
+
+    /**
+     * Evaluate the condition against the current device state.
+     * @return True if the condition is met, false otherwise.
+     */
+    public boolean evaluate() {
+        return root.evaluate();
+    }
+
+    /**
+     * Get the time of the most recent state change of the devices the condition reads.
+     * @return The change time in {@link System#nanoTime()} units.
+     */
+    public long getLastChangeNanos() {
+        long latest = Long.MIN_VALUE;
+        for (DeviceProxy source : sources) {
+            latest = Math.max(latest, source.getLastChangeNanos());
+        }
+        return sources.isEmpty() ? System.nanoTime() : latest;
+    }
+
+    /**
+     * Node of a compiled condition.
+     */
+    abstract static class Node {
+        /**
+         * Evaluate the node against the current state.
+         * @return True if the node holds.
+         */
+        abstract boolean evaluate();
+
+        /**
+         * Check whether evaluating the node updates state kept between evaluations.
+         * Such nodes must be evaluated every time, not skipped by short-circuiting.
+         * @return True if the node or one of its operands is stateful.
+         */
+        boolean isStateful() {
+            return false;
+        }
+    }
+
+    /**
+     * Conjunction of operands.
+     */
+    static final class And extends Node {
+        private final Node[] operands;
+        private final boolean strict;
+
+        And(Node[] operands) {
+            this.operands = operands;
+            this.strict = anyStateful(operands);
+        }
+
+        Node[] getOperands() { return operands; }
+
+        @Override
+        boolean evaluate() {
+            boolean result = true;
+            for (Node operand : operands) {
+                result &= operand.evaluate();
+                if (!result && !strict) {
+                    return false;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        boolean isStateful() {
+            return strict;
+        }
+    }
+
+    /**
+     * Disjunction of operands.
+     */
+    static final class Or extends Node {
+        private final Node[] operands;
+        private final boolean strict;
+
+        Or(Node[] operands) {
+            this.operands = operands;
+            this.strict = anyStateful(operands);
+        }
+
+        Node[] getOperands() { return operands; }
+
+        @Override
+        boolean evaluate() {
+            boolean result = false;
+            for (Node operand : operands) {
+                result |= operand.evaluate();
+                if (result && !strict) {
+                    return true;
+                }
+            }
+            return result;
+        }
+
+        @Override
+        boolean isStateful() {
+            return strict;
+        }
+    }
+
+    /**
+     * Negation of an operand.
+     */
+    static final class Not extends Node {
+        private final Node operand;
+
+        Not(Node operand) {
+            this.operand = operand;
+        }
+
+        Node getOperand() { return operand; }
+
+        @Override
+        boolean evaluate() {
+            return !operand.evaluate();
+        }
+
+        @Override
+        boolean isStateful() {
+            return operand.isStateful();
+        }
+    }
+
+    /**
+     * Comparison of a device's state with a constant, optionally with a hysteresis band.
+     * With a band, a comparison that holds keeps holding until the value moves past the
+     * threshold by more than the band, so a value hovering around the threshold does not
+     * make the trigger fire repeatedly.
+     */
+    static final class Comparison extends Node {
+        private final DeviceProxy source;
+        private final Operator operator;
+        private final int threshold;
+        private final int release;
+        private final int band;
+        private volatile boolean holding;
+
+        /**
+         * Constructor for Comparison.
+         * @param source The proxy of the device whose state is compared.
+         * @param operator The comparison operator.
+         * @param threshold The value compared against; 1 or 0 for on/locked and off/unlocked.
+         * @param band The hysteresis band, or 0 for none. Only valid with ordering operators.
+         */
+        Comparison(DeviceProxy source, Operator operator, int threshold, int band) {
+            this.source = source;
+            this.operator = operator;
+            this.threshold = threshold;
+            this.band = band;
+            boolean rising = operator == Operator.GREATER_THAN || operator == Operator.GREATER_OR_EQUAL;
+            this.release = rising ? threshold - band : threshold + band;
+        }
+
+        public DeviceProxy getSource() { return source; }
+        public Operator getOperator() { return operator; }
+        public int getThreshold() { return threshold; }
+        public int getBand() { return band; }
+
+        @Override
+        boolean evaluate() {
+            int value = DeviceProxy.stateValue(source.getDevice());
+            if (band == 0) {
+                return operator.test(value, threshold);
+            }
+            boolean result = operator.test(value, holding ? release : threshold);
+            holding = result;
+            return result;
+        }
+
+        @Override
+        boolean isStateful() {
+            return band != 0;
+        }
+    }
+
+    /**
+     * Time-of-day window, from a start minute inclusive to an end minute exclusive,
+     * wrapping around midnight when the end is before the start.
+     * Time windows are re-evaluated by the periodic trigger sweep, since no device change signals them.
+     */
+    static final class TimeWindow extends Node {
+        private static final long MINUTE_MILLIS = 60_000L;
+        private static final long HOUR_MILLIS = 60 * MINUTE_MILLIS;
+        private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+        private static volatile long offsetValidUntil = Long.MIN_VALUE;
+        private static volatile long offsetMillis;
+
+        private final int startMinute;
+        private final int endMinute;
+
+        /**
+         * Constructor for TimeWindow.
+         * @param startMinute The first minute of the day in the window.
+         * @param endMinute The first minute of the day after the window.
+         */
+        TimeWindow(int startMinute, int endMinute) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+        }
+
+        @Override
+        boolean evaluate() {
+            int minute = minuteOfDay(System.currentTimeMillis());
+            return startMinute <= endMinute
+                    ? minute >= startMinute && minute < endMinute
+                    : minute >= startMinute || minute < endMinute;
+        }
+
+        /**
+         * Get the local minute of the day. The zone offset is looked up at most once an hour,
+         * so evaluation does not allocate.
+         */
+        private static int minuteOfDay(long now) {
+            if (now >= offsetValidUntil) {
+                offsetMillis = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochMilli(now)).getTotalSeconds() * 1000L;
+                offsetValidUntil = now - Math.floorMod(now, HOUR_MILLIS) + HOUR_MILLIS;
+            }
+            return (int) (Math.floorMod(now + offsetMillis, DAY_MILLIS) / MINUTE_MILLIS);
+        }
+    }
+
+    private static boolean anyStateful(Node[] operands) {
+        for (Node operand : operands) {
+            if (operand.isStateful()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,24 @@
+package com.ex2.core;
+
+/**
+ * Strategies for deciding when trigger conditions are evaluated.
+ */
+public enum TriggerEvaluationMode {
+    /**
+     * Triggers fire from the periodic sweep; device changes only reset their dependents.
+     */
+    POLLING,
+
+    /**
+     * Every published device change immediately evaluates the triggers that depend on it.
+     * The periodic sweep is an optional safety net.
+     */
+    EVENT_DRIVEN,
+
+    /**
+     * Like {@link #EVENT_DRIVEN}, but device changes propagate through a shared rule network,
+     * so only the triggers whose condition flips are visited. Suits large trigger sets that
+     * share devices and conditions.
+     */
+    RULE_NETWORK
+}
@@ -0,0 +1,182 @@
+package com.ex2.core;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds the registered triggers together with an index from device ID to the
+ * triggers that reference that device, so a state change only visits its dependents,
+ * and the rule network compiled from their conditions.
+ * Mutations are serialized on the index; lookups are lock-free.
+ */
+class TriggerIndex {
+    private final RuleNetwork network = new RuleNetwork();
+    private final List<Trigger> triggers = new CopyOnWriteArrayList<>();
+    private final Map<String, List<Trigger>> byConditionDevice = new ConcurrentHashMap<>();
+    private final Map<String, List<Trigger>> byDevice = new ConcurrentHashMap<>();
+
+    /**
+     * Register a trigger and index it by the devices it references.
+     * @param trigger The trigger to add.
+     */
+    public synchronized void add(Trigger trigger) {
+        triggers.add(trigger);
+        String actionDevice = trigger.getCompiledAction().getDeviceId();
+        boolean actionReadByCondition = false;
+        for (DeviceProxy source : trigger.getCompiledCondition().getSources()) {
+            bucket(byConditionDevice, source.getId()).add(trigger);
+            source.getDependentTriggers().add(trigger);
+            bucket(byDevice, source.getId()).add(trigger);
+            actionReadByCondition |= source.getId().equals(actionDevice);
+        }
+        if (!actionReadByCondition) {
+            bucket(byDevice, actionDevice).add(trigger);
+        }
+        network.add(trigger);
+    }
+
+    /**
+     * Unregister a trigger.
+     * @param trigger The trigger to remove.
+     * @return True if the trigger was registered, false otherwise.
+     */
+    public synchronized boolean remove(Trigger trigger) {
+        if (!triggers.remove(trigger)) {
+            return false;
+        }
+        for (DeviceProxy source : trigger.getCompiledCondition().getSources()) {
+            unlink(byConditionDevice, source.getId(), trigger);
+            source.getDependentTriggers().remove(trigger);
+            unlink(byDevice, source.getId(), trigger);
+        }
+        unlink(byDevice, trigger.getCompiledAction().getDeviceId(), trigger);
+        network.remove(trigger);
+        return true;
+    }
+
+    /**
+     * Unregister every trigger whose condition or action references a device.
+     * @param deviceId The ID of the device.
+     * @return The removed triggers.
+     */
+    public synchronized List<Trigger> removeByDevice(String deviceId) {
+        List<Trigger> referencing = byDevice.get(deviceId);
+        if (referencing == null) {
+            return Collections.emptyList();
+        }
+        List<Trigger> removed = new ArrayList<>(referencing);
+        for (Trigger trigger : removed) {
+            remove(trigger);
+        }
+        return removed;
+    }
+
+    /**
+     * Find a registered trigger by its source text.
+     * @param condition The condition of the trigger.
+     * @param action The action of the trigger.
+     * @return The matching trigger, or null if none is registered.
+     */
+    public Trigger find(String condition, String action) {
+        for (Trigger trigger : triggers) {
+            if (trigger.getCondition().equals(condition) && trigger.getAction().equals(action)) {
+                return trigger;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the triggers whose condition reads the state of a device.
+     * @param deviceId The ID of the device.
+     * @return The dependent triggers; never null.
+     */
+    public List<Trigger> dependents(String deviceId) {
+        List<Trigger> dependents = byConditionDevice.get(deviceId);
+        return dependents != null ? dependents : Collections.<Trigger>emptyList();
+    }
+
+    /**
+     * Register a trigger unless it would close a cycle of triggers; see {@link #findCycle(Trigger)}.
+     * @param trigger The trigger to add.
+     * @return The cycle the trigger would close, or null if the trigger was added.
+     */
+    public synchronized List<Trigger> addAcyclic(Trigger trigger) {
+        List<Trigger> cycle = findCycle(trigger);
+        if (cycle == null) {
+            add(trigger);
+        }
+        return cycle;
+    }
+
+    /**
+     * Find a chain of registered triggers that would let a new trigger fire itself again:
+     * its action changes a device read by another trigger, whose action changes a device read
+     * by a further trigger, and so on until one changes a device the new trigger reads.
+     * A trigger whose action changes a device its own condition reads is not a cycle on its own,
+     * since the change normally makes the condition stop holding.
+     * @param trigger The trigger about to be added.
+     * @return The triggers of the chain, starting with the new one, or null if there is none.
+     */
+    public synchronized List<Trigger> findCycle(Trigger trigger) {
+        List<Trigger> path = new ArrayList<>();
+        path.add(trigger);
+        return extendsToCycle(trigger, path, new HashSet<>()) ? path : null;
+    }
+
+    private boolean extendsToCycle(Trigger start, List<Trigger> path, Set<Trigger> visited) {
+        String changed = path.get(path.size() - 1).getCompiledAction().getDeviceId();
+        for (Trigger next : dependents(changed)) {
+            if (next == start || !visited.add(next)) {
+                continue;
+            }
+            path.add(next);
+            for (DeviceProxy source : start.getCompiledCondition().getSources()) {
+                if (source.getId().equals(next.getCompiledAction().getDeviceId())) {
+                    return true;
+                }
+            }
+            if (extendsToCycle(start, path, visited)) {
+                return true;
+            }
+            path.remove(path.size() - 1);
+        }
+        return false;
+    }
+
+    /**
+     * Get the rule network of the registered triggers.
+     * @return The rule network.
+     */
+    public RuleNetwork network() {
+        return network;
+    }
+
+    /**
+     * Get all registered triggers in registration order.
+     * @return All triggers.
+     */
+    public List<Trigger> all() {
+        return triggers;
+    }
+
+    private static List<Trigger> bucket(Map<String, List<Trigger>> index, String deviceId) {
+        return index.computeIfAbsent(deviceId, key -> new CopyOnWriteArrayList<>());
+    }
+
+    private static void unlink(Map<String, List<Trigger>> index, String deviceId, Trigger trigger) {
+        List<Trigger> bucket = index.get(deviceId);
+        if (bucket != null) {
+            bucket.remove(trigger);
+            if (bucket.isEmpty()) {
+                index.remove(deviceId);
+            }
+        }
+    }
+}
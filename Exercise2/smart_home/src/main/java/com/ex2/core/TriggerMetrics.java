@@ -0,0 +1,66 @@
+package com.ex2.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Collects the latency between a device state change and the execution of
+ * the trigger action it caused.
+ */
+public class TriggerMetrics {
+    private final LongAdder firedCount = new LongAdder();
+    private final LongAdder totalLatencyNanos = new LongAdder();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * Record a trigger firing.
+     * @param latencyNanos Nanoseconds from the state change to the completed action.
+     */
+    void recordFiring(long latencyNanos) {
+        firedCount.increment();
+        totalLatencyNanos.add(latencyNanos);
+        maxLatencyNanos.accumulateAndGet(latencyNanos, Math::max);
+    }
+
+    /**
+     * Get the number of trigger firings recorded.
+     * @return The firing count.
+     */
+    public long getFiredCount() { return firedCount.sum(); }
+
+    /**
+     * Get the mean latency from state change to action execution.
+     * @param unit The unit of the result.
+     * @return The average latency, or 0 if nothing has fired.
+     */
+    public long getAverageLatency(TimeUnit unit) {
+        long count = firedCount.sum();
+        return count == 0 ? 0 : unit.convert(totalLatencyNanos.sum() / count, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Get the worst latency from state change to action execution.
+     * @param unit The unit of the result.
+     * @return The maximum latency, or 0 if nothing has fired.
+     */
+    public long getMaxLatency(TimeUnit unit) {
+        return unit.convert(maxLatencyNanos.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Clear all recorded values.
+     */
+    public void reset() {
+        firedCount.reset();
+        totalLatencyNanos.reset();
+        maxLatencyNanos.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "fired=" + getFiredCount()
+             + ", avgLatencyMicros=" + getAverageLatency(TimeUnit.MICROSECONDS)
+             + ", maxLatencyMicros=" + getMaxLatency(TimeUnit.MICROSECONDS);
+    }
+}
@@ -0,0 +1,264 @@
+package com.ex2.core;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Parses the trigger expression language into compiled conditions and actions.
+ * <pre>
+ * condition  := or
+ * or         := and ( "||" and )*
+ * and        := unary ( "&amp;&amp;" unary )*
+ * unary      := "!" unary | "(" or ")" | window | comparison
+ * window     := "time" "between" HH:MM "and" HH:MM
+ * comparison := id op value [ "hysteresis" int ]
+ * op         := "&gt;" | "&lt;" | "&gt;=" | "&lt;=" | "==" | "!="
+ * value      := int | "on" | "off" | "locked" | "unlocked"
+ * action     := command "(" id [ "," int ] ")"
+ * </pre>
+ * Devices with a setpoint, such as thermostats, compare it with an integer; other devices compare
+ * their status with the active and inactive states of their {@link DeviceType}, such as
+ * {@code on} and {@code off} or {@code locked} and {@code unlocked}.
+ * Devices are resolved while parsing, so a trigger never refers to an unknown device.
+ */
+final class TriggerParser {
+    private static final String OPERATOR_CHARS = "<>=!";
+
+    private final String text;
+    private final Function<String, DeviceProxy> devices;
+    private final List<String> tokens;
+    private final Set<DeviceProxy> sources = new LinkedHashSet<>();
+    private int position;
+
+    private TriggerParser(String text, Function<String, DeviceProxy> devices) {
+        this.text = text;
+        this.devices = devices;
+        this.tokens = tokenize(text);
+    }
+
+    /**
+     * Parse and compile a trigger condition.
+     * @param condition The condition to compile.
+     * @param devices Resolves a device ID to its proxy, or null if the device does not exist.
+     * @return The compiled condition.
+     * @throws IllegalArgumentException if the condition is malformed or references an unknown or unsupported device.
+     */
+    static TriggerCondition parseCondition(String condition, Function<String, DeviceProxy> devices) {
+        TriggerParser parser = new TriggerParser(condition, devices);
+        TriggerCondition.Node root = parser.or();
+        if (parser.position != parser.tokens.size()) {
+            throw parser.error("unexpected '" + parser.tokens.get(parser.position) + "'");
+        }
+        return new TriggerCondition(root, new ArrayList<>(parser.sources));
+    }
+
+    /**
+     * Parse and compile a trigger action of the form {@code "<command>(<id>)"} or {@code "setTemperature(<id>, <value>)"}.
+     * @param action The action to compile.
+     * @param devices Resolves a device ID to its proxy, or null if the device does not exist.
+     * @return The compiled action.
+     * @throws IllegalArgumentException if the action is malformed or references an unknown device.
+     */
+    static TriggerAction parseAction(String action, Function<String, DeviceProxy> devices) {
+        int open = action.indexOf('(');
+        if (open < 0 || !action.endsWith(")")) {
+            throw new IllegalArgumentException("Invalid action format: " + action);
+        }
+        TriggerAction.Command command = TriggerAction.Command.fromName(action.substring(0, open).trim());
+        String[] arguments = action.substring(open + 1, action.length() - 1).split(",");
+        DeviceProxy target = devices.apply(arguments[0].trim());
+        if (command == null || target == null) {
+            throw new IllegalArgumentException("Invalid action format: " + action);
+        }
+        if (command != TriggerAction.Command.SET_TEMPERATURE) {
+            if (arguments.length != 1) {
+                throw new IllegalArgumentException("Invalid action format: " + action);
+            }
+            return new TriggerAction(command, target, 0);
+        }
+        if (arguments.length != 2 || !isInteger(arguments[1].trim())) {
+            throw new IllegalArgumentException("Invalid action format: " + action);
+        }
+        if (!target.getDeviceType().hasSetpoint()) {
+            throw new IllegalArgumentException("Device " + target.getId() + " is not a thermostat");
+        }
+        int temperature = Integer.parseInt(arguments[1].trim());
+        target.getDeviceType().validateSetpoint(temperature);
+        return new TriggerAction(command, target, temperature);
+    }
+
+    private TriggerCondition.Node or() {
+        List<TriggerCondition.Node> operands = new ArrayList<>();
+        operands.add(and());
+        while (accept("||")) {
+            operands.add(and());
+        }
+        return operands.size() == 1 ? operands.get(0) : new TriggerCondition.Or(operands.toArray(new TriggerCondition.Node[0]));
+    }
+
+    private TriggerCondition.Node and() {
+        List<TriggerCondition.Node> operands = new ArrayList<>();
+        operands.add(unary());
+        while (accept("&&")) {
+            operands.add(unary());
+        }
+        return operands.size() == 1 ? operands.get(0) : new TriggerCondition.And(operands.toArray(new TriggerCondition.Node[0]));
+    }
+
+    private TriggerCondition.Node unary() {
+        if (accept("!")) {
+            return new TriggerCondition.Not(unary());
+        }
+        if (accept("(")) {
+            TriggerCondition.Node inner = or();
+            expect(")");
+            return inner;
+        }
+        if (peek("time") && position + 1 < tokens.size() && tokens.get(position + 1).equals("between")) {
+            position += 2;
+            int start = minuteOfDay(next());
+            expect("and");
+            return new TriggerCondition.TimeWindow(start, minuteOfDay(next()));
+        }
+        return comparison();
+    }
+
+    private TriggerCondition.Node comparison() {
+        String deviceId = next();
+        Operator operator = Operator.fromSymbol(next());
+        String value = next();
+        if (operator == null) {
+            throw error("expected a comparison after " + deviceId);
+        }
+        DeviceProxy proxy = devices.apply(deviceId);
+        if (proxy == null) {
+            throw error("unknown device " + deviceId);
+        }
+        int band = 0;
+        if (accept("hysteresis")) {
+            String width = next();
+            if (!isInteger(width) || Integer.parseInt(width) < 0) {
+                throw error("invalid hysteresis band " + width);
+            }
+            band = Integer.parseInt(width);
+        }
+        sources.add(proxy);
+
+        DeviceType type = proxy.getDeviceType();
+        if (type.hasSetpoint()) {
+            if (!isInteger(value)) {
+                throw error("expected a temperature after " + deviceId + " " + operator.getSymbol());
+            }
+            if (band > 0 && (operator == Operator.EQUALS || operator == Operator.NOT_EQUALS)) {
+                throw error("hysteresis needs <, >, <= or >=");
+            }
+            return new TriggerCondition.Comparison(proxy, operator, Integer.parseInt(value), band);
+        }
+        String active = type.getActiveState();
+        String inactive = type.getInactiveState();
+        if (active == null || inactive == null) {
+            throw new IllegalArgumentException("Unsupported device type for condition: " + proxy.getType());
+        }
+        if (!value.equals(active) && !value.equals(inactive)) {
+            throw new IllegalArgumentException("Unsupported device type for condition: " + proxy.getType()
+                    + " can only be compared with " + active + " or " + inactive);
+        }
+        if (band > 0 || (operator != Operator.EQUALS && operator != Operator.NOT_EQUALS)) {
+            throw error(proxy.getType() + " conditions only support == and !=");
+        }
+        return new TriggerCondition.Comparison(proxy, operator, value.equals(active) ? 1 : 0, 0);
+    }
+
+    private int minuteOfDay(String time) {
+        int colon = time.indexOf(':');
+        if (colon < 1 || !isInteger(time.substring(0, colon)) || !isInteger(time.substring(colon + 1))) {
+            throw error("expected a time as HH:MM, got " + time);
+        }
+        int hours = Integer.parseInt(time.substring(0, colon));
+        int minutes = Integer.parseInt(time.substring(colon + 1));
+        if (hours > 24 || minutes > 59 || (hours == 24 && minutes > 0)) {
+            throw error("invalid time " + time);
+        }
+        return hours * 60 + minutes;
+    }
+
+    private boolean peek(String token) {
+        return position < tokens.size() && tokens.get(position).equals(token);
+    }
+
+    private boolean accept(String token) {
+        if (peek(token)) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void expect(String token) {
+        if (!accept(token)) {
+            throw error("expected '" + token + "'");
+        }
+    }
+
+    private String next() {
+        if (position == tokens.size()) {
+            throw error("unexpected end");
+        }
+        return tokens.get(position++);
+    }
+
+    private IllegalArgumentException error(String detail) {
+        return new IllegalArgumentException("Invalid condition format: " + text + " (" + detail + ")");
+    }
+
+    /**
+     * Split a condition into words, parentheses and operators.
+     */
+    private static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < text.length()) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '(' || c == ')') {
+                tokens.add(String.valueOf(c));
+                i++;
+            } else if ((c == '&' || c == '|') && i + 1 < text.length() && text.charAt(i + 1) == c) {
+                tokens.add(text.substring(i, i + 2));
+                i += 2;
+            } else if (OPERATOR_CHARS.indexOf(c) >= 0) {
+                int end = i + 1 < text.length() && text.charAt(i + 1) == '=' ? i + 2 : i + 1;
+                tokens.add(text.substring(i, end));
+                i = end;
+            } else {
+                int start = i;
+                while (i < text.length() && !Character.isWhitespace(text.charAt(i))
+                        && "()&|".indexOf(text.charAt(i)) < 0 && OPERATOR_CHARS.indexOf(text.charAt(i)) < 0) {
+                    i++;
+                }
+                if (i == start) {
+                    throw new IllegalArgumentException("Invalid condition format: " + text + " (unexpected '" + c + "')");
+                }
+                tokens.add(text.substring(start, i));
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isInteger(String value) {
+        int start = value.startsWith("-") ? 1 : 0;
+        if (value.length() == start || value.length() - start > 9) {
+            return false;
+        }
+        for (int i = start; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,14 +1,24 @@
 package com.ex2.demo;
 
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
 import java.time.LocalTime;
+import com.ex2.core.ScriptReport;
 import com.ex2.core.SmartHomeSystem;
 
 /**
  * Demo class to showcase the functionality of the Smart Home System.
+ * Run without arguments for the interactive hub, or pass a command script (or {@code -} for standard
+ * input) to replay it in batch and print the command rate and error count.
  */
 public class SmartHomeDemo {
     public static void main(String[] args) {
         SmartHomeSystem system = SmartHomeSystem.getInstance();
+
+        if (args.length > 0) {
+            runScript(system, args[0]);
+            return;
+        }
         
         try {
             // Add devices
@@ -37,4 +47,17 @@ public class SmartHomeDemo {
             System.err.println("Error in SmartHomeDemo: " + e.getMessage());
         }
     }
+
+    private static void runScript(SmartHomeSystem system, String script) {
+        try {
+            ScriptReport report = script.equals("-")
+                    ? system.runScript(new InputStreamReader(System.in))
+                    : system.runScript(Paths.get(script));
+            System.out.println(report);
+        } catch (Exception e) {
+            System.err.println("Error in SmartHomeDemo: " + e.getMessage());
+        } finally {
+            system.stop();
+        }
+    }
 }
@@ -10,7 +10,7 @@ import com.ex2.core.Device;
 public class DoorLock implements Device {
     private static final Logger logger = LogManager.getLogger(DoorLock.class.getName());
     private final String id;
-    private boolean isLocked = true;
+    private volatile boolean isLocked = true;
     
     /**
      * Constructor for DoorLock.
@@ -18,7 +18,7 @@ public class DoorLock implements Device {
      */
     public DoorLock(String id) {
         this.id = id;
-        logger.info("Created new DoorLock with ID: " + id);
+        logger.debug("Created new DoorLock with ID: {}", id);
     }
     
     @Override
@@ -30,13 +30,13 @@ public class DoorLock implements Device {
     @Override
     public void turnOn() { 
         isLocked = true; 
-        logger.info("Door lock " + id + " locked");
+        logger.debug("Door lock {} locked", id);
     }
     
     @Override
     public void turnOff() { 
         isLocked = false; 
-        logger.info("Door lock " + id + " unlocked");
+        logger.debug("Door lock {} unlocked", id);
     }
     
     @Override
@@ -0,0 +1,25 @@
+package com.ex2.devices;
+
+import java.util.EnumSet;
+
+import com.ex2.core.Device;
+import com.ex2.core.DeviceCapability;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.DeviceType;
+
+/**
+ * Describes door locks: lockable devices that are locked or unlocked.
+ */
+public class DoorLockType extends DeviceType {
+    /**
+     * Constructor for DoorLockType.
+     */
+    public DoorLockType() {
+        super("doorlock", EnumSet.of(DeviceCapability.LOCKABLE), "locked", "unlocked");
+    }
+
+    @Override
+    public Device create(String id, DeviceObserver changeListener) {
+        return new DoorLock(id);
+    }
+}
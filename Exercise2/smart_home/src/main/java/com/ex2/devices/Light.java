@@ -12,7 +12,7 @@ import com.ex2.core.Device;
 public class Light implements Device {
     private static final Logger logger = LogManager.getLogger(Light.class.getName());
     private final String id;
-    private boolean isOn = false;
+    private volatile boolean isOn = false;
     
     /**
      * Constructor for Light.
@@ -20,7 +20,7 @@ public class Light implements Device {
      */
     public Light(String id) {
         this.id = id;
-        logger.info("Created new Light with ID: " + id);
+        logger.debug("Created new Light with ID: {}", id);
     }
     
     @Override
@@ -33,7 +33,7 @@ public class Light implements Device {
     public void turnOn() { 
         if (!isOn) {
             isOn = true; 
-            logger.info("Light " + id + " turned on");
+            logger.debug("Light {} turned on", id);
         }
     }
     
@@ -41,7 +41,7 @@ public class Light implements Device {
     public void turnOff() { 
         if (isOn) {
             isOn = false; 
-            logger.info("Light " + id + " turned off");
+            logger.debug("Light {} turned off", id);
         }
     }
     
@@ -0,0 +1,25 @@
+package com.ex2.devices;
+
+import java.util.EnumSet;
+
+import com.ex2.core.Device;
+import com.ex2.core.DeviceCapability;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.DeviceType;
+
+/**
+ * Describes lights: switchable devices that are on or off.
+ */
+public class LightType extends DeviceType {
+    /**
+     * Constructor for LightType.
+     */
+    public LightType() {
+        super("light", EnumSet.of(DeviceCapability.SWITCHABLE), "on", "off");
+    }
+
+    @Override
+    public Device create(String id, DeviceObserver changeListener) {
+        return new Light(id);
+    }
+}
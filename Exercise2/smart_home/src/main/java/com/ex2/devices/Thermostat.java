@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 import com.ex2.core.Device;
+import com.ex2.core.DeviceObserver;
 import com.ex2.core.SmartHomeSystem;
 
 /**
@@ -11,16 +12,60 @@ import com.ex2.core.SmartHomeSystem;
  */
 public class Thermostat implements Device {
     private static final Logger logger = LogManager.getLogger(Thermostat.class.getName());
+    public static final int MIN_TEMPERATURE = 40;
+    public static final int MAX_TEMPERATURE = 90;
+    private static final DeviceObserver DEFAULT_SYSTEM = device -> SmartHomeSystem.getInstance().publishChange(device);
     private final String id;
-    private int temperature = 70;
+    private volatile DeviceObserver changeListener;
+    private volatile int temperature = 70;
     
     /**
      * Constructor for Thermostat.
+     * Temperature changes are published to the system the thermostat is added to, and to the
+     * default {@link SmartHomeSystem} instance until then.
      * @param id The unique identifier for the thermostat.
      */
     public Thermostat(String id) {
+        this(id, null);
+    }
+
+    /**
+     * Constructor for Thermostat bound to the system that owns it.
+     * @param id The unique identifier for the thermostat.
+     * @param changeListener Receives every temperature change, typically the owning system's
+     *        {@code publishChange}; null to publish to the system the thermostat is added to.
+     */
+    public Thermostat(String id, DeviceObserver changeListener) {
         this.id = id;
-        logger.info("Created new Thermostat with ID: " + id);
+        this.changeListener = changeListener;
+        logger.debug("Created new Thermostat with ID: {}", id);
+    }
+
+    /**
+     * Constructor for Thermostat with an initial temperature, e.g. when restoring saved state.
+     * No change is published.
+     * @param id The unique identifier for the thermostat.
+     * @param temperature The initial temperature.
+     * @throws IllegalArgumentException if the temperature is out of range.
+     */
+    public Thermostat(String id, int temperature) {
+        this(id, temperature, null);
+    }
+
+    /**
+     * Constructor for Thermostat with an initial temperature, bound to the system that owns it.
+     * No change is published.
+     * @param id The unique identifier for the thermostat.
+     * @param temperature The initial temperature.
+     * @param changeListener Receives every later temperature change; null to publish to the system the thermostat is added to.
+     * @throws IllegalArgumentException if the temperature is out of range.
+     */
+    public Thermostat(String id, int temperature, DeviceObserver changeListener) {
+        this(id, changeListener);
+        if (temperature < MIN_TEMPERATURE || temperature > MAX_TEMPERATURE) {
+            throw new IllegalArgumentException("Temperature must be between " + MIN_TEMPERATURE + "°F and " + MAX_TEMPERATURE + "°F");
+        }
+        this.temperature = temperature;
     }
     
     @Override
@@ -31,16 +76,25 @@ public class Thermostat implements Device {
     
     @Override
     public void turnOn() { 
-        logger.info("Thermostat " + id + " operation not applicable");
+        logger.debug("Thermostat {} operation not applicable", id);
     }
     
     @Override
     public void turnOff() { 
-        logger.info("Thermostat " + id + " operation not applicable");
+        logger.debug("Thermostat {} operation not applicable", id);
     }
     
     @Override
-    public String getStatus() { return "set to " + temperature + "°F"; }
+    public String getStatus() { return status(temperature); }
+
+    /**
+     * Get the status of a thermostat set to a temperature.
+     * @param temperature The temperature.
+     * @return The status.
+     */
+    static String status(int temperature) {
+        return "set to " + temperature + "°F";
+    }
     
     /**
      * Set the temperature of the thermostat.
@@ -48,12 +102,23 @@ public class Thermostat implements Device {
      * @throws IllegalArgumentException if the temperature is out of range.
      */
     public void setTemperature(int temp) {
-        if (temp < 40 || temp > 90) {
-            throw new IllegalArgumentException("Temperature must be between 40°F and 90°F");
+        if (temp < MIN_TEMPERATURE || temp > MAX_TEMPERATURE) {
+            throw new IllegalArgumentException("Temperature must be between " + MIN_TEMPERATURE + "°F and " + MAX_TEMPERATURE + "°F");
         }
         temperature = temp;
-        logger.info("Thermostat " + id + " temperature set to " + temp + "°F");
-        SmartHomeSystem.getInstance().notifyObservers(this);
+        logger.debug("Thermostat {} temperature set to {}°F", id, temp);
+        DeviceObserver listener = changeListener;
+        (listener != null ? listener : DEFAULT_SYSTEM).update(this);
+    }
+
+    /**
+     * Bind a thermostat created without a change listener to the system that registers it.
+     * @param listener The registering system's listener; ignored if the thermostat is already bound.
+     */
+    synchronized void bind(DeviceObserver listener) {
+        if (changeListener == null) {
+            changeListener = listener;
+        }
     }
     
     /**
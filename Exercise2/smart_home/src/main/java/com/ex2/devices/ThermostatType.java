@@ -0,0 +1,57 @@
+package com.ex2.devices;
+
+import java.util.EnumSet;
+
+import com.ex2.core.Device;
+import com.ex2.core.DeviceCapability;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.DeviceType;
+
+/**
+ * Describes thermostats: devices whose setpoint is a temperature in °F.
+ */
+public class ThermostatType extends DeviceType {
+    /**
+     * Constructor for ThermostatType.
+     */
+    public ThermostatType() {
+        super("thermostat", EnumSet.of(DeviceCapability.SETPOINT), null, null);
+    }
+
+    @Override
+    public Device create(String id, DeviceObserver changeListener) {
+        return new Thermostat(id, changeListener);
+    }
+
+    @Override
+    public Device restore(String id, int state, DeviceObserver changeListener) {
+        return new Thermostat(id, state, changeListener);
+    }
+
+    @Override
+    public void bind(Device device, DeviceObserver changeListener) {
+        ((Thermostat) device).bind(changeListener);
+    }
+
+    @Override
+    public int getState(Device device) {
+        return ((Thermostat) device).getTemperature();
+    }
+
+    @Override
+    public String getStatus(int state) {
+        return Thermostat.status(state);
+    }
+
+    @Override
+    public void validateSetpoint(int value) {
+        if (value < Thermostat.MIN_TEMPERATURE || value > Thermostat.MAX_TEMPERATURE) {
+            throw new IllegalArgumentException("Temperature must be between " + Thermostat.MIN_TEMPERATURE + "°F and " + Thermostat.MAX_TEMPERATURE + "°F");
+        }
+    }
+
+    @Override
+    public void setSetpoint(Device device, int value) {
+        ((Thermostat) device).setTemperature(value);
+    }
+}
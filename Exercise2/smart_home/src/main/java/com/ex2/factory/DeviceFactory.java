@@ -1,15 +1,19 @@
 package com.ex2.factory;
 
 import com.ex2.core.Device;
-import com.ex2.devices.Light;
-import com.ex2.devices.Thermostat;
-import com.ex2.devices.DoorLock;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.DeviceType;
+import com.ex2.core.DeviceTypeRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
 /**
  * Factory class for creating different types of devices.
+ * Types are looked up in the {@link DeviceTypeRegistry#getDefault() default registry}.
  */
 public class DeviceFactory {
     private static final Logger logger = LogManager.getLogger(DeviceFactory.class.getName());
@@ -22,13 +26,38 @@ public class DeviceFactory {
      * @throws IllegalArgumentException if an unknown device type is provided.
      */
     public static Device createDevice(String type, String id) {
-        logger.info("Creating device of type: " + type + " with ID: " + id);
-        switch (type.toLowerCase()) {
-            case "light": return new Light(id);
-            case "thermostat": return new Thermostat(id);
-            case "doorlock": return new DoorLock(id);
-            default: 
-                throw new IllegalArgumentException("Unknown device type: " + type);
+        return createDevice(type, id, null);
+    }
+
+    /**
+     * Create a device bound to the system that owns it.
+     * Devices that change state on their own, such as thermostats, publish their changes to the listener.
+     * @param type The type of device to create.
+     * @param id The unique identifier for the device.
+     * @param changeListener Receives state changes made directly on the device, or null for the default system.
+     * @return The created Device object.
+     * @throws IllegalArgumentException if an unknown device type is provided.
+     */
+    public static Device createDevice(String type, String id, DeviceObserver changeListener) {
+        logger.debug("Creating device of type: {} with ID: {}", type, id);
+        return DeviceTypeRegistry.getDefault().get(type).create(id, changeListener);
+    }
+
+    /**
+     * Create many devices of one type, resolving the type once.
+     * @param type The type of devices to create.
+     * @param ids The unique identifiers for the devices.
+     * @param changeListener Receives state changes made directly on the devices, or null for the default system.
+     * @return The created devices, in the order of the IDs.
+     * @throws IllegalArgumentException if an unknown device type is provided.
+     */
+    public static List<Device> createDevices(String type, List<String> ids, DeviceObserver changeListener) {
+        DeviceType deviceType = DeviceTypeRegistry.getDefault().get(type);
+        List<Device> created = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            created.add(deviceType.create(id, changeListener));
         }
+        logger.debug("Created {} devices of type: {}", created.size(), type);
+        return created;
     }
 }
\ No newline at end of file
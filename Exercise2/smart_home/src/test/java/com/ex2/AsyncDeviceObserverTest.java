@@ -0,0 +1,100 @@
+package com.ex2;
+
+import org.junit.jupiter.api.*;
+
+import com.ex2.core.AsyncDeviceObserver;
+import com.ex2.core.AsyncDeviceObserver.OverflowPolicy;
+import com.ex2.core.SmartHomeHost;
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.devices.Light;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for asynchronous observer dispatch.
+ */
+class AsyncDeviceObserverTest {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private final List<String> received = new ArrayList<>();
+
+    private void runPendingTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            task.run();
+        }
+    }
+
+    @Test
+    void testDeliversInOrder() {
+        AsyncDeviceObserver observer = new AsyncDeviceObserver(device -> received.add(device.getId()), tasks::add, 10, OverflowPolicy.DROP_OLDEST);
+        observer.update(new Light("a"));
+        observer.update(new Light("b"));
+        assertTrue(received.isEmpty());
+        assertEquals(2, observer.getPendingCount());
+        runPendingTasks();
+        assertEquals(Arrays.asList("a", "b"), received);
+        assertEquals(2, observer.getDeliveredCount());
+        assertEquals(0, observer.getPendingCount());
+    }
+
+    @Test
+    void testDropOldestWhenFull() {
+        AsyncDeviceObserver observer = new AsyncDeviceObserver(device -> received.add(device.getId()), tasks::add, 2, OverflowPolicy.DROP_OLDEST);
+        observer.update(new Light("a"));
+        observer.update(new Light("b"));
+        observer.update(new Light("c"));
+        runPendingTasks();
+        assertEquals(Arrays.asList("b", "c"), received);
+        assertEquals(1, observer.getDroppedCount());
+        assertEquals(2, observer.getMaxPendingCount());
+    }
+
+    @Test
+    void testCoalesceByDevice() {
+        Light light = new Light("a");
+        AsyncDeviceObserver observer = new AsyncDeviceObserver(device -> received.add(device.getId()), tasks::add, 2, OverflowPolicy.COALESCE_BY_DEVICE);
+        observer.update(light);
+        observer.update(new Light("b"));
+        observer.update(light);
+        runPendingTasks();
+        assertEquals(Arrays.asList("a", "b"), received);
+        assertEquals(1, observer.getCoalescedCount());
+        assertEquals(0, observer.getDroppedCount());
+    }
+
+    @Test
+    void testObserverFailureDoesNotStopDelivery() {
+        AsyncDeviceObserver observer = new AsyncDeviceObserver(device -> {
+            if (device.getId().equals("bad")) {
+                throw new IllegalStateException("boom");
+            }
+            received.add(device.getId());
+        }, tasks::add, 10, OverflowPolicy.BLOCK);
+        observer.update(new Light("bad"));
+        observer.update(new Light("good"));
+        runPendingTasks();
+        assertEquals(Arrays.asList("good"), received);
+    }
+
+    @Test
+    void testCommandAfterStopDropsUpdates() {
+        SmartHomeHost host = new SmartHomeHost(1);
+        SmartHomeSystem home = host.openHome("async-stopped");
+        home.addDevice("light", "stopped_light");
+        AsyncDeviceObserver observer = home.addAsyncObserver(device -> received.add(device.getId()), 10, OverflowPolicy.BLOCK);
+        host.shutdown();
+
+        assertDoesNotThrow(() -> home.turnOn("stopped_light"));
+        assertDoesNotThrow(() -> home.turnOff("stopped_light"));
+        assertEquals(2, observer.getDroppedCount());
+        assertEquals(0, observer.getPendingCount());
+        assertTrue(received.isEmpty());
+    }
+}
@@ -0,0 +1,232 @@
+package com.ex2;
+
+import org.junit.jupiter.api.*;
+
+import com.ex2.core.Device;
+import com.ex2.core.DeviceCommand;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.DeviceSnapshot;
+import com.ex2.core.ExecutionMode;
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.core.TriggerEvaluationMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Stress test hammering many devices from many threads at once.
+ */
+class ConcurrencyStressTest {
+    private static final int DEVICES = 32;
+    private static final int THREADS = 16;
+    private static final int COMMANDS_PER_THREAD = 2000;
+
+    /**
+     * Device with deliberately unsynchronized state that records any overlapping commands.
+     */
+    static class CountingDevice implements Device {
+        private final String id;
+        private int commands;
+        private int active;
+        private int overlaps;
+        private boolean isOn;
+
+        CountingDevice(String id) {
+            this.id = id;
+        }
+
+        @Override
+        public String getId() { return id; }
+
+        @Override
+        public String getType() { return "light"; }
+
+        @Override
+        public void turnOn() { apply(true); }
+
+        @Override
+        public void turnOff() { apply(false); }
+
+        @Override
+        public String getStatus() { return isOn ? "on" : "off"; }
+
+        private void apply(boolean on) {
+            if (++active > 1) {
+                overlaps++;
+            }
+            commands++;
+            Thread.yield();
+            isOn = on;
+            active--;
+        }
+    }
+
+    @Test
+    void testCommandsToEachDeviceAreSerialized() throws Exception {
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        List<CountingDevice> devices = new ArrayList<>();
+        for (int d = 0; d < DEVICES; d++) {
+            CountingDevice device = new CountingDevice("stress_device_" + d);
+            devices.add(device);
+            system.addDevice(device);
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                int thread = t;
+                workers.add(pool.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < COMMANDS_PER_THREAD; i++) {
+                        String id = "stress_device_" + random.nextInt(DEVICES);
+                        if (thread % 4 == 0) {
+                            system.applyBatch(Arrays.asList(DeviceCommand.turnOn(id), DeviceCommand.turnOff(id)));
+                        } else if (random.nextBoolean()) {
+                            system.turnOn(id);
+                        } else {
+                            system.turnOff(id);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long expected = (long) (THREADS - THREADS / 4) * COMMANDS_PER_THREAD + (long) (THREADS / 4) * COMMANDS_PER_THREAD * 2;
+        long total = 0;
+        for (CountingDevice device : devices) {
+            assertEquals(0, device.overlaps, "Overlapping commands on " + device.getId());
+            total += device.commands;
+            system.removeDevice(device.getId());
+        }
+        assertEquals(expected, total);
+    }
+
+    @Test
+    void testVirtualThreadSubmissionsStayOrderedPerDevice() throws Exception {
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        system.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        CountingDevice device = new CountingDevice("stress_vt_device");
+        system.addDevice(device);
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                workers.add(pool.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        system.applyBatch(Arrays.asList(
+                            DeviceCommand.turnOff(device.getId()),
+                            DeviceCommand.turnOn(device.getId())));
+                        system.turnOff(device.getId());
+                    }
+                }));
+            }
+            for (Future<?> worker : workers) {
+                worker.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+            system.setExecutionMode(ExecutionMode.DIRECT);
+        }
+        assertEquals(0, device.overlaps);
+        assertEquals(THREADS * 200 * 3, device.commands);
+        system.removeDevice(device.getId());
+    }
+
+    @Test
+    void testOpposingCascadesDoNotDeadlock() throws Exception {
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        system.addDevice("light", "stress_cascade_a");
+        system.addDevice("light", "stress_cascade_b");
+        system.setTriggerCyclesAllowed(true);
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+        // Hold both commands inside their device until the other has started too
+        CyclicBarrier bothStarted = new CyclicBarrier(2);
+        AtomicInteger arrivals = new AtomicInteger();
+        DeviceObserver rendezvous = device -> {
+            if (device.getId().startsWith("stress_cascade_") && arrivals.getAndIncrement() < 2) {
+                try {
+                    bothStarted.await(5, TimeUnit.SECONDS);
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+        system.addObserver(rendezvous);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            system.addTrigger("stress_cascade_a == on", "turnOn(stress_cascade_b)");
+            system.addTrigger("stress_cascade_b == on", "turnOn(stress_cascade_a)");
+            Future<?> first = pool.submit(() -> system.turnOn("stress_cascade_a"));
+            Future<?> second = pool.submit(() -> system.turnOn("stress_cascade_b"));
+            first.get(10, TimeUnit.SECONDS);
+            second.get(10, TimeUnit.SECONDS);
+            assertEquals(List.of("on", "on"), system.streamStatus().filter(snapshot -> snapshot.getId().startsWith("stress_cascade_"))
+                    .map(DeviceSnapshot::getStatus).toList());
+        } finally {
+            pool.shutdownNow();
+            system.removeObserver(rendezvous);
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+            system.setTriggerCyclesAllowed(false);
+            system.removeDevice("stress_cascade_a");
+            system.removeDevice("stress_cascade_b");
+        }
+    }
+
+    @Test
+    void testTriggerOnTwoDevicesFiresOnceWhenBothChangeTogether() throws Exception {
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        system.addDevice("light", "stress_pair_a");
+        system.addDevice("light", "stress_pair_b");
+        CountingDevice target = new CountingDevice("stress_pair_target");
+        system.addDevice(target);
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            system.addTrigger("stress_pair_a == on && stress_pair_b == on", "turnOn(stress_pair_target)");
+            for (TriggerEvaluationMode mode : List.of(TriggerEvaluationMode.EVENT_DRIVEN, TriggerEvaluationMode.RULE_NETWORK)) {
+                system.setTriggerEvaluationMode(mode);
+                for (int round = 0; round < 200; round++) {
+                    system.turnOff("stress_pair_a");
+                    system.turnOff("stress_pair_b");
+                    int before = target.commands;
+                    CyclicBarrier start = new CyclicBarrier(2);
+                    Future<?> first = pool.submit(() -> {
+                        start.await(5, TimeUnit.SECONDS);
+                        system.turnOn("stress_pair_a");
+                        return null;
+                    });
+                    Future<?> second = pool.submit(() -> {
+                        start.await(5, TimeUnit.SECONDS);
+                        system.turnOn("stress_pair_b");
+                        return null;
+                    });
+                    first.get(10, TimeUnit.SECONDS);
+                    second.get(10, TimeUnit.SECONDS);
+                    assertEquals(1, target.commands - before, mode + " round " + round);
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+            system.removeTrigger("stress_pair_a == on && stress_pair_b == on", "turnOn(stress_pair_target)");
+            system.removeDevice("stress_pair_a");
+            system.removeDevice("stress_pair_b");
+            system.removeDevice("stress_pair_target");
+        }
+    }
+}
@@ -8,6 +8,15 @@ import com.ex2.devices.Light;
 import com.ex2.devices.Thermostat;
 import com.ex2.factory.DeviceFactory;
 import com.ex2.core.Device;
+import com.ex2.core.DeviceCapability;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.DeviceType;
+import com.ex2.core.DeviceTypeRegistry;
+import com.ex2.core.SmartHomeSystem;
+
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
 
 /**
  * Test class for the DeviceFactory.
@@ -42,4 +51,97 @@ class DeviceFactoryTest {
     void testCreateInvalidDevice() {
         assertThrows(IllegalArgumentException.class, () -> DeviceFactory.createDevice("invalid_type", "invalid_device"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testBuiltInTypesAreDiscovered() {
+        DeviceTypeRegistry registry = DeviceTypeRegistry.getDefault();
+        assertTrue(registry.get("light").isSwitchable());
+        assertTrue(registry.get("DoorLock").isLockable());
+        assertTrue(registry.get("thermostat").hasSetpoint());
+        assertEquals(EnumSet.of(DeviceCapability.SETPOINT), registry.get("thermostat").getCapabilities());
+        assertThrows(IllegalArgumentException.class, () -> registry.register(registry.get("light")));
+    }
+
+    @Test
+    void testCreateDevicesOfOneType() {
+        List<Device> devices = DeviceFactory.createDevices("light", Arrays.asList("bulk_light_1", "bulk_light_2"), null);
+        assertEquals(2, devices.size());
+        assertTrue(devices.get(1) instanceof Light);
+        assertEquals("bulk_light_2", devices.get(1).getId());
+    }
+
+    @RepeatedTest(2)
+    void testRegisteredTypeWorksWithoutCoreChanges() {
+        DeviceTypeRegistry.getDefault().register(new DimmerType());
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        try {
+            system.addDevice("dimmer", "factory_dimmer");
+            system.addDevice("light", "factory_dimmer_light");
+            system.addTrigger("factory_dimmer > 50", "turnOn(factory_dimmer_light)");
+            system.setTemperature("factory_dimmer", 80);
+            system.checkTriggers();
+            assertTrue(system.getStatus().contains("factory_dimmer is at 80%"));
+            assertTrue(system.getStatus().contains("factory_dimmer_light is on"));
+            assertThrows(IllegalArgumentException.class, () -> system.setTemperature("factory_dimmer", 101));
+        } finally {
+            system.removeDevice("factory_dimmer");
+            system.removeDevice("factory_dimmer_light");
+            assertTrue(DeviceTypeRegistry.getDefault().unregister("dimmer"));
+        }
+        assertNull(DeviceTypeRegistry.getDefault().find("dimmer"));
+    }
+
+    /**
+     * Device type defined outside the core: a dimmer whose setpoint is a brightness percentage.
+     */
+    private static class DimmerType extends DeviceType {
+        DimmerType() {
+            super("dimmer", EnumSet.of(DeviceCapability.SETPOINT), null, null);
+        }
+
+        @Override
+        public Device create(String id, DeviceObserver changeListener) {
+            return new Dimmer(id);
+        }
+
+        @Override
+        public int getState(Device device) {
+            return ((Dimmer) device).level;
+        }
+
+        @Override
+        public void validateSetpoint(int value) {
+            if (value < 0 || value > 100) {
+                throw new IllegalArgumentException("Brightness must be between 0% and 100%");
+            }
+        }
+
+        @Override
+        public void setSetpoint(Device device, int value) {
+            validateSetpoint(value);
+            ((Dimmer) device).level = value;
+        }
+    }
+
+    private static class Dimmer implements Device {
+        private final String id;
+        private volatile int level;
+
+        Dimmer(String id) { this.id = id; }
+
+        @Override
+        public String getId() { return id; }
+
+        @Override
+        public String getType() { return "dimmer"; }
+
+        @Override
+        public void turnOn() { level = 100; }
+
+        @Override
+        public void turnOff() { level = 0; }
+
+        @Override
+        public String getStatus() { return "at " + level + "%"; }
+    }
+}
@@ -0,0 +1,138 @@
+package com.ex2;
+
+import org.junit.jupiter.api.*;
+
+import com.ex2.core.DeviceHistory;
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.devices.Light;
+import com.ex2.devices.Thermostat;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the device state history.
+ */
+class DeviceHistoryTest {
+    private static final long MINUTE = DeviceHistory.MINUTE;
+
+    private final AtomicLong clock = new AtomicLong(10 * DeviceHistory.HOUR);
+
+    @Test
+    void testThermostatRollups() {
+        DeviceHistory history = new DeviceHistory(16, 60, 24, clock::get);
+        Thermostat thermostat = new Thermostat("history_thermostat", 60);
+        long start = clock.get();
+
+        history.update(thermostat);
+        clock.addAndGet(MINUTE / 2);
+        thermostat.setTemperature(80);
+        history.update(thermostat);
+        history.update(thermostat);
+        clock.addAndGet(MINUTE);
+
+        List<DeviceHistory.Sample> samples = history.getSamples("history_thermostat", start, clock.get());
+        assertEquals(List.of(new DeviceHistory.Sample(start, 60), new DeviceHistory.Sample(start + MINUTE / 2, 80)), samples);
+
+        List<DeviceHistory.Rollup> minutes = history.getMinuteRollups("history_thermostat", start, clock.get());
+        assertEquals(2, minutes.size());
+        assertEquals(60, minutes.get(0).min());
+        assertEquals(80, minutes.get(0).max());
+        assertEquals(70.0, minutes.get(0).average(), 0.001);
+        assertEquals(2, minutes.get(0).changes());
+        assertEquals(80.0, minutes.get(1).average(), 0.001);
+
+        List<DeviceHistory.Rollup> hours = history.getHourRollups("history_thermostat", start, clock.get());
+        assertEquals(1, hours.size());
+        assertEquals(60, hours.get(0).min());
+        assertEquals((60 * 30 + 80 * 60) / 90.0, hours.get(0).average(), 0.001);
+    }
+
+    @Test
+    void testLightOnDurationAndBoundedMemory() {
+        DeviceHistory history = new DeviceHistory(4, 10, 24, clock::get);
+        Light light = new Light("history_light");
+        long start = clock.get();
+
+        history.update(light);
+        for (int i = 0; i < 10; i++) {
+            clock.addAndGet(MINUTE / 4);
+            if (i % 2 == 0) {
+                light.turnOn();
+            } else {
+                light.turnOff();
+            }
+            history.update(light);
+        }
+        assertEquals(4, history.getSamples("history_light", 0, Long.MAX_VALUE).size());
+
+        light.turnOn();
+        history.update(light);
+        clock.addAndGet(30 * MINUTE + MINUTE / 2);
+        List<DeviceHistory.Rollup> minutes = history.getMinuteRollups("history_light", 0, Long.MAX_VALUE);
+        assertEquals(10, minutes.size(), "Minute rollups should be bounded by their capacity");
+        assertTrue(minutes.stream().allMatch(rollup -> rollup.onMillis() == MINUTE));
+
+        List<DeviceHistory.Rollup> hours = history.getHourRollups("history_light", start, clock.get());
+        long onMillis = hours.stream().mapToLong(DeviceHistory.Rollup::onMillis).sum();
+        assertEquals(5 * MINUTE / 4 + 30 * MINUTE + MINUTE / 2, onMillis);
+        assertEquals(1, history.getDeviceCount());
+        history.forget("history_light");
+        assertTrue(history.getSamples("history_light", 0, Long.MAX_VALUE).isEmpty());
+    }
+
+    @Test
+    void testRecordsSystemChanges() {
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        system.addDevice("light", "history_system_light");
+        DeviceHistory history = system.recordHistory();
+        try {
+            system.turnOn("history_system_light");
+            system.turnOff("history_system_light");
+        } finally {
+            system.removeObserver(history);
+            system.removeDevice("history_system_light");
+        }
+        List<DeviceHistory.Sample> samples = history.getSamples("history_system_light", 0, Long.MAX_VALUE);
+        assertEquals(List.of(0, 1, 0), samples.stream().map(DeviceHistory.Sample::value).toList());
+    }
+
+    @Test
+    void testRemovedDevicesAreEvictedAndCapped() {
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        DeviceHistory history = new DeviceHistory(4, 10, 2, 2, clock::get);
+        system.addDevice("light", "history_evict_a");
+        system.addDevice("light", "history_evict_b");
+        system.addObserver(history);
+        try {
+            system.turnOn("history_evict_a");
+            system.removeDevice("history_evict_a");
+            assertEquals(1, history.getDeviceCount());
+            assertEquals(1, history.getSamples("history_evict_a", 0, Long.MAX_VALUE).size(), "A removed device's history should stay readable");
+
+            system.turnOn("history_evict_b");
+            system.addDevice("light", "history_evict_c");
+            system.turnOn("history_evict_c");
+            assertEquals(2, history.getDeviceCount());
+            assertTrue(history.getSamples("history_evict_a", 0, Long.MAX_VALUE).isEmpty(), "The removed device should make room at the cap");
+            assertEquals(List.of(0, 1), history.getSamples("history_evict_c", 0, Long.MAX_VALUE).stream().map(DeviceHistory.Sample::value).toList());
+
+            system.addDevice("light", "history_evict_d");
+            system.turnOn("history_evict_d");
+            assertEquals(2, history.getDeviceCount(), "Live devices should not be evicted at the cap");
+            assertTrue(history.getSamples("history_evict_d", 0, Long.MAX_VALUE).isEmpty());
+            system.removeDevice("history_evict_d");
+            assertEquals(2, history.getDeviceCount(), "A removal should not create a history");
+
+            system.removeDevice("history_evict_b");
+            clock.addAndGet(2 * DeviceHistory.HOUR);
+            system.turnOff("history_evict_c");
+            assertEquals(1, history.getDeviceCount(), "A removed device's history should expire with its hour rollups");
+        } finally {
+            system.removeObserver(history);
+            system.removeDevice("history_evict_c");
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.ex2;
+
+import org.junit.jupiter.api.*;
+
+import com.ex2.core.Device;
+import com.ex2.core.DeviceCapability;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.DeviceProxy;
+import com.ex2.core.DeviceStateStore;
+import com.ex2.core.DeviceType;
+import com.ex2.core.DeviceSnapshot;
+import com.ex2.core.DeviceSpec;
+import com.ex2.core.DeviceTypeRegistry;
+import com.ex2.core.ProvisioningReport;
+import com.ex2.core.SmartHomeHost;
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.core.StatusCursor;
+import com.ex2.devices.Light;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for the columnar device state store.
+ */
+class DeviceStateStoreTest {
+    private static final int FLEET_SIZE = 1_000_000;
+
+    @Test
+    void testDeviceState() {
+        DeviceStateStore store = new DeviceStateStore(4);
+        int light = store.add("light", "store_light");
+        int lock = store.add("doorlock", "store_lock");
+        int thermostat = store.add("thermostat", "store_thermostat");
+
+        assertEquals("off", store.view(light).getStatus());
+        assertEquals("locked", store.view(lock).getStatus());
+        assertEquals("set to 70°F", store.view(thermostat).getStatus());
+
+        Device view = store.get("store_light");
+        view.turnOn();
+        assertTrue(store.isOn(light));
+        assertEquals("on", view.getStatus());
+        assertEquals("light", view.getType());
+        store.turnOff(lock);
+        assertEquals("unlocked", store.get("store_lock").getStatus());
+        store.setTemperature(thermostat, 65);
+        assertEquals(65, store.getTemperature(thermostat));
+        assertThrows(IllegalArgumentException.class, () -> store.setTemperature(thermostat, 100));
+        assertThrows(IllegalArgumentException.class, () -> store.setTemperature(light, 65));
+        assertEquals(1, store.countOn("light"));
+        assertEquals(0, store.countOn("doorlock"));
+    }
+
+    @Test
+    void testAddAndRemove() {
+        DeviceStateStore store = new DeviceStateStore(2);
+        store.add("light", "a");
+        int b = store.add("light", "b");
+        assertThrows(IllegalArgumentException.class, () -> store.add("light", "a"));
+        assertThrows(IllegalStateException.class, () -> store.add("light", "c"));
+        assertThrows(IllegalArgumentException.class, () -> new DeviceStateStore(1).add("fan", "f"));
+
+        store.remove("b");
+        assertEquals(-1, store.slotOf("b"));
+        assertThrows(IllegalArgumentException.class, () -> store.view(b));
+        assertThrows(IllegalArgumentException.class, () -> store.remove("b"));
+        for (int i = 0; i < 10; i++) {
+            store.add("thermostat", "t" + i);
+            assertEquals("set to 70°F", store.get("t" + i).getStatus());
+            store.remove("t" + i);
+        }
+        assertEquals(1, store.size());
+        assertEquals(0, store.slotOf("a"));
+    }
+
+    @Test
+    void testTypesComeFromRegistry() throws Exception {
+        DeviceTypeRegistry registry = DeviceTypeRegistry.load(getClass().getClassLoader());
+        registry.register(new DeviceType("fan", EnumSet.of(DeviceCapability.SWITCHABLE), "spinning", "still") {
+            @Override
+            public Device create(String id, DeviceObserver changeListener) {
+                return new Light(id);
+            }
+        });
+        DeviceStateStore store = new DeviceStateStore(2, registry);
+        int fan = store.add("Fan", "store_fan");
+        assertEquals("still", store.view(fan).getStatus());
+        store.turnOn(fan);
+        assertEquals(1, store.countOn("fan"));
+        StringBuilder out = new StringBuilder();
+        store.writeStatus(out);
+        assertEquals("fan store_fan is spinning\n", out.toString());
+        assertThrows(IllegalArgumentException.class, () -> store.setTemperature(fan, 70));
+        assertThrows(IllegalArgumentException.class, () -> new DeviceStateStore(1).add("fan", "store_fan"));
+    }
+
+    @Test
+    void testWriteStatus() throws Exception {
+        DeviceStateStore store = new DeviceStateStore(3);
+        store.add("light", "l");
+        store.add("doorlock", "d");
+        StringBuilder out = new StringBuilder();
+        store.writeStatus(out);
+        assertEquals("light l is off\ndoorlock d is locked\n", out.toString());
+    }
+
+    @Test
+    void testStoreIsSmallerThanDeviceObjectsAtOneMillionDevices() {
+        String[] ids = new String[FLEET_SIZE];
+        for (int i = 0; i < FLEET_SIZE; i++) {
+            ids[i] = "fleet_light_" + i;
+        }
+        long baseline = usedHeap();
+        DeviceStateStore store = new DeviceStateStore(FLEET_SIZE);
+        long columnBytes = store.getColumnBytes();
+        for (String id : ids) {
+            store.add("light", id);
+        }
+        long storeBytes = usedHeap() - baseline;
+        assertEquals(columnBytes, store.getColumnBytes(), "Columns are allocated once, up front");
+
+        baseline = usedHeap();
+        Map<String, DeviceProxy> devices = new ConcurrentHashMap<>();
+        for (String id : ids) {
+            devices.put(id, new DeviceProxy(new Light(id)));
+        }
+        long objectBytes = usedHeap() - baseline;
+
+        assertEquals(FLEET_SIZE, store.size());
+        assertEquals(FLEET_SIZE, devices.size());
+        assertTrue(storeBytes * 4 < objectBytes, "State store uses " + storeBytes / FLEET_SIZE
+                + " bytes per device, device objects " + objectBytes / FLEET_SIZE);
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        long used = Long.MAX_VALUE;
+        // Collect until the heap stops shrinking, so only reachable objects are counted
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            long current = runtime.totalMemory() - runtime.freeMemory();
+            if (current >= used) {
+                break;
+            }
+            used = current;
+        }
+        return used;
+    }
+
+    @Test
+    void testSystemKeepsDevicesInStore() {
+        SmartHomeHost host = new SmartHomeHost(1);
+        try {
+            SmartHomeSystem home = host.openHome("store_home");
+            home.useStateStore(100);
+            List<Device> updates = new CopyOnWriteArrayList<>();
+            home.addObserver(updates::add);
+            ProvisioningReport report = home.importDevices(Stream.of(
+                    new DeviceSpec("light", "store_hall"),
+                    new DeviceSpec("thermostat", "store_heater"),
+                    new DeviceSpec("light", "store_hall"),
+                    new DeviceSpec("fan", "store_fan")));
+            home.addDevice("light", "store_porch");
+            assertEquals(2, report.getAdded());
+            assertEquals(1, report.getDuplicates());
+            assertEquals(1, report.getInvalid());
+            assertEquals(List.of("store_hall", "store_heater", "store_porch"), updates.stream().map(Device::getId).toList());
+
+            DeviceStateStore store = home.getStateStore();
+            assertEquals(3, store.size());
+            home.turnOn("store_hall");
+            assertTrue(store.isOn(store.slotOf("store_hall")));
+            home.addTrigger("store_heater > 75", "turnOn(store_porch)");
+            home.setTemperature("store_heater", 80);
+            assertEquals(80, store.getTemperature(store.slotOf("store_heater")));
+            assertEquals(2, store.countOn("light"));
+            assertThrows(IllegalArgumentException.class, () -> home.setTemperature("store_heater", 200));
+            assertThrows(IllegalArgumentException.class, () -> home.addDevice("light", "store_heater"));
+            assertEquals("light store_hall is on\nthermostat store_heater is set to 80°F\nlight store_porch is on\n", home.getStatus());
+
+            StatusCursor cursor = home.openStatusCursor("light");
+            home.removeDevice("store_porch");
+            assertEquals(-1, store.slotOf("store_porch"));
+            assertEquals(List.of("store_hall"), cursor.next(10).stream().map(DeviceSnapshot::getId).toList());
+            assertEquals(List.of("set to 80°F"), home.streamStatus("thermostat").map(DeviceSnapshot::getStatus).toList());
+            assertTrue(home.listTriggers().isBlank());
+
+            assertThrows(IllegalStateException.class, () -> home.useStateStore(100));
+            assertThrows(IllegalStateException.class, () -> home.enablePersistence(Path.of("target"), false));
+        } finally {
+            host.shutdown();
+        }
+    }
+}
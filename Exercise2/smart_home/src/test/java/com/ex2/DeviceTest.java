@@ -8,6 +8,7 @@ import com.ex2.devices.DoorLock;
 import com.ex2.devices.Light;
 import com.ex2.devices.Thermostat;
 import com.ex2.core.Device;
+import com.ex2.core.DeviceAuditEvent;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -52,4 +53,13 @@ class DeviceTest {
         doorLock.turnOn();
         assertEquals("locked", doorLock.getStatus());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testDeviceAuditEventFormat() {
+        DeviceAuditEvent event = new DeviceAuditEvent("test_light", "light", "turnOn", "on");
+        assertEquals("device=test_light type=light action=turnOn status=on", event.getFormattedMessage());
+        StringBuilder buffer = new StringBuilder("> ");
+        event.formatTo(buffer);
+        assertEquals("> " + event.getFormattedMessage(), buffer.toString());
+    }
+}
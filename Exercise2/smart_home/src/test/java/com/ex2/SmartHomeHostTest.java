@@ -0,0 +1,158 @@
+package com.ex2;
+
+import org.junit.jupiter.api.*;
+
+import com.ex2.core.Device;
+import com.ex2.core.DeviceCommand;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.ExecutionMode;
+import com.ex2.core.SmartHomeHost;
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.core.TriggerEvaluationMode;
+import com.ex2.devices.Thermostat;
+
+import java.time.LocalTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Test class for hosting the homes of several tenants.
+ */
+class SmartHomeHostTest {
+    private SmartHomeHost host;
+
+    @BeforeEach
+    void setUp() {
+        host = new SmartHomeHost(2);
+    }
+
+    @AfterEach
+    void tearDown() {
+        host.shutdown();
+    }
+
+    @Test
+    void testHomesAreIsolated() throws Exception {
+        SmartHomeSystem first = host.openHome("tenant_a");
+        SmartHomeSystem second = host.openHome("tenant_b");
+        assertNotSame(first, second);
+        assertSame(first, host.openHome("tenant_a"));
+        assertNotSame(SmartHomeSystem.getInstance(), first);
+        assertEquals("tenant_a", first.getTenantId());
+
+        host.submit("tenant_a", home -> home.addDevice("light", "kitchen")).get(5, TimeUnit.SECONDS);
+        host.submit("tenant_b", home -> home.addDevice("light", "kitchen")).get(5, TimeUnit.SECONDS);
+        host.execute("tenant_a", home -> home.turnOn("kitchen"));
+
+        assertTrue(host.submit("tenant_a", home -> home.getStatus()).get(5, TimeUnit.SECONDS).contains("kitchen is on"));
+        assertTrue(host.submit("tenant_b", home -> home.getStatus()).get(5, TimeUnit.SECONDS).contains("kitchen is off"));
+        assertFalse(SmartHomeSystem.getInstance().getStatus().contains(" kitchen "));
+        assertEquals(2, host.getHomeCount());
+    }
+
+    @Test
+    void testThermostatPublishesToOwningHome() throws Exception {
+        SmartHomeSystem home = host.openHome("tenant_thermostat");
+        List<Device> updates = new CopyOnWriteArrayList<>();
+        DeviceObserver observer = updates::add;
+        SmartHomeSystem.getInstance().addObserver(observer);
+        try {
+            host.submit("tenant_thermostat", system -> {
+                system.addDevice("thermostat", "hall");
+                system.addDevice("light", "fan");
+                system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+                system.addTrigger("hall > 80", "turnOn(fan)");
+                system.setTemperature("hall", 85);
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+            assertTrue(home.getStatus().contains("fan is on"));
+            assertTrue(updates.stream().noneMatch(device -> device.getId().equals("hall")),
+                    "A home's thermostat should not publish to the default instance");
+        } finally {
+            SmartHomeSystem.getInstance().removeObserver(observer);
+        }
+    }
+
+    @Test
+    void testUnboundThermostatPublishesToHomeItIsAddedTo() throws Exception {
+        SmartHomeSystem home = host.openHome("tenant_unbound");
+        Thermostat thermostat = new Thermostat("attic");
+        List<Device> homeUpdates = new CopyOnWriteArrayList<>();
+        List<Device> defaultUpdates = new CopyOnWriteArrayList<>();
+        DeviceObserver defaultObserver = defaultUpdates::add;
+        SmartHomeSystem.getInstance().addObserver(defaultObserver);
+        try {
+            host.submit("tenant_unbound", system -> {
+                system.addDevice(thermostat);
+                system.addObserver(homeUpdates::add);
+                return null;
+            }).get(5, TimeUnit.SECONDS);
+            thermostat.setTemperature(82);
+            assertTrue(homeUpdates.stream().anyMatch(device -> device.getId().equals("attic")));
+            assertTrue(defaultUpdates.stream().noneMatch(device -> device.getId().equals("attic")),
+                    "A thermostat added to a home should not publish to the default instance");
+            assertTrue(home.getStatus().contains("attic is set to 82°F"));
+        } finally {
+            SmartHomeSystem.getInstance().removeObserver(defaultObserver);
+        }
+    }
+
+    @Test
+    void testScheduleAndLoopCommandShareDevice() throws Exception {
+        SmartHomeSystem home = host.openHome("tenant_schedule");
+        host.submit("tenant_schedule", system -> system.addDevice("light", "porch")).get(5, TimeUnit.SECONDS);
+        CountDownLatch scheduled = new CountDownLatch(1);
+        home.addObserver(device -> {
+            if (device.getStatus().equals("on") && scheduled.getCount() > 0) {
+                // A command for the light reaches the loop while the scheduled command still holds it
+                host.execute("tenant_schedule", system -> system.turnOff("porch"));
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                scheduled.countDown();
+            }
+        });
+        home.setSchedule("porch", LocalTime.now().plusSeconds(1), true);
+
+        assertTrue(scheduled.await(5, TimeUnit.SECONDS));
+        assertTrue(host.submit("tenant_schedule", system -> system.getStatus()).get(5, TimeUnit.SECONDS).contains("porch is off"));
+    }
+
+    @Test
+    void testVirtualThreadBatchOnLoop() throws Exception {
+        host.openHome("tenant_batch");
+        String status = host.submit("tenant_batch", system -> {
+            system.addDevice("light", "hall");
+            system.addDevice("light", "stairs");
+            system.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+            system.applyBatch(List.of(DeviceCommand.turnOn("hall"), DeviceCommand.turnOn("stairs")));
+            return system.getStatus();
+        }).get(5, TimeUnit.SECONDS);
+        assertTrue(status.contains("hall is on") && status.contains("stairs is on"));
+    }
+
+    @Test
+    void testHomesAreShardedByTenant() {
+        for (int i = 0; i < 20; i++) {
+            host.openHome("shard_" + i);
+        }
+        assertEquals(2, host.getEventLoopCount());
+        assertEquals(host.getEventLoopIndex("shard_3"), host.getEventLoopIndex("shard_3"));
+        assertTrue(host.getEventLoopIndex("shard_3") < 2);
+
+        assertTrue(host.closeHome("shard_3"));
+        assertFalse(host.closeHome("shard_3"));
+        assertThrows(IllegalArgumentException.class, () -> host.getHome("shard_3"));
+        assertEquals(19, host.getHomeCount());
+
+        host.shutdown();
+        assertThrows(IllegalStateException.class, () -> host.openHome("late"));
+        assertThrows(IllegalArgumentException.class, () -> new SmartHomeHost(0));
+    }
+}
@@ -2,13 +2,35 @@ package com.ex2;
 
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import com.ex2.core.ChangeFeed;
+import com.ex2.core.Device;
+import com.ex2.core.DeviceCommand;
+import com.ex2.core.DeviceHandle;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.DeviceSnapshot;
+import com.ex2.core.ExecutionMode;
+import com.ex2.core.ProvisioningReport;
+import com.ex2.core.Schedule;
+import com.ex2.core.ScriptReport;
 import com.ex2.core.SmartHomeSystem;
+import com.ex2.core.StatusCursor;
+import com.ex2.core.TriggerEvaluationMode;
 
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Path;
 import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -26,6 +48,16 @@ class SmartHomeSystemTest {
         system = SmartHomeSystem.getInstance();
     }
 
+    private String statusOf(String id) {
+        for (String line : system.getStatus().split("\n")) {
+            String[] parts = line.split(" ");
+            if (parts[1].equals(id)) {
+                return parts[3];
+            }
+        }
+        return fail("No status for device " + id);
+    }
+
     @Test
     void testAddDevice() {
         system.addDevice("light", "test_light");
@@ -54,7 +86,7 @@ class SmartHomeSystemTest {
     void testTurnOnDevice() {
         system.addDevice("light", "on_light");
         system.turnOn("on_light");
-        assertEquals("on", system.getStatus().split("\n")[0].split(" ")[3]);
+        assertEquals("on", statusOf("on_light"));
     }
 
     @Test
@@ -62,7 +94,7 @@ class SmartHomeSystemTest {
         system.addDevice("light", "off_light");
         system.turnOn("off_light");
         system.turnOff("off_light");
-        assertEquals("off", system.getStatus().split("\n")[0].split(" ")[3]);
+        assertEquals("off", statusOf("off_light"));
     }
 
     @Test
@@ -89,4 +121,729 @@ class SmartHomeSystemTest {
         system.addDevice("thermostat", "action_thermostat");
         assertThrows(IllegalArgumentException.class, () -> system.addTrigger("action_thermostat > 75", "invalidAction(some_device)"));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testTriggerFiresOnTemperatureChange() {
+        system.addDevice("thermostat", "fire_thermostat");
+        system.addDevice("light", "fire_light");
+        system.addTrigger("fire_thermostat > 75", "turnOn(fire_light)");
+        system.setTemperature("fire_thermostat", 80);
+        assertTrue(system.getStatus().contains("light fire_light is on"));
+    }
+
+    @Test
+    void testUnsupportedTriggerConditionDevice() {
+        system.addDevice("light", "condition_light");
+        assertThrows(IllegalArgumentException.class, () -> system.addTrigger("condition_light > 1", "turnOn(condition_light)"));
+    }
+
+    @Test
+    void testCombinedTriggerConditions() {
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+        try {
+            system.addDevice("thermostat", "expr_thermostat");
+            system.addDevice("doorlock", "expr_door");
+            system.addDevice("light", "expr_light");
+            system.addDevice("light", "expr_porch");
+            system.addTrigger("expr_thermostat > 75 && expr_door == unlocked", "turnOn(expr_light)");
+            system.addTrigger("!(expr_light == off) || (expr_thermostat <= 40)", "turnOn(expr_porch)");
+            system.setTemperature("expr_thermostat", 80);
+            assertEquals("off", statusOf("expr_light"));
+            system.turnOff("expr_door");
+            assertEquals("on", statusOf("expr_light"));
+            assertEquals("on", statusOf("expr_porch"));
+
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("expr_door > 1", "turnOn(expr_light)"));
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("expr_light == locked", "turnOn(expr_light)"));
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("expr_thermostat > 75 &&", "turnOn(expr_light)"));
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("(expr_thermostat > 75", "turnOn(expr_light)"));
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("expr_thermostat == 75 hysteresis 2", "turnOn(expr_light)"));
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("time between 25:00 and 06:00", "turnOn(expr_light)"));
+        } finally {
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+            system.removeDevice("expr_thermostat");
+            system.removeDevice("expr_door");
+            system.removeDevice("expr_light");
+            system.removeDevice("expr_porch");
+        }
+    }
+
+    @Test
+    void testHysteresisAndSetTemperatureAction() {
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+        try {
+            system.addDevice("thermostat", "band_thermostat");
+            system.addDevice("thermostat", "band_target");
+            system.addDevice("light", "band_fan");
+            system.addTrigger("band_thermostat > 75 hysteresis 3", "turnOn(band_fan)");
+            system.addTrigger("band_thermostat > 75 hysteresis 3", "setTemperature(band_target, 65)");
+            system.setTemperature("band_thermostat", 76);
+            assertEquals("on", statusOf("band_fan"));
+            assertTrue(system.getStatus().contains("thermostat band_target is set to 65°F"));
+
+            system.turnOff("band_fan");
+            system.setTemperature("band_thermostat", 74);
+            system.setTemperature("band_thermostat", 76);
+            assertEquals("off", statusOf("band_fan"), "Dipping inside the band must not re-fire the trigger");
+            system.setTemperature("band_thermostat", 72);
+            system.setTemperature("band_thermostat", 76);
+            assertEquals("on", statusOf("band_fan"));
+
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("band_thermostat > 80", "setTemperature(band_fan, 65)"));
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("band_thermostat > 80", "setTemperature(band_target, 100)"));
+            assertThrows(IllegalArgumentException.class, () -> system.addTrigger("band_thermostat > 80", "setTemperature(band_target)"));
+        } finally {
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+            system.removeDevice("band_thermostat");
+            system.removeDevice("band_target");
+            system.removeDevice("band_fan");
+        }
+    }
+
+    @Test
+    void testRuleNetworkEvaluation() {
+        system.addDevice("thermostat", "net_thermostat");
+        system.addDevice("doorlock", "net_door");
+        system.addDevice("light", "net_light");
+        system.addDevice("light", "net_fan");
+        system.addDevice("light", "net_porch");
+        system.addTrigger("net_thermostat > 75 && net_door == unlocked", "turnOn(net_light)");
+        system.addTrigger("net_thermostat >= 76", "turnOn(net_fan)");
+        system.addTrigger("!(net_thermostat > 75)", "turnOff(net_fan)");
+        LocalTime now = LocalTime.now();
+        system.addTrigger("time between " + now.minusMinutes(2).toString().substring(0, 5) + " and "
+                + now.plusMinutes(2).toString().substring(0, 5) + " && net_door == unlocked", "turnOn(net_porch)");
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.RULE_NETWORK);
+        try {
+            system.setTemperature("net_thermostat", 80);
+            assertEquals("on", statusOf("net_fan"));
+            assertEquals("off", statusOf("net_light"));
+            system.turnOff("net_door");
+            assertEquals("on", statusOf("net_light"));
+            assertEquals("on", statusOf("net_porch"));
+
+            system.setTemperature("net_thermostat", 70);
+            assertEquals("off", statusOf("net_fan"));
+            system.setTemperature("net_thermostat", 78);
+            assertEquals("on", statusOf("net_fan"));
+
+            system.turnOff("net_light");
+            system.turnOn("net_door");
+            system.turnOff("net_door");
+            assertEquals("on", statusOf("net_light"), "The trigger should re-fire after its condition was reset");
+
+            system.removeTrigger("net_thermostat >= 76", "turnOn(net_fan)");
+            system.setTemperature("net_thermostat", 70);
+            system.turnOff("net_fan");
+            system.setTemperature("net_thermostat", 80);
+            assertEquals("off", statusOf("net_fan"));
+        } finally {
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+            system.removeDevice("net_thermostat");
+            system.removeDevice("net_door");
+            system.removeDevice("net_light");
+            system.removeDevice("net_fan");
+            system.removeDevice("net_porch");
+        }
+    }
+
+    @Test
+    void testRuleNetworkMatchesLinearEvaluation() {
+        String[] operators = {">", "<", ">=", "<=", "==", "!="};
+        for (int t = 0; t < 3; t++) {
+            system.addDevice("thermostat", "equiv_thermostat_" + t);
+        }
+        List<String> fired = new ArrayList<>();
+        try {
+            for (TriggerEvaluationMode mode : new TriggerEvaluationMode[] {TriggerEvaluationMode.EVENT_DRIVEN, TriggerEvaluationMode.RULE_NETWORK}) {
+                java.util.Random random = new java.util.Random(42);
+                for (int i = 0; i < 40; i++) {
+                    system.addDevice("light", "equiv_light_" + i);
+                    String condition = "equiv_thermostat_" + random.nextInt(3) + " " + operators[random.nextInt(6)] + " " + (60 + random.nextInt(10));
+                    if (random.nextBoolean()) {
+                        condition = "(" + condition + (random.nextBoolean() ? " && " : " || ") + "!(equiv_thermostat_"
+                                + random.nextInt(3) + " > " + (60 + random.nextInt(10)) + "))";
+                    }
+                    system.addTrigger(condition, "turnOn(equiv_light_" + i + ")");
+                }
+                system.setTriggerEvaluationMode(mode);
+                system.checkTriggers();
+                StringBuilder states = new StringBuilder();
+                for (int step = 0; step < 200; step++) {
+                    system.setTemperature("equiv_thermostat_" + random.nextInt(3), 58 + random.nextInt(14));
+                    for (int i = 0; i < 40; i++) {
+                        states.append(statusOf("equiv_light_" + i).equals("on") ? '1' : '0');
+                        system.turnOff("equiv_light_" + i);
+                    }
+                }
+                fired.add(states.toString());
+                system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+                for (int i = 0; i < 40; i++) {
+                    system.removeDevice("equiv_light_" + i);
+                }
+                for (int t = 0; t < 3; t++) {
+                    system.setTemperature("equiv_thermostat_" + t, 70);
+                }
+            }
+        } finally {
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+            for (int t = 0; t < 3; t++) {
+                system.removeDevice("equiv_thermostat_" + t);
+            }
+        }
+        assertTrue(fired.get(0).contains("1"));
+        assertEquals(fired.get(0), fired.get(1));
+    }
+
+    @Test
+    void testTimeWindowCondition() {
+        system.addDevice("light", "window_light");
+        try {
+            LocalTime now = LocalTime.now();
+            String start = now.minusMinutes(2).toString().substring(0, 5);
+            String end = now.plusMinutes(2).toString().substring(0, 5);
+            system.addTrigger("time between " + start + " and " + end, "turnOn(window_light)");
+            system.checkTriggers();
+            assertEquals("on", statusOf("window_light"));
+        } finally {
+            system.removeDevice("window_light");
+        }
+    }
+
+    @Test
+    void testRemoveDeviceRemovesItsTriggers() {
+        system.addDevice("thermostat", "index_thermostat");
+        system.addDevice("light", "index_light");
+        system.addTrigger("index_thermostat < 50", "turnOff(index_light)");
+        system.removeDevice("index_light");
+        assertFalse(system.listTriggers().contains("index_thermostat < 50"));
+    }
+
+    @Test
+    void testEventDrivenTriggerEvaluation() {
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+        try {
+            system.addDevice("thermostat", "event_thermostat");
+            system.addDevice("light", "event_light");
+            long fired = system.getTriggerMetrics().getFiredCount();
+            system.addTrigger("event_thermostat < 75", "turnOn(event_light)");
+            assertEquals("on", statusOf("event_light"));
+            assertTrue(system.getTriggerMetrics().getFiredCount() > fired);
+        } finally {
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+        }
+    }
+
+    @Test
+    void testApplyBatch() {
+        system.addDevice("light", "batch_light_1");
+        system.addDevice("light", "batch_light_2");
+        system.addDevice("thermostat", "batch_thermostat");
+        AtomicInteger batches = new AtomicInteger();
+        AtomicInteger devicesNotified = new AtomicInteger();
+        DeviceObserver observer = new DeviceObserver() {
+            @Override
+            public void update(Device device) {
+            }
+
+            @Override
+            public void updateAll(Collection<? extends Device> devices) {
+                batches.incrementAndGet();
+                devicesNotified.addAndGet(devices.size());
+            }
+        };
+        system.addObserver(observer);
+        try {
+            system.applyBatch(Arrays.asList(
+                DeviceCommand.turnOn("batch_light_1"),
+                DeviceCommand.turnOn("batch_light_2"),
+                DeviceCommand.turnOff("batch_light_1"),
+                DeviceCommand.setTemperature("batch_thermostat", 65)));
+        } finally {
+            system.removeObserver(observer);
+        }
+        assertEquals(1, batches.get());
+        assertEquals(3, devicesNotified.get());
+        assertEquals("off", statusOf("batch_light_1"));
+        assertEquals("on", statusOf("batch_light_2"));
+    }
+
+    @Test
+    void testInvalidBatchIsRejected() {
+        system.addDevice("light", "reject_light");
+        assertThrows(IllegalArgumentException.class, () -> system.applyBatch(Arrays.asList(
+            DeviceCommand.turnOn("reject_light"),
+            DeviceCommand.setTemperature("reject_light", 70))));
+        assertEquals("off", statusOf("reject_light"));
+    }
+
+    @Test
+    void testSetTemperatureNotifiesOnce() {
+        system.addDevice("thermostat", "notify_thermostat");
+        AtomicInteger updates = new AtomicInteger();
+        DeviceObserver observer = device -> {
+            if (device.getId().equals("notify_thermostat")) {
+                updates.incrementAndGet();
+            }
+        };
+        system.addObserver(observer);
+        try {
+            system.setTemperature("notify_thermostat", 72);
+        } finally {
+            system.removeObserver(observer);
+        }
+        assertEquals(1, updates.get());
+    }
+
+    @Test
+    void testChangeFeedKeepsLatestState() {
+        system.addDevice("thermostat", "feed_thermostat");
+        ChangeFeed feed = system.subscribeChangeFeed();
+        try {
+            system.setTemperature("feed_thermostat", 60);
+            system.setTemperature("feed_thermostat", 62);
+            system.setTemperature("feed_thermostat", 64);
+        } finally {
+            system.removeObserver(feed);
+        }
+        List<DeviceSnapshot> changes = feed.drain();
+        assertEquals(1, changes.size());
+        assertEquals("set to 64°F", changes.get(0).getStatus());
+        assertEquals(2, feed.getCoalescedCount());
+        assertNull(feed.poll());
+    }
+
+    @Test
+    void testScheduleRunsAndCanBeCancelled() throws InterruptedException {
+        system.addDevice("light", "wheel_light");
+        system.setSchedule("wheel_light", LocalTime.now().plusSeconds(1), true);
+        Schedule cancelled = system.setSchedule("wheel_light", LocalTime.now().plusHours(1), false);
+        system.cancelSchedule(cancelled.getId());
+        assertFalse(system.listSchedules().contains("#" + cancelled.getId() + " "));
+        assertThrows(IllegalArgumentException.class, () -> system.cancelSchedule(cancelled.getId()));
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!statusOf("wheel_light").equals("on") && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertEquals("on", statusOf("wheel_light"));
+    }
+
+    @Test
+    void testRemoveDeviceCancelsSchedules() {
+        system.addDevice("light", "unscheduled_light");
+        Schedule schedule = system.setSchedule("unscheduled_light", LocalTime.of(6, 30), true);
+        system.removeDevice("unscheduled_light");
+        assertTrue(schedule.isCancelled());
+    }
+
+    @Test
+    void testVirtualThreadBatchKeepsPerDeviceOrder() {
+        system.setExecutionMode(ExecutionMode.VIRTUAL_THREADS);
+        try {
+            List<DeviceCommand> commands = new ArrayList<>();
+            for (int d = 0; d < 20; d++) {
+                system.addDevice("light", "vt_light_" + d);
+            }
+            for (int c = 0; c < 51; c++) {
+                for (int d = 0; d < 20; d++) {
+                    commands.add(c % 2 == 0 ? DeviceCommand.turnOn("vt_light_" + d) : DeviceCommand.turnOff("vt_light_" + d));
+                }
+            }
+            system.applyBatch(commands);
+            for (int d = 0; d < 20; d++) {
+                assertEquals("on", statusOf("vt_light_" + d));
+            }
+        } finally {
+            system.setExecutionMode(ExecutionMode.DIRECT);
+        }
+    }
+
+    @Test
+    void testStreamingStatus() throws Exception {
+        system.addDevice("doorlock", "stream_lock_a");
+        system.addDevice("doorlock", "stream_lock_b");
+        system.turnOn("stream_lock_a");
+        List<DeviceSnapshot> locks = system.streamStatus("doorlock")
+                .filter(snapshot -> snapshot.getId().startsWith("stream_lock_"))
+                .collect(Collectors.toList());
+        assertEquals(2, locks.size());
+        assertTrue(system.streamStatus().anyMatch(snapshot -> snapshot.getId().equals("stream_lock_a") && snapshot.getStatus().equals("locked")));
+
+        long lockCount = system.streamStatus("DoorLock").count();
+        assertEquals(system.streamStatus("doorlock").count(), lockCount);
+        StatusCursor cursor = system.openStatusCursor("DOORLOCK");
+        assertEquals(lockCount, cursor.getRemaining());
+        List<DeviceSnapshot> firstPage = cursor.next(1);
+        assertEquals(1, firstPage.size());
+        system.addDevice("doorlock", "stream_lock_c");
+        List<DeviceSnapshot> rest = cursor.next(Integer.MAX_VALUE);
+        assertEquals(lockCount - 1, rest.size(), "Devices added after opening are not paged");
+        assertFalse(cursor.hasNext());
+        assertTrue(cursor.next(10).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> cursor.next(0));
+
+        StatusCursor pruned = system.openStatusCursor("doorlock");
+        system.removeDevice("stream_lock_c");
+        assertTrue(pruned.next(Integer.MAX_VALUE).stream().noneMatch(snapshot -> snapshot.getId().equals("stream_lock_c")),
+                "Devices removed after opening are skipped");
+
+        StringWriter out = new StringWriter();
+        system.writeStatus(out, "doorlock");
+        assertTrue(out.toString().contains("doorlock stream_lock_a is locked\n"));
+        assertFalse(out.toString().contains("light "));
+        system.removeDevice("stream_lock_a");
+        system.removeDevice("stream_lock_b");
+    }
+
+    @Test
+    void testDeviceHandles() {
+        DeviceHandle light = system.addDevice("light", "handle_light");
+        DeviceHandle thermostat = system.addDevice("thermostat", "handle_thermostat");
+        assertTrue(light.isValid());
+        assertSame(light, system.getHandle("handle_light"));
+
+        system.turnOn(light);
+        assertEquals("on", statusOf("handle_light"));
+        system.setTemperature(thermostat, 66);
+        assertEquals("set", statusOf("handle_thermostat"));
+        assertTrue(system.getStatus().contains("thermostat handle_thermostat is set to 66°F"));
+        assertThrows(IllegalArgumentException.class, () -> system.setTemperature(light, 66));
+        Schedule schedule = system.setSchedule(light, LocalTime.of(5, 0), false);
+        assertEquals("handle_light", schedule.getDeviceId());
+
+        system.removeDevice("handle_light");
+        assertFalse(light.isValid());
+        assertTrue(schedule.isCancelled());
+        assertThrows(IllegalArgumentException.class, () -> system.turnOn(light));
+        assertThrows(IllegalArgumentException.class, () -> system.setSchedule(light, LocalTime.of(5, 0), true));
+
+        DeviceHandle readded = system.addDevice("light", "handle_light");
+        assertNotSame(light, readded);
+        assertFalse(light.isValid());
+        system.turnOff(readded);
+        assertEquals("off", statusOf("handle_light"));
+        system.removeDevice("handle_light");
+        system.removeDevice("handle_thermostat");
+    }
+
+    @Test
+    void testPersistenceRecovery(@TempDir Path directory) throws Exception {
+        system.enablePersistence(directory, false);
+        try {
+            system.addDevice("light", "persist_light");
+            system.addDevice("thermostat", "persist_thermostat");
+            system.turnOn("persist_light");
+            system.setTemperature("persist_thermostat", 77);
+            system.addTrigger("persist_thermostat > 85", "turnOn(persist_light)");
+            system.setSchedule("persist_light", LocalTime.of(7, 15), true);
+            system.takeSnapshot();
+            system.turnOff("persist_light");
+            system.addDevice("doorlock", "persist_lock");
+            system.turnOff("persist_lock");
+            system.getJournal().sync();
+            assertTrue(system.getJournal().getCommitCount() <= system.getJournal().getAppendedCount());
+        } finally {
+            system.disablePersistence();
+        }
+        system.removeDevice("persist_light");
+        system.removeDevice("persist_thermostat");
+        system.removeDevice("persist_lock");
+
+        system.enablePersistence(directory, false);
+        try {
+            assertEquals("off", statusOf("persist_light"));
+            assertEquals("unlocked", statusOf("persist_lock"));
+            assertTrue(system.getStatus().contains("thermostat persist_thermostat is set to 77°F"));
+            assertTrue(system.listTriggers().contains("persist_thermostat > 85 -> turnOn(persist_light)"));
+            assertTrue(system.getSchedules().stream().anyMatch(schedule -> schedule.getDeviceId().equals("persist_light")
+                    && schedule.getTime().equals(LocalTime.of(7, 15)) && schedule.isTurnOn()));
+            assertThrows(IllegalStateException.class, () -> system.enablePersistence(directory, false));
+        } finally {
+            system.disablePersistence();
+            system.removeDevice("persist_light");
+            system.removeDevice("persist_thermostat");
+            system.removeDevice("persist_lock");
+        }
+    }
+
+    @Test
+    void testPersistenceKeepsDevicesAddedBeforeEnabling(@TempDir Path directory) throws Exception {
+        system.addDevice("light", "pre_light");
+        system.addDevice("thermostat", "pre_thermostat");
+        system.setTemperature("pre_thermostat", 66);
+        system.enablePersistence(directory, false);
+        try {
+            system.addDevice("light", "post_light");
+            system.turnOn("pre_light");
+        } finally {
+            system.disablePersistence();
+        }
+        system.removeDevice("pre_light");
+        system.removeDevice("pre_thermostat");
+        system.removeDevice("post_light");
+
+        system.enablePersistence(directory, false);
+        try {
+            assertEquals("on", statusOf("pre_light"));
+            assertEquals("off", statusOf("post_light"));
+            assertTrue(system.getStatus().contains("thermostat pre_thermostat is set to 66°F"));
+        } finally {
+            system.disablePersistence();
+            system.removeDevice("pre_light");
+            system.removeDevice("pre_thermostat");
+            system.removeDevice("post_light");
+        }
+    }
+
+    @Test
+    void testRecoveryReplaysSchedulesByIdWithoutNotifying(@TempDir Path directory) throws Exception {
+        system.enablePersistence(directory, false);
+        long kept;
+        try {
+            system.addDevice("light", "replay_light");
+            system.addDevice("thermostat", "replay_thermostat");
+            Schedule first = system.setSchedule("replay_light", LocalTime.of(6, 45), true);
+            Schedule second = system.setSchedule("replay_light", LocalTime.of(6, 45), true);
+            system.cancelSchedule(first.getId());
+            kept = second.getId();
+            system.addTrigger("replay_thermostat > 80", "turnOn(replay_light)");
+            system.setTemperature("replay_thermostat", 85);
+            system.turnOff("replay_light");
+        } finally {
+            system.disablePersistence();
+        }
+        system.removeDevice("replay_light");
+        system.removeDevice("replay_thermostat");
+
+        AtomicInteger notifications = new AtomicInteger();
+        DeviceObserver observer = device -> notifications.incrementAndGet();
+        system.addObserver(observer);
+        try {
+            system.enablePersistence(directory, false);
+            assertEquals(0, notifications.get(), "Replay should not notify observers");
+            assertEquals("off", statusOf("replay_light"), "Replay should not fire triggers");
+            List<Schedule> restored = system.getSchedules().stream()
+                    .filter(schedule -> schedule.getDeviceId().equals("replay_light"))
+                    .collect(Collectors.toList());
+            assertEquals(1, restored.size());
+            assertEquals(kept, restored.get(0).getId());
+        } finally {
+            system.removeObserver(observer);
+            system.disablePersistence();
+            system.removeDevice("replay_light");
+            system.removeDevice("replay_thermostat");
+        }
+    }
+
+    @Test
+    void testBinarySnapshot(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("devices.bin");
+        system.addDevice("light", "binary_light");
+        system.addDevice("light", "binary_spare");
+        system.addDevice("thermostat", "binary_thermostat");
+        system.addDevice("doorlock", "binary_lock");
+        system.setTemperature("binary_thermostat", 64);
+        system.turnOff("binary_lock");
+        system.turnOn("binary_spare");
+        system.addTrigger("binary_thermostat < 60", "turnOn(binary_light)");
+        system.writeBinarySnapshot(file);
+        system.removeTrigger("binary_thermostat < 60", "turnOn(binary_light)");
+        system.removeDevice("binary_light");
+        system.removeDevice("binary_spare");
+        system.removeDevice("binary_thermostat");
+        system.removeDevice("binary_lock");
+        system.addDevice("doorlock", "binary_lock");
+
+        try {
+            assertTrue(system.loadBinarySnapshot(file) >= 4);
+            assertEquals(1, system.getLazyDeviceCount(), "Only the device no trigger refers to should still be lazy");
+            assertThrows(IllegalStateException.class, () -> system.loadBinarySnapshot(file));
+            assertThrows(IllegalArgumentException.class, () -> system.addDevice("light", "binary_spare"));
+            assertEquals(0, system.getLazyDeviceCount());
+
+            assertEquals("on", statusOf("binary_spare"));
+            assertEquals("off", statusOf("binary_light"));
+            assertEquals("locked", statusOf("binary_lock"));
+            assertTrue(system.listTriggers().contains("binary_thermostat < 60 -> turnOn(binary_light)"));
+            system.setTemperature("binary_thermostat", 55);
+            assertEquals("on", statusOf("binary_light"));
+        } finally {
+            system.removeTrigger("binary_thermostat < 60", "turnOn(binary_light)");
+            system.removeDevice("binary_light");
+            system.removeDevice("binary_spare");
+            system.removeDevice("binary_thermostat");
+            system.removeDevice("binary_lock");
+        }
+    }
+
+    @Test
+    void testTriggerCascadeRunsBreadthFirst() {
+        for (int i = 1; i <= 5; i++) {
+            system.addDevice("light", "cascade_light_" + i);
+        }
+        system.addTrigger("cascade_light_1 == on", "turnOn(cascade_light_2)");
+        system.addTrigger("cascade_light_1 == on", "turnOn(cascade_light_4)");
+        system.addTrigger("cascade_light_2 == on", "turnOn(cascade_light_3)");
+        system.addTrigger("cascade_light_4 == on", "turnOn(cascade_light_5)");
+        List<String> order = new ArrayList<>();
+        DeviceObserver observer = device -> {
+            if (device.getId().startsWith("cascade_light_")) {
+                order.add(device.getId());
+            }
+        };
+        system.addObserver(observer);
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+        long cascades = system.getCascadeMetrics().getCascadeCount();
+        try {
+            system.turnOn("cascade_light_1");
+            assertEquals(Arrays.asList("cascade_light_1", "cascade_light_2", "cascade_light_4", "cascade_light_3", "cascade_light_5"), order);
+            assertTrue(system.getCascadeMetrics().getCascadeCount() > cascades);
+            assertTrue(system.getCascadeMetrics().getMaxDepth() >= 2);
+        } finally {
+            system.removeObserver(observer);
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+            for (int i = 1; i <= 5; i++) {
+                system.removeDevice("cascade_light_" + i);
+            }
+        }
+    }
+
+    @Test
+    void testCyclicTriggersRejected() {
+        system.addDevice("light", "cycle_light_1");
+        system.addDevice("light", "cycle_light_2");
+        system.addDevice("light", "cycle_light_3");
+        try {
+            system.addTrigger("cycle_light_1 == on", "turnOff(cycle_light_2)");
+            system.addTrigger("cycle_light_2 == off", "turnOn(cycle_light_3)");
+            system.addTrigger("cycle_light_1 == off", "turnOn(cycle_light_1)");
+            IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                    () -> system.addTrigger("cycle_light_3 == on", "turnOff(cycle_light_1)"));
+            assertTrue(e.getMessage().contains("cycle"));
+            assertFalse(system.listTriggers().contains("cycle_light_3 == on"));
+        } finally {
+            system.removeDevice("cycle_light_1");
+            system.removeDevice("cycle_light_2");
+            system.removeDevice("cycle_light_3");
+        }
+    }
+
+    @Test
+    void testRunawayCascadeIsTruncated() {
+        system.addDevice("light", "runaway_light");
+        system.addDevice("light", "runaway_switch");
+        system.setTriggerCyclesAllowed(true);
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+        system.setCascadeLimits(8, 1000);
+        long truncated = system.getCascadeMetrics().getTruncatedCount();
+        try {
+            system.addTrigger("runaway_light == on", "turnOn(runaway_switch)");
+            system.addTrigger("runaway_switch == on", "turnOff(runaway_light)");
+            system.addTrigger("runaway_light == off", "turnOff(runaway_switch)");
+            system.addTrigger("runaway_switch == off", "turnOn(runaway_light)");
+            system.turnOn("runaway_light");
+            assertEquals(truncated + 1, system.getCascadeMetrics().getTruncatedCount());
+            assertTrue(system.getCascadeMetrics().getMaxDepth() >= 8);
+        } finally {
+            system.setCascadeLimits(32, 1000);
+            system.setTriggerEvaluationMode(TriggerEvaluationMode.POLLING);
+            system.setTriggerCyclesAllowed(false);
+            system.removeDevice("runaway_light");
+            system.removeDevice("runaway_switch");
+        }
+        assertThrows(IllegalArgumentException.class, () -> system.setCascadeLimits(0, 10));
+    }
+
+    @Test
+    void testRunScript() throws Exception {
+        String script = "# replayed traffic\r\n"
+                + "add light script_light\r\n"
+                + "add  thermostat\tscript_thermostat\n"
+                + "\n"
+                + "turnOn script_light\n"
+                + "setTemperature script_thermostat 72\n"
+                + "setTemperature script_thermostat 99999999999\n"
+                + "schedule script_light 07:30 TRUE\n"
+                + "turnOn missing_light\n"
+                + "dance script_light\n"
+                + "turnOff script_light";
+        try {
+            ScriptReport report = system.runScript(new StringReader(script));
+            assertEquals(9, report.commands());
+            assertEquals(3, report.errors());
+            assertEquals("line 7: Invalid number: 99999999999", report.firstError());
+            assertEquals("off", statusOf("script_light"));
+            assertTrue(system.getStatus().contains("thermostat script_thermostat is set to 72°F"));
+            assertTrue(system.getSchedules().stream().anyMatch(schedule -> schedule.getDeviceId().equals("script_light")
+                    && schedule.getTime().equals(LocalTime.of(7, 30)) && schedule.isTurnOn()));
+        } finally {
+            system.getSchedules().stream().filter(schedule -> schedule.getDeviceId().equals("script_light"))
+                    .forEach(schedule -> system.cancelSchedule(schedule.getId()));
+            system.removeDevice("script_light");
+            system.removeDevice("script_thermostat");
+        }
+    }
+
+    @Test
+    void testRunScriptStopsAtExit() throws Exception {
+        StringBuilder script = new StringBuilder("add light script_replay\n");
+        for (int i = 0; i < 10_001; i++) {
+            script.append(i % 2 == 0 ? "turnOn" : "turnOff").append(" script_replay\n");
+        }
+        script.append("exit\nremove script_replay\n");
+        try {
+            ScriptReport report = system.runScript(new StringReader(script.toString()));
+            assertEquals(10_003, report.commands());
+            assertEquals(0, report.errors());
+            assertNull(report.firstError());
+            assertEquals("on", statusOf("script_replay"));
+        } finally {
+            system.removeDevice("script_replay");
+        }
+    }
+
+    @Test
+    void testImportDevices(@TempDir Path directory) throws Exception {
+        Path inventory = directory.resolve("building.txt");
+        StringBuilder lines = new StringBuilder("# floor 1\n");
+        for (int i = 0; i < 25; i++) {
+            lines.append(i % 2 == 0 ? "light " : "thermostat,").append("import_device_").append(i).append("\n");
+        }
+        lines.append("light import_device_3\n").append("toaster import_toaster\n").append("light\n\n");
+        java.nio.file.Files.writeString(inventory, lines);
+        system.addDevice("doorlock", "import_device_24");
+
+        List<Integer> notifications = new ArrayList<>();
+        DeviceObserver observer = new DeviceObserver() {
+            @Override
+            public void update(Device device) {
+                notifications.add(1);
+            }
+
+            @Override
+            public void updateAll(Collection<? extends Device> devices) {
+                notifications.add(devices.size());
+            }
+        };
+        system.addObserver(observer);
+        System.setProperty("smarthome.provisionBatchSize", "10");
+        try {
+            ProvisioningReport report = system.importDevices(inventory);
+            assertEquals(24, report.getAdded());
+            assertEquals(2, report.getDuplicates());
+            assertEquals(2, report.getInvalid());
+            assertEquals(3, report.batches().size());
+            assertEquals(List.of(24), notifications, "Observers should be notified once with all added devices");
+            assertEquals("off", statusOf("import_device_0"));
+            assertTrue(system.getStatus().contains("thermostat import_device_1 is set to 70°F"));
+            assertEquals("locked", statusOf("import_device_24"));
+        } finally {
+            System.clearProperty("smarthome.provisionBatchSize");
+            system.removeObserver(observer);
+            for (int i = 0; i < 25; i++) {
+                system.removeDevice("import_device_" + i);
+            }
+        }
+    }
+}
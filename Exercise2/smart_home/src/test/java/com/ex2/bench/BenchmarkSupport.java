@@ -0,0 +1,28 @@
+package com.ex2.bench;
+
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.core.TriggerEvaluationMode;
+
+/**
+ * Shared setup for the JMH benchmarks.
+ */
+final class BenchmarkSupport {
+    /**
+     * JVM arguments for forked benchmark runs: quiet logging so appenders do not dominate the results.
+     */
+    static final String QUIET_LOGGING = "-Dlog4j.configurationFile=log4j2-bench.properties";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Get the system with the periodic trigger sweep disabled, so background sweeps do not skew measurements.
+     * @return The system instance.
+     */
+    static SmartHomeSystem quietSystem() {
+        SmartHomeSystem system = SmartHomeSystem.getInstance();
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+        system.setTriggerSweepInterval(0);
+        return system;
+    }
+}
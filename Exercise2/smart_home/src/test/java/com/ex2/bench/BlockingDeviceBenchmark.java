@@ -0,0 +1,110 @@
+package com.ex2.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.Device;
+import com.ex2.core.DeviceCommand;
+import com.ex2.core.ExecutionMode;
+import com.ex2.core.SmartHomeSystem;
+
+/**
+ * Compares batch command throughput in the direct and virtual-thread execution modes against
+ * devices whose commands block, as a real device waiting on network I/O would. The score is
+ * commands per second; in the direct mode it is bounded by the blocking latency of one command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class BlockingDeviceBenchmark {
+    private static final int DEVICES = 100;
+    private static final int COMMANDS_PER_DEVICE = 2;
+
+    @Param({"DIRECT", "VIRTUAL_THREADS"})
+    public ExecutionMode mode;
+
+    @Param({"1", "5"})
+    public long blockingMillis;
+
+    private SmartHomeSystem system;
+    private List<DeviceCommand> commands;
+
+    /**
+     * Device that sleeps on every command.
+     */
+    static class BlockingLight implements Device {
+        private final String id;
+        private final long blockingMillis;
+        private boolean isOn;
+
+        BlockingLight(String id, long blockingMillis) {
+            this.id = id;
+            this.blockingMillis = blockingMillis;
+        }
+
+        @Override
+        public String getId() { return id; }
+
+        @Override
+        public String getType() { return "light"; }
+
+        @Override
+        public void turnOn() {
+            block();
+            isOn = true;
+        }
+
+        @Override
+        public void turnOff() {
+            block();
+            isOn = false;
+        }
+
+        @Override
+        public String getStatus() { return isOn ? "on" : "off"; }
+
+        private void block() {
+            try {
+                Thread.sleep(blockingMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = BenchmarkSupport.quietSystem();
+        system.setExecutionMode(mode);
+        commands = new ArrayList<>();
+        for (int d = 0; d < DEVICES; d++) {
+            system.addDevice(new BlockingLight("bench_blocking_light_" + d, blockingMillis));
+        }
+        for (int c = 0; c < COMMANDS_PER_DEVICE; c++) {
+            for (int d = 0; d < DEVICES; d++) {
+                String id = "bench_blocking_light_" + d;
+                commands.add(c % 2 == 0 ? DeviceCommand.turnOn(id) : DeviceCommand.turnOff(id));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int d = 0; d < DEVICES; d++) {
+            system.removeDevice("bench_blocking_light_" + d);
+        }
+        system.setExecutionMode(ExecutionMode.DIRECT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(DEVICES * COMMANDS_PER_DEVICE)
+    public void applyBatch() {
+        system.applyBatch(commands);
+    }
+}
@@ -0,0 +1,76 @@
+package com.ex2.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.DeviceHandle;
+import com.ex2.core.SmartHomeSystem;
+
+/**
+ * Benchmarks for the device command paths of the SmartHomeSystem.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class DeviceCommandBenchmark {
+
+    @Param({"0", "100", "10000"})
+    public int triggers;
+
+    private SmartHomeSystem system;
+    private DeviceHandle light;
+    private DeviceHandle thermostat;
+    private int nextDevice;
+    private int temperature = 70;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = BenchmarkSupport.quietSystem();
+        light = system.addDevice("light", "bench_light");
+        thermostat = system.addDevice("thermostat", "bench_thermostat");
+        for (int i = 0; i < triggers; i++) {
+            system.addTrigger("bench_thermostat > " + (91 + i % 100), "turnOn(bench_light)");
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void removeAddedDevices() {
+        for (int i = 0; i < nextDevice; i++) {
+            system.removeDevice("bench_added_" + i);
+        }
+        nextDevice = 0;
+    }
+
+    @Benchmark
+    public void addDevice() {
+        system.addDevice("light", "bench_added_" + nextDevice++);
+    }
+
+    @Benchmark
+    public void turnOnTurnOff() {
+        system.turnOn("bench_light");
+        system.turnOff("bench_light");
+    }
+
+    @Benchmark
+    public void setTemperature() {
+        temperature = temperature == 70 ? 71 : 70;
+        system.setTemperature("bench_thermostat", temperature);
+    }
+
+    @Benchmark
+    public void turnOnTurnOffByHandle() {
+        system.turnOn(light);
+        system.turnOff(light);
+    }
+
+    @Benchmark
+    public void setTemperatureByHandle() {
+        temperature = temperature == 70 ? 71 : 70;
+        system.setTemperature(thermostat, temperature);
+    }
+}
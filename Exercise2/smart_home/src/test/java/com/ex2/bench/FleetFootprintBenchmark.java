@@ -0,0 +1,56 @@
+package com.ex2.bench;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.DeviceProxy;
+import com.ex2.core.DeviceStateStore;
+import com.ex2.devices.Light;
+
+/**
+ * Measures the memory of a fleet of lights held in a {@link DeviceStateStore} versus one registered
+ * device object per light. The IDs are created in setup, so an operation allocates only the fleet
+ * itself: run with {@code -prof gc} and divide {@code gc.alloc.rate.norm} by the fleet size for the
+ * bytes per device.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {BenchmarkSupport.QUIET_LOGGING, "-Xmx2g"})
+public class FleetFootprintBenchmark {
+    private static final int FLEET_SIZE = 1_000_000;
+
+    @Param({"stateStore", "deviceObjects"})
+    public String model;
+
+    private String[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        ids = new String[FLEET_SIZE];
+        for (int i = 0; i < FLEET_SIZE; i++) {
+            ids[i] = "fleet_light_" + i;
+        }
+    }
+
+    @Benchmark
+    public Object build() {
+        if (model.equals("stateStore")) {
+            DeviceStateStore store = new DeviceStateStore(FLEET_SIZE);
+            for (String id : ids) {
+                store.add("light", id);
+            }
+            return store;
+        }
+        Map<String, DeviceProxy> devices = new ConcurrentHashMap<>();
+        for (String id : ids) {
+            devices.put(id, new DeviceProxy(new Light(id)));
+        }
+        return devices;
+    }
+}
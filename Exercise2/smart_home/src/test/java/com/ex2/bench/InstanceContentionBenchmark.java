@@ -0,0 +1,87 @@
+package com.ex2.bench;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.ex2.core.DeviceHandle;
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.devices.Thermostat;
+
+/**
+ * Measures access to the default system from many threads at once. {@code lockedAccessor} reproduces
+ * the former {@code static synchronized getInstance()} as a baseline for {@code getInstance}.
+ * {@code setTemperature} has every thread drive its own registered thermostat through the system, and
+ * {@code setDeviceTemperature} sets a thermostat that publishes to the default instance directly.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(8)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class InstanceContentionBenchmark {
+    private static SmartHomeSystem lockedInstance;
+
+    private SmartHomeSystem system;
+    private final AtomicInteger threadIds = new AtomicInteger();
+
+    @State(Scope.Thread)
+    public static class PerThread {
+        DeviceHandle registered;
+        Thermostat unregistered;
+        int temperature = 60;
+
+        @Setup(Level.Trial)
+        public void setUp(InstanceContentionBenchmark benchmark) {
+            int id = benchmark.threadIds.getAndIncrement();
+            registered = benchmark.system.addDevice("thermostat", "bench_contention_thermostat_" + id);
+            unregistered = new Thermostat("bench_contention_raw_" + id);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown(InstanceContentionBenchmark benchmark) {
+            benchmark.system.removeDevice(registered.getId());
+        }
+
+        int nextTemperature() {
+            temperature = temperature == 60 ? 61 : 60;
+            return temperature;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = BenchmarkSupport.quietSystem();
+    }
+
+    private static synchronized SmartHomeSystem lockedAccessor() {
+        if (lockedInstance == null) {
+            lockedInstance = SmartHomeSystem.getInstance();
+        }
+        return lockedInstance;
+    }
+
+    @Benchmark
+    public void lockedAccessor(Blackhole blackhole) {
+        blackhole.consume(lockedAccessor());
+    }
+
+    @Benchmark
+    public void getInstance(Blackhole blackhole) {
+        blackhole.consume(SmartHomeSystem.getInstance());
+    }
+
+    @Benchmark
+    public void setTemperature(PerThread state) {
+        system.setTemperature(state.registered, state.nextTemperature());
+    }
+
+    @Benchmark
+    public void setDeviceTemperature(PerThread state) {
+        state.unregistered.setTemperature(state.nextTemperature());
+    }
+}
@@ -0,0 +1,62 @@
+package com.ex2.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.CommandJournal;
+import com.ex2.core.DeviceHandle;
+import com.ex2.core.SmartHomeSystem;
+
+/**
+ * Measures the cost of journaling device commands, with and without forcing each group commit to disk.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class JournalBenchmark {
+
+    @Param({"off", "buffered", "fsync"})
+    public String persistence;
+
+    private SmartHomeSystem system;
+    private DeviceHandle light;
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        system = BenchmarkSupport.quietSystem();
+        if (!persistence.equals("off")) {
+            directory = Files.createTempDirectory("journal-bench");
+            system.enablePersistence(directory, persistence.equals("fsync"));
+        }
+        light = system.addDevice("light", "bench_journal_light");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        CommandJournal journal = system.getJournal();
+        if (journal != null) {
+            journal.sync();
+            System.out.printf("%n%d records in %d group commits%n", journal.getAppendedCount(), journal.getCommitCount());
+            system.disablePersistence();
+            try (Stream<Path> files = Files.walk(directory)) {
+                files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+            }
+        }
+    }
+
+    @Benchmark
+    public void turnOnTurnOff() {
+        system.turnOn(light);
+        system.turnOff(light);
+    }
+}
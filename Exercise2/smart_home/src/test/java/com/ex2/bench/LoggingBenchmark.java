@@ -0,0 +1,45 @@
+package com.ex2.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.SmartHomeSystem;
+
+/**
+ * Command-heavy benchmark comparing logging configurations.
+ * Each configuration runs in its own fork, so it is selected before any logger is created.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoggingBenchmark {
+
+    @Param({"log4j2-bench-sync.properties", "log4j2-bench-async.properties"})
+    public String config;
+
+    private SmartHomeSystem system;
+    private int temperature = 70;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty("log4j.configurationFile", config);
+        system = BenchmarkSupport.quietSystem();
+        system.addDevice("light", "bench_log_light");
+        system.addDevice("doorlock", "bench_log_lock");
+        system.addDevice("thermostat", "bench_log_thermostat");
+    }
+
+    @Benchmark
+    public void commands() {
+        system.turnOn("bench_log_light");
+        system.turnOff("bench_log_light");
+        system.turnOn("bench_log_lock");
+        system.turnOff("bench_log_lock");
+        temperature = temperature == 70 ? 71 : 70;
+        system.setTemperature("bench_log_thermostat", temperature);
+    }
+}
@@ -0,0 +1,45 @@
+package com.ex2.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.Device;
+import com.ex2.core.DeviceObserver;
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.devices.Light;
+
+/**
+ * Benchmarks synchronous observer notification with many registered observers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class ObserverBenchmark {
+
+    @Param({"1", "100", "1000"})
+    public int observers;
+
+    private SmartHomeSystem system;
+    private Device device;
+    private long updates;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = BenchmarkSupport.quietSystem();
+        device = new Light("bench_observed_light");
+        for (int i = 0; i < observers; i++) {
+            DeviceObserver observer = updated -> updates++;
+            system.addObserver(observer);
+        }
+    }
+
+    @Benchmark
+    public long notifyObservers() {
+        system.notifyObservers(device);
+        return updates;
+    }
+}
@@ -0,0 +1,61 @@
+package com.ex2.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.DeviceHandle;
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.core.TriggerEvaluationMode;
+
+/**
+ * Compares the cost of a temperature change on a thermostat that many triggers read, when the
+ * dependent triggers are evaluated one by one and when the change propagates through the rule network.
+ * The temperature toggles below every threshold, so no trigger fires and only evaluation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class RuleNetworkBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int triggers;
+
+    @Param({"EVENT_DRIVEN", "RULE_NETWORK"})
+    public TriggerEvaluationMode mode;
+
+    private SmartHomeSystem system;
+    private DeviceHandle thermostat;
+    private int temperature = 60;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = BenchmarkSupport.quietSystem();
+        thermostat = system.addDevice("thermostat", "bench_rules_thermostat");
+        system.addDevice("doorlock", "bench_rules_door");
+        system.addDevice("light", "bench_rules_light");
+        for (int i = 0; i < triggers; i++) {
+            String comparison = "bench_rules_thermostat > " + (62 + i % 29);
+            String condition = i % 2 == 0 ? comparison : comparison + " && bench_rules_door == unlocked";
+            system.addTrigger(condition, "turnOn(bench_rules_light)");
+        }
+        system.setTriggerEvaluationMode(mode);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.setTriggerEvaluationMode(TriggerEvaluationMode.EVENT_DRIVEN);
+        system.removeDevice("bench_rules_thermostat");
+        system.removeDevice("bench_rules_door");
+        system.removeDevice("bench_rules_light");
+    }
+
+    @Benchmark
+    public void setTemperature() {
+        temperature = temperature == 60 ? 61 : 60;
+        system.setTemperature(thermostat, temperature);
+    }
+}
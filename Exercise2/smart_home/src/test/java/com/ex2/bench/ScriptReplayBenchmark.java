@@ -0,0 +1,82 @@
+package com.ex2.bench;
+
+import java.io.BufferedReader;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.SmartHomeSystem;
+
+/**
+ * Measures replaying a recorded command script, per command. {@code runScript} is the batch mode
+ * of the system; {@code splitLines} reproduces the former command loop without its sleep, reading
+ * each line as a string and splitting it, as a baseline. Run with {@code -prof gc} to compare the
+ * allocation per command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class ScriptReplayBenchmark {
+    private static final int COMMANDS = 100_000;
+    private static final int DEVICES = 100;
+
+    private SmartHomeSystem system;
+    private char[] script;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = BenchmarkSupport.quietSystem();
+        StringBuilder lines = new StringBuilder();
+        for (int i = 0; i < DEVICES; i++) {
+            system.addDevice(i % 10 == 0 ? "thermostat" : "light", "bench_script_" + i);
+        }
+        for (int i = 0; i < COMMANDS; i++) {
+            int device = i % DEVICES;
+            if (device % 10 == 0) {
+                lines.append("setTemperature bench_script_").append(device).append(' ').append(60 + i % 20);
+            } else {
+                lines.append(i % 3 == 0 ? "turnOff" : "turnOn").append(" bench_script_").append(device);
+            }
+            lines.append('\n');
+        }
+        script = lines.toString().toCharArray();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (int i = 0; i < DEVICES; i++) {
+            system.removeDevice("bench_script_" + i);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public long runScript() throws IOException {
+        return system.runScript(new CharArrayReader(script)).commands();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public long splitLines() throws IOException {
+        long commands = 0;
+        try (BufferedReader in = new BufferedReader(new CharArrayReader(script))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split(" ");
+                switch (parts[0]) {
+                    case "turnOn" -> system.turnOn(parts[1]);
+                    case "turnOff" -> system.turnOff(parts[1]);
+                    case "setTemperature" -> system.setTemperature(parts[1], Integer.parseInt(parts[2]));
+                    default -> throw new IllegalArgumentException("Unknown command: " + parts[0]);
+                }
+                commands++;
+            }
+        }
+        return commands;
+    }
+}
@@ -0,0 +1,69 @@
+package com.ex2.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.DeviceSpec;
+import com.ex2.core.SmartHomeSystem;
+
+/**
+ * Measures cold hub startup with a large fleet: mapping a binary snapshot versus registering every device,
+ * one at a time or as a bulk import.
+ * Each fork measures a single startup, so the numbers include class loading and page faults.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 5, jvmArgsAppend = {BenchmarkSupport.QUIET_LOGGING, "-Xmx2g"})
+public class StartupBenchmark {
+    private static final int FLEET_SIZE = 1_000_000;
+    private static final String ID_PREFIX = "fleet_";
+    private static final String TOUCHED = ID_PREFIX + (FLEET_SIZE / 2 + 1);
+
+    @Param({"binarySnapshot", "addDevice", "importDevices"})
+    public String startup;
+
+    private SmartHomeSystem system;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        system = BenchmarkSupport.quietSystem();
+        file = Paths.get(System.getProperty("java.io.tmpdir"), "smarthome-startup-" + FLEET_SIZE + ".bin");
+        if (startup.equals("binarySnapshot") && !Files.exists(file)) {
+            addFleet();
+            system.writeBinarySnapshot(file);
+            for (int i = 0; i < FLEET_SIZE; i++) {
+                system.removeDevice(ID_PREFIX + i);
+            }
+        }
+    }
+
+    @Benchmark
+    public String start() throws IOException {
+        if (startup.equals("binarySnapshot")) {
+            system.loadBinarySnapshot(file);
+        } else if (startup.equals("importDevices")) {
+            system.importDevices(IntStream.range(0, FLEET_SIZE)
+                    .mapToObj(i -> new DeviceSpec(i % 10 == 0 ? "thermostat" : "light", ID_PREFIX + i)));
+        } else {
+            addFleet();
+        }
+        system.turnOn(TOUCHED);
+        return system.getHandle(TOUCHED).toString();
+    }
+
+    private void addFleet() {
+        for (int i = 0; i < FLEET_SIZE; i++) {
+            system.addDevice(i % 10 == 0 ? "thermostat" : "light", ID_PREFIX + i);
+        }
+    }
+}
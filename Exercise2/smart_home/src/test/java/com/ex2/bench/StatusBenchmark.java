@@ -0,0 +1,62 @@
+package com.ex2.bench;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.SmartHomeSystem;
+import com.ex2.core.StatusCursor;
+
+/**
+ * Benchmarks building, streaming and paging through the status report of a large device inventory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class StatusBenchmark {
+
+    @Param({"10000"})
+    public int devices;
+
+    private SmartHomeSystem system;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = BenchmarkSupport.quietSystem();
+        String[] types = {"light", "thermostat", "doorlock"};
+        for (int i = 0; i < devices; i++) {
+            system.addDevice(types[i % types.length], "bench_device_" + i);
+        }
+    }
+
+    @Benchmark
+    public String getStatus() {
+        return system.getStatus();
+    }
+
+    @Benchmark
+    public void writeStatus() throws IOException {
+        system.writeStatus(Writer.nullWriter(), null);
+    }
+
+    @Benchmark
+    public long streamStatusByType() {
+        return system.streamStatus("light").filter(snapshot -> snapshot.getStatus().equals("on")).count();
+    }
+
+    @Benchmark
+    public int pageAllStatus() {
+        StatusCursor cursor = system.openStatusCursor(null);
+        int pages = 0;
+        while (cursor.hasNext()) {
+            cursor.next(100);
+            pages++;
+        }
+        return pages;
+    }
+}
@@ -0,0 +1,94 @@
+package com.ex2.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.DeviceHandle;
+import com.ex2.core.SmartHomeHost;
+import com.ex2.core.SmartHomeSystem;
+
+/**
+ * Measures the command throughput of a host as the number of homes and event loops grows.
+ * Each invocation spreads a burst of commands round-robin over all homes and waits until every
+ * loop has run them; the score is commands per second. Each home has a light, a thermostat and
+ * a trigger reading the thermostat, so commands also publish changes and evaluate a trigger.
+ * Scores only scale with event loops up to the number of available cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class TenantScalingBenchmark {
+    private static final int COMMANDS = 10_000;
+
+    @Param({"1", "100", "10000"})
+    public int homes;
+
+    @Param({"1", "2", "4"})
+    public int eventLoops;
+
+    private SmartHomeHost host;
+    private String[] tenants;
+    private DeviceHandle[] lights;
+    private DeviceHandle[] thermostats;
+    private List<String> markerTenants;
+    private int temperature = 60;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        host = new SmartHomeHost(eventLoops);
+        tenants = new String[homes];
+        lights = new DeviceHandle[homes];
+        thermostats = new DeviceHandle[homes];
+        for (int i = 0; i < homes; i++) {
+            tenants[i] = "bench_tenant_" + i;
+            SmartHomeSystem home = host.openHome(tenants[i]);
+            home.setTriggerSweepInterval(3600);
+            lights[i] = home.addDevice("light", "light");
+            thermostats[i] = home.addDevice("thermostat", "thermostat");
+            home.addTrigger("thermostat > 85", "turnOn(light)");
+        }
+        // One tenant per event loop in use, to tell when a loop has drained its burst
+        Map<Integer, String> byLoop = new TreeMap<>();
+        for (String tenant : tenants) {
+            byLoop.putIfAbsent(host.getEventLoopIndex(tenant), tenant);
+        }
+        markerTenants = new ArrayList<>(byLoop.values());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        host.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COMMANDS)
+    public void commands() throws InterruptedException {
+        temperature = temperature == 60 ? 61 : 60;
+        int value = temperature;
+        for (int i = 0; i < COMMANDS; i++) {
+            int home = i % homes;
+            DeviceHandle light = lights[home];
+            DeviceHandle thermostat = thermostats[home];
+            if ((i & 1) == 0) {
+                host.execute(tenants[home], system -> system.turnOn(light));
+            } else {
+                host.execute(tenants[home], system -> system.setTemperature(thermostat, value));
+            }
+        }
+        // Each loop runs its commands in order, so its marker completes after its share of the burst
+        CountDownLatch done = new CountDownLatch(markerTenants.size());
+        for (String tenant : markerTenants) {
+            host.execute(tenant, system -> done.countDown());
+        }
+        done.await();
+    }
+}
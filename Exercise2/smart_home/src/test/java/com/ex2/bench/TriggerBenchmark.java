@@ -0,0 +1,42 @@
+package com.ex2.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import com.ex2.core.SmartHomeSystem;
+
+/**
+ * Benchmarks a full trigger sweep over a growing number of triggers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkSupport.QUIET_LOGGING)
+public class TriggerBenchmark {
+    private static final int THERMOSTATS = 100;
+
+    @Param({"10", "1000", "100000"})
+    public int triggers;
+
+    private SmartHomeSystem system;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        system = BenchmarkSupport.quietSystem();
+        system.addDevice("light", "bench_light");
+        for (int t = 0; t < THERMOSTATS; t++) {
+            system.addDevice("thermostat", "bench_thermostat_" + t);
+        }
+        for (int i = 0; i < triggers; i++) {
+            system.addTrigger("bench_thermostat_" + (i % THERMOSTATS) + " > " + (91 + i % 100), "turnOn(bench_light)");
+        }
+    }
+
+    @Benchmark
+    public void checkTriggers() {
+        system.checkTriggers();
+    }
+}